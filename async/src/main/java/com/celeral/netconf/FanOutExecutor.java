@@ -0,0 +1,541 @@
+/*
+ * Copyright © 2020 Celeral.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.celeral.netconf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the same operation against many sessions with bounded parallelism and an overall deadline.
+ *
+ * <p>The executor enforces two limits which are shared by all the fan-outs submitted to it: the
+ * global parallelism, i.e. the number of operations in flight across all the sessions, and the per
+ * host parallelism, i.e. the number of operations in flight against the sessions which map to the
+ * same host key. Hosts are served round-robin so that a host with many sessions does not starve the
+ * others.
+ *
+ * <p>Each operation gets a {@link Result} which carries the value or the failure along with the time
+ * the operation took. Failures are classified using the RequestPhaseException and
+ * ResponsePhaseException hierarchy that the {@link NetConfSession} operations already use. When the
+ * deadline of a fan-out expires, the operations which were not started yet fail with a {@link
+ * RequestTimeoutException} since nothing was sent to the server, and the operations still in flight
+ * fail with a {@link ResponseTimeoutException} since the server may have seen the request. An
+ * operation still in flight at the deadline continues to hold its parallelism slot until the
+ * underlying future completes as the session is busy till then.
+ */
+public class FanOutExecutor {
+  public static final int DEFAULT_PARALLELISM = 64;
+  public static final int DEFAULT_PER_HOST_PARALLELISM = 1;
+
+  private final int parallelism;
+  private final int perHostParallelism;
+  private final Function<? super NetConfSession, ?> hostKey;
+
+  private final HashMap<Object, Host> hosts = new HashMap<>();
+  private final ArrayDeque<Host> ready = new ArrayDeque<>();
+  private int running;
+  private boolean dispatching;
+
+  /** Classification of the outcome of an operation on a single session. */
+  public enum Outcome {
+    SUCCEEDED,
+    /** The request could not be sent in time, or the deadline expired before it was sent. */
+    REQUEST_TIMEOUT,
+    /** The request could not be sent to the server. */
+    REQUEST_FAILED,
+    /** The response was not received in time, or the deadline expired waiting for it. */
+    RESPONSE_TIMEOUT,
+    /** The request was sent but receiving or consuming the response failed. */
+    RESPONSE_FAILED,
+    /** The operation failed with an exception outside of the request/response phase hierarchy. */
+    FAILED
+  }
+
+  /**
+   * Result of the operation on a single session.
+   *
+   * @param <T> type of the value produced by the operation
+   */
+  public static class Result<T> {
+    private final NetConfSession session;
+    private final T value;
+    private final Throwable failure;
+    private final Outcome outcome;
+    private final long elapsedNanos;
+
+    Result(NetConfSession session, T value, Throwable failure, long elapsedNanos) {
+      this.session = session;
+      this.value = value;
+      this.failure = failure;
+      this.outcome = classify(failure);
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public NetConfSession getSession() {
+      return session;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the cause of the failure with any CompletionException/ExecutionException wrappers
+     * removed.
+     *
+     * @return the failure or null if the operation succeeded
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    public boolean isSuccess() {
+      return outcome == Outcome.SUCCEEDED;
+    }
+
+    /**
+     * Returns the time the operation spent in flight. It is 0 for the operations which were never
+     * started due to the deadline expiring.
+     *
+     * @param timeUnit the unit in which the time is desired
+     * @return the time spent in the operation
+     */
+    public long getElapsed(TimeUnit timeUnit) {
+      return timeUnit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return "Result{"
+          + "session="
+          + session
+          + ", outcome="
+          + outcome
+          + ", elapsedNanos="
+          + elapsedNanos
+          + (failure == null ? "" : ", failure=" + failure)
+          + '}';
+    }
+  }
+
+  /**
+   * Creates an executor with the default limits where every session is considered a host of its
+   * own.
+   */
+  public FanOutExecutor() {
+    this(DEFAULT_PARALLELISM, DEFAULT_PER_HOST_PARALLELISM, Function.identity());
+  }
+
+  /**
+   * Creates an executor with the given limits.
+   *
+   * @param parallelism maximum number of operations in flight across all the hosts
+   * @param perHostParallelism maximum number of operations in flight against a single host
+   * @param hostKey maps a session to the key identifying its host; sessions with equal keys share
+   *     the per host limit
+   */
+  public FanOutExecutor(
+      int parallelism, int perHostParallelism, Function<? super NetConfSession, ?> hostKey) {
+    if (parallelism < 1 || perHostParallelism < 1) {
+      throw new IllegalArgumentException(
+          "parallelism "
+              + parallelism
+              + " and perHostParallelism "
+              + perHostParallelism
+              + " must both be positive!");
+    }
+
+    this.parallelism = parallelism;
+    this.perHostParallelism = perHostParallelism;
+    this.hostKey = hostKey;
+  }
+
+  /**
+   * Runs the operation against each of the sessions and aggregates the results.
+   *
+   * @param <T> type of the value produced by the operation
+   * @param sessions sessions to run the operation against
+   * @param operation operation to run for each session, e.g. {@code s -> s.getConfig(30, 30,
+   *     TimeUnit.SECONDS)}
+   * @param deadline overall deadline for all the operations to finish
+   * @param timeUnit unit for the deadline
+   * @return future which completes with the results in the iteration order of the sessions once all
+   *     the operations finish or the deadline expires; it never completes exceptionally
+   */
+  public <T> CompletableFuture<List<Result<T>>> execute(
+      Collection<? extends NetConfSession> sessions,
+      Function<? super NetConfSession, ? extends CompletionStage<T>> operation,
+      long deadline,
+      TimeUnit timeUnit) {
+    return execute(sessions, operation, deadline, timeUnit, null);
+  }
+
+  /**
+   * Runs the operation against each of the sessions and streams the results to the listener as they
+   * become available in addition to aggregating them.
+   *
+   * @param <T> type of the value produced by the operation
+   * @param sessions sessions to run the operation against
+   * @param operation operation to run for each session
+   * @param deadline overall deadline for all the operations to finish
+   * @param timeUnit unit for the deadline
+   * @param listener invoked with each result on the thread which completed it, may be null
+   * @return future which completes with the results in the iteration order of the sessions
+   */
+  public <T> CompletableFuture<List<Result<T>>> execute(
+      Collection<? extends NetConfSession> sessions,
+      Function<? super NetConfSession, ? extends CompletionStage<T>> operation,
+      long deadline,
+      TimeUnit timeUnit,
+      Consumer<? super Result<T>> listener) {
+    FanOut<T> fanOut = new FanOut<>(sessions.size(), operation, deadline, timeUnit, listener);
+    if (fanOut.tasks.length == 0) {
+      fanOut.future.complete(Collections.emptyList());
+      return fanOut.future;
+    }
+
+    int index = 0;
+    for (NetConfSession session : sessions) {
+      fanOut.tasks[index] = new Task<>(fanOut, index, session);
+      index++;
+    }
+
+    synchronized (this) {
+      for (Task<T> task : fanOut.tasks) {
+        Host host = hosts.get(task.hostKey);
+        if (host == null) {
+          host = new Host(task.hostKey);
+          hosts.put(task.hostKey, host);
+        }
+        host.pending.add(task);
+        makeReady(host);
+      }
+    }
+
+    com.celeral.netconf.jvaware.CompletableFuture.orTimeout(fanOut.deadline, deadline, timeUnit)
+        .whenComplete(
+            (v, th) -> {
+              if (th instanceof TimeoutException) {
+                fanOut.expire();
+                dispatch();
+              }
+            });
+
+    dispatch();
+    return fanOut.future;
+  }
+
+  /**
+   * Classifies the failure using the request/response phase exception hierarchy.
+   *
+   * @param failure failure with or without the CompletionException wrappers, null for success
+   * @return the outcome representing the failure
+   */
+  public static Outcome classify(Throwable failure) {
+    failure = unwrap(failure);
+    if (failure == null) {
+      return Outcome.SUCCEEDED;
+    }
+
+    if (failure instanceof RequestTimeoutException) {
+      return Outcome.REQUEST_TIMEOUT;
+    }
+
+    if (failure instanceof RequestPhaseException) {
+      return Outcome.REQUEST_FAILED;
+    }
+
+    if (failure instanceof ResponseTimeoutException) {
+      return Outcome.RESPONSE_TIMEOUT;
+    }
+
+    if (failure instanceof ResponsePhaseException) {
+      return Outcome.RESPONSE_FAILED;
+    }
+
+    return Outcome.FAILED;
+  }
+
+  static Throwable unwrap(Throwable th) {
+    while ((th instanceof CompletionException || th instanceof ExecutionException)
+        && th.getCause() != null) {
+      th = th.getCause();
+    }
+
+    return th;
+  }
+
+  private void makeReady(Host host) {
+    if (!host.ready && !host.pending.isEmpty() && host.running < perHostParallelism) {
+      host.ready = true;
+      ready.add(host);
+    }
+  }
+
+  /**
+   * Starts as many pending tasks as the limits allow. The tasks are collected under the lock but
+   * started outside of it as the operations may complete synchronously. An operation which completes
+   * synchronously calls back into this method; such a call, or one from another thread while tasks
+   * are being started, returns at once and the thread already dispatching collects the tasks it
+   * made startable in its next pass. The stack therefore does not grow with the number of tasks.
+   */
+  private void dispatch() {
+    synchronized (this) {
+      if (dispatching) {
+        return;
+      }
+      dispatching = true;
+    }
+
+    try {
+      ArrayList<Task<?>> starting = new ArrayList<>();
+      while (true) {
+        synchronized (this) {
+          Host host;
+          while (running < parallelism && (host = ready.poll()) != null) {
+            host.ready = false;
+            Task<?> task = host.pending.poll();
+            if (task == null) {
+              continue;
+            }
+
+            task.started = true;
+            task.startNanos = System.nanoTime();
+            running++;
+            host.running++;
+            makeReady(host);
+            starting.add(task);
+          }
+
+          if (starting.isEmpty()) {
+            dispatching = false;
+            return;
+          }
+        }
+
+        for (Task<?> task : starting) {
+          task.start();
+        }
+        starting.clear();
+      }
+    } catch (RuntimeException | Error ex) {
+      synchronized (this) {
+        dispatching = false;
+      }
+      throw ex;
+    }
+  }
+
+  private synchronized void release(Object key) {
+    Host host = hosts.get(key);
+    running--;
+    host.running--;
+    makeReady(host);
+    releaseIfIdle(host);
+  }
+
+  private void releaseIfIdle(Host host) {
+    if (host.running == 0 && host.pending.isEmpty()) {
+      hosts.remove(host.key);
+    }
+  }
+
+  private static class Host {
+    final Object key;
+    final ArrayDeque<Task<?>> pending = new ArrayDeque<>();
+    int running;
+    boolean ready;
+
+    Host(Object key) {
+      this.key = key;
+    }
+  }
+
+  private class FanOut<T> {
+    final Task<T>[] tasks;
+    final Function<? super NetConfSession, ? extends CompletionStage<T>> operation;
+    final long timeout;
+    final TimeUnit timeUnit;
+    final Consumer<? super Result<T>> listener;
+    final CompletableFuture<Void> deadline = new CompletableFuture<>();
+    final CompletableFuture<List<Result<T>>> future = new CompletableFuture<>();
+    final AtomicInteger remaining;
+
+    @SuppressWarnings("unchecked")
+    FanOut(
+        int size,
+        Function<? super NetConfSession, ? extends CompletionStage<T>> operation,
+        long timeout,
+        TimeUnit timeUnit,
+        Consumer<? super Result<T>> listener) {
+      this.tasks = new Task[size];
+      this.operation = operation;
+      this.timeout = timeout;
+      this.timeUnit = timeUnit;
+      this.listener = listener;
+      this.remaining = new AtomicInteger(size);
+    }
+
+    /**
+     * Fails all the tasks which have not finished yet. The tasks which were not started are removed
+     * from the queues under the lock so that they can never be started afterwards.
+     */
+    void expire() {
+      boolean[] inFlight = new boolean[tasks.length];
+      long[] startNanos = new long[tasks.length];
+      synchronized (FanOutExecutor.this) {
+        for (int i = 0; i < tasks.length; i++) {
+          Task<T> task = tasks[i];
+          inFlight[i] = task.started;
+          startNanos[i] = task.startNanos;
+          if (!task.started) {
+            Host host = hosts.get(task.hostKey);
+            if (host != null && host.pending.removeIf(t -> t.fanOut == this)) {
+              releaseIfIdle(host);
+            }
+          }
+        }
+      }
+
+      long now = System.nanoTime();
+      for (int i = 0; i < tasks.length; i++) {
+        if (inFlight[i]) {
+          tasks[i].finish(
+              null, new ResponseTimeoutException(timeout, timeUnit, null), now - startNanos[i]);
+        } else {
+          tasks[i].finish(null, new RequestTimeoutException(timeout, timeUnit, null), 0);
+        }
+      }
+    }
+
+    void completed(Task<T> task) {
+      if (listener != null) {
+        try {
+          listener.accept(task.result);
+        } catch (RuntimeException ex) {
+          logger.warn("Listener {} failed to accept {}!", listener, task.result, ex);
+        }
+      }
+
+      if (remaining.decrementAndGet() == 0) {
+        deadline.complete(null);
+        ArrayList<Result<T>> results = new ArrayList<>(tasks.length);
+        for (Task<T> t : tasks) {
+          results.add(t.result);
+        }
+        future.complete(results);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "FanOut{" + "tasks=" + Arrays.toString(tasks) + '}';
+    }
+  }
+
+  private class Task<T> {
+    final FanOut<T> fanOut;
+    final int index;
+    final NetConfSession session;
+    final Object hostKey;
+
+    /* guarded by the executor lock */
+    boolean started;
+    long startNanos;
+
+    /* guarded by the task lock */
+    Result<T> result;
+
+    Task(FanOut<T> fanOut, int index, NetConfSession session) {
+      this.fanOut = fanOut;
+      this.index = index;
+      this.session = session;
+      this.hostKey = FanOutExecutor.this.hostKey.apply(session);
+    }
+
+    void start() {
+      long startNanos;
+      synchronized (FanOutExecutor.this) {
+        startNanos = this.startNanos;
+      }
+
+      CompletionStage<T> stage;
+      try {
+        stage = fanOut.operation.apply(session);
+      } catch (RuntimeException ex) {
+        stage = com.celeral.netconf.jvaware.CompletableFuture.failedFuture(ex);
+      }
+
+      stage.whenComplete(
+          (value, th) -> {
+            try {
+              finish(value, th, System.nanoTime() - startNanos);
+            } finally {
+              release(hostKey);
+              dispatch();
+            }
+          });
+    }
+
+    void finish(T value, Throwable th, long elapsed) {
+      Result<T> r;
+      synchronized (this) {
+        if (result != null) {
+          return;
+        }
+
+        r = result = new Result<>(session, value, unwrap(th), elapsed);
+      }
+
+      if (r.failure != null) {
+        logger.debug("Operation on session {} failed with {}", session, r.outcome, r.failure);
+      }
+      fanOut.completed(this);
+    }
+
+    @Override
+    public String toString() {
+      boolean started;
+      synchronized (FanOutExecutor.this) {
+        started = this.started;
+      }
+      return "Task{" + "index=" + index + ", session=" + session + ", started=" + started + '}';
+    }
+  }
+
+  private static final Logger logger = LogManager.getLogger();
+}
@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -37,6 +38,7 @@ import com.tailf.jnc.InTransport;
 import com.tailf.jnc.JNCException;
 import com.tailf.jnc.NetconfSession;
 import com.tailf.jnc.NodeSet;
+import com.tailf.jnc.XMLWriter;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -195,7 +197,12 @@ public class NetConfSession extends NetconfSession {
     this.channel = channel;
 
     this.outputStream = new ByteArrayOutputStream(4096);
-    super.setOutTransport(PrintStream.getOutTransport(this.outputStream, charset));
+    if (StandardCharsets.UTF_8.equals(charset)) {
+      // requests are encoded straight to bytes
+      super.setOutTransport(new XMLWriter(this.outputStream));
+    } else {
+      super.setOutTransport(PrintStream.getOutTransport(this.outputStream, charset));
+    }
 
     this.codec = new DefaultMessageCodec(charset);
 
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2020 Celeral.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.celeral.netconf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tailf.jnc.JNCException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FanOutExecutorTest {
+  private static List<NetConfSession> getSessions(int count) throws JNCException {
+    ArrayList<NetConfSession> sessions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      sessions.add(new NetConfSession(null, StandardCharsets.UTF_8));
+    }
+    return sessions;
+  }
+
+  @Test(timeout = 5000)
+  public void testParallelismIsBounded() throws Exception {
+    List<NetConfSession> sessions = getSessions(20);
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    FanOutExecutor executor = new FanOutExecutor(3, 1, session -> session);
+    List<FanOutExecutor.Result<Integer>> results =
+        executor
+            .execute(
+                sessions,
+                session ->
+                    CompletableFuture.supplyAsync(
+                        () -> {
+                          int current = inFlight.incrementAndGet();
+                          maxInFlight.accumulateAndGet(current, Math::max);
+                          try {
+                            Thread.sleep(10);
+                          } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                          }
+                          inFlight.decrementAndGet();
+                          return sessions.indexOf(session);
+                        }),
+                10,
+                TimeUnit.SECONDS)
+            .get();
+
+    assertEquals(20, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertTrue(results.get(i).isSuccess());
+      assertEquals(i, (int) results.get(i).getValue());
+      assertSame(sessions.get(i), results.get(i).getSession());
+    }
+    assertTrue("max in flight " + maxInFlight, maxInFlight.get() <= 3);
+  }
+
+  @Test(timeout = 5000)
+  public void testPerHostParallelismIsBounded() throws Exception {
+    List<NetConfSession> sessions = getSessions(12);
+    Map<NetConfSession, Integer> hostOf = new IdentityHashMap<>();
+    for (int i = 0; i < sessions.size(); i++) {
+      hostOf.put(sessions.get(i), i % 2);
+    }
+
+    AtomicInteger[] inFlight = {new AtomicInteger(), new AtomicInteger()};
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    FanOutExecutor executor = new FanOutExecutor(10, 2, hostOf::get);
+    List<FanOutExecutor.Result<Void>> results =
+        executor
+            .execute(
+                sessions,
+                session ->
+                    CompletableFuture.runAsync(
+                        () -> {
+                          AtomicInteger counter = inFlight[hostOf.get(session)];
+                          maxInFlight.accumulateAndGet(counter.incrementAndGet(), Math::max);
+                          try {
+                            Thread.sleep(10);
+                          } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                          }
+                          counter.decrementAndGet();
+                        }),
+                10,
+                TimeUnit.SECONDS)
+            .get();
+
+    assertEquals(12, results.size());
+    assertTrue("max in flight per host " + maxInFlight, maxInFlight.get() <= 2);
+  }
+
+  @Test(timeout = 5000)
+  public void testFailureClassification() throws Exception {
+    List<NetConfSession> sessions = getSessions(5);
+    List<Throwable> failures = new ArrayList<>();
+    failures.add(null);
+    failures.add(new RequestTimeoutException(1, TimeUnit.SECONDS, null));
+    failures.add(new RequestGenerationException(new RuntimeException()));
+    failures.add(new ResponseConsumptionException(new RuntimeException()));
+    failures.add(new IllegalArgumentException());
+
+    ConcurrentLinkedQueue<FanOutExecutor.Result<String>> streamed =
+        new ConcurrentLinkedQueue<>();
+    List<FanOutExecutor.Result<String>> results =
+        new FanOutExecutor()
+            .execute(
+                sessions,
+                session -> {
+                  Throwable failure = failures.get(sessions.indexOf(session));
+                  CompletableFuture<String> future = new CompletableFuture<>();
+                  if (failure == null) {
+                    future.complete("ok");
+                  } else {
+                    future.completeExceptionally(failure);
+                  }
+                  return future.thenApply(s -> s);
+                },
+                10,
+                TimeUnit.SECONDS,
+                streamed::add)
+            .get();
+
+    assertEquals(5, streamed.size());
+    assertEquals(FanOutExecutor.Outcome.SUCCEEDED, results.get(0).getOutcome());
+    assertEquals("ok", results.get(0).getValue());
+    assertEquals(FanOutExecutor.Outcome.REQUEST_TIMEOUT, results.get(1).getOutcome());
+    assertEquals(FanOutExecutor.Outcome.REQUEST_FAILED, results.get(2).getOutcome());
+    assertEquals(FanOutExecutor.Outcome.RESPONSE_FAILED, results.get(3).getOutcome());
+    assertEquals(FanOutExecutor.Outcome.FAILED, results.get(4).getOutcome());
+    assertSame(failures.get(4), results.get(4).getFailure());
+  }
+
+  @Test(timeout = 5000)
+  public void testDeadline() throws Exception {
+    List<NetConfSession> sessions = getSessions(3);
+    CompletableFuture<String> never = new CompletableFuture<>();
+
+    FanOutExecutor executor = new FanOutExecutor(1, 1, session -> session);
+    List<FanOutExecutor.Result<String>> results =
+        executor.execute(sessions, session -> never, 100, TimeUnit.MILLISECONDS).get();
+
+    assertEquals(FanOutExecutor.Outcome.RESPONSE_TIMEOUT, results.get(0).getOutcome());
+    assertEquals(FanOutExecutor.Outcome.REQUEST_TIMEOUT, results.get(1).getOutcome());
+    assertEquals(FanOutExecutor.Outcome.REQUEST_TIMEOUT, results.get(2).getOutcome());
+    assertEquals(0, results.get(2).getElapsed(TimeUnit.NANOSECONDS));
+
+    /* the slot is released when the in flight operation finally completes */
+    never.complete("late");
+    results =
+        executor
+            .execute(
+                Collections.singletonList(sessions.get(1)),
+                session -> CompletableFuture.completedFuture("next"),
+                1,
+                TimeUnit.SECONDS)
+            .get();
+    assertEquals("next", results.get(0).getValue());
+  }
+
+  @Test(timeout = 10000)
+  public void testSynchronousCompletionsOnOneHost() throws Exception {
+    List<NetConfSession> sessions = getSessions(20000);
+    AtomicInteger streamed = new AtomicInteger();
+
+    /* each completion starts the next task of the host on the same thread */
+    FanOutExecutor executor = new FanOutExecutor(64, 1, session -> "host");
+    List<FanOutExecutor.Result<Integer>> results =
+        executor
+            .execute(
+                sessions,
+                session -> CompletableFuture.completedFuture(1),
+                5,
+                TimeUnit.SECONDS,
+                result -> streamed.incrementAndGet())
+            .get(5, TimeUnit.SECONDS);
+
+    assertEquals(20000, results.size());
+    for (FanOutExecutor.Result<Integer> result : results) {
+      assertEquals(FanOutExecutor.Outcome.SUCCEEDED, result.getOutcome());
+    }
+    assertEquals(20000, streamed.get());
+  }
+}
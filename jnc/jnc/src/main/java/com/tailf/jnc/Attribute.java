@@ -141,15 +141,15 @@ public class Attribute implements Serializable {
                 if (contextnode != null) {
                     out.print("unknown:");
                 }
-                out.print(name + EQUALS_QUOTE + value + QUOTE);
-                return;
-            }
-            if (prefix.length() > 0) {
-                out.print(prefix + ":" + name + EQUALS_QUOTE + value + QUOTE);
-                return;
+            } else if (prefix.length() > 0) {
+                out.print(prefix);
+                out.print(":");
             }
         }
-        out.print(name + EQUALS_QUOTE + value + QUOTE);
+        out.print(name);
+        out.print(EQUALS_QUOTE);
+        out.print(value);
+        out.print(QUOTE);
     }
 
     /* help functions */
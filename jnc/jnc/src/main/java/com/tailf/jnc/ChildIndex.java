@@ -0,0 +1,404 @@
+package com.tailf.jnc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of the children of a node with many children, kept in the node
+ * once it has {@link #THRESHOLD} children, so that finding children does
+ * not go through all of them. Children are found:
+ * <ul>
+ * <li>by name, for {@link Element#getChild(String)},
+ * {@link Element#getChildren(String)} and the location steps of a
+ * {@link Path};
+ * <li>by value and keys, for {@link Element#getChild(Element)}, which
+ * {@link Element#merge(Element, int)} calls at each level, see
+ * {@link #find(Element)};
+ * <li>by the value of one of their children, for path predicates like
+ * <code>interface[name='ge-0/0/1']</code>.
+ * </ul>
+ * Children are always returned in the order of the children list.
+ * <p>
+ * The index by name is built with the index and is kept up to date by
+ * addChild(), insertChild() and deleteChild(). The tables by value are
+ * built when first needed; the children whose keys or values may have
+ * changed since, which {@link Element#changed()} tells, are looked at again
+ * before the next lookup. Other changes to the children list, seen from the
+ * version of the {@link NodeSet}, make the node build a new index when one
+ * is next needed.
+ * <p>
+ * Lookups may be made by several threads at the same time as long as the
+ * tree is not being changed.
+ */
+final class ChildIndex {
+
+    /** nodes with fewer children than this are searched in order */
+    static final int THRESHOLD = 32;
+
+    /* key of a child which a table cannot hold, see Table.key() */
+    private static final Object UNUSABLE = new Object();
+
+    private final NodeSet children;
+    private int version;
+
+    /* name -> children with the name, in order */
+    private final HashMap<String, ArrayList<Element>> byName = new HashMap<String, ArrayList<Element>>();
+
+    /* tables by value, built when needed; guarded by this */
+    private final HashMap<String, Table> tables = new HashMap<String, Table>();
+
+    /* children whose places in the tables may be out of date */
+    private final Set<Element> dirty = Collections
+            .newSetFromMap(new IdentityHashMap<Element, Boolean>());
+
+    /**
+     * The children with one name by a value computed from each child: the
+     * value of one of its children, or a hash of its value and keys.
+     */
+    private static final class Table {
+        final String name;
+        final String leafName; // for a table by the value of a child
+        final String[] keys; // for a table by value and keys
+
+        /*
+         * false if some child has a key this table cannot hold; such a table
+         * is not used, and is built again after a change
+         */
+        boolean usable = true;
+
+        /* key -> child or list of children, in order */
+        final HashMap<Object, Object> buckets = new HashMap<Object, Object>();
+        final IdentityHashMap<Element, Object> keyOf = new IdentityHashMap<Element, Object>();
+
+        Table(String name, String leafName, String[] keys) {
+            this.name = name;
+            this.leafName = leafName;
+            this.keys = keys;
+        }
+
+        /**
+         * Returns the key of a child, null if it has none, or UNUSABLE.
+         */
+        Object key(Element child) {
+            if (leafName != null) {
+                final Object v = child.getValueOfChild(leafName);
+                if (v instanceof Boolean || v instanceof Integer
+                        || v instanceof Float) {
+                    // compared as booleans or numbers by the path predicates
+                    return UNUSABLE;
+                }
+                return v == null ? null : v.toString();
+            }
+            if (!(child instanceof YangElement)
+                    || !Arrays.equals(keys, ((YangElement) child).keyNames())) {
+                // compare() would not look at the keys
+                return UNUSABLE;
+            }
+            final int hash = DiffIndex.hash((YangElement) child, keys);
+            // an entry without all its keys matches no entry with them
+            return hash == 0 ? null : Integer.valueOf(hash);
+        }
+
+        List<Element> get(Object key) {
+            final Object found = buckets.get(key);
+            if (found == null) {
+                return Collections.emptyList();
+            }
+            if (found instanceof Element) {
+                return Collections.singletonList((Element) found);
+            }
+            @SuppressWarnings("unchecked")
+            final List<Element> list = (List<Element>) found;
+            return list;
+        }
+
+        /**
+         * Puts a child with a key in its bucket. If <code>named</code> is
+         * given the child is put in order among the ones already there,
+         * otherwise it is put last.
+         */
+        void put(Element child, Object key, List<Element> named) {
+            keyOf.put(child, key);
+            final Object old = buckets.get(key);
+            if (old == null) {
+                buckets.put(key, child);
+                return;
+            }
+            final List<Element> list;
+            if (old instanceof Element) {
+                list = new ArrayList<Element>(2);
+                list.add((Element) old);
+                buckets.put(key, list);
+            } else {
+                @SuppressWarnings("unchecked")
+                final List<Element> l = (List<Element>) old;
+                list = l;
+            }
+            int i = list.size();
+            if (named != null) {
+                // mostly the child is a new last one, found at once
+                final int pos = lastIndexOf(named, child);
+                while (i > 0 && lastIndexOf(named, list.get(i - 1)) > pos) {
+                    i--;
+                }
+            }
+            list.add(i, child);
+        }
+
+        void remove(Element child) {
+            final Object key = keyOf.remove(child);
+            if (key == null) {
+                return;
+            }
+            final Object old = buckets.get(key);
+            if (old == child) {
+                buckets.remove(key);
+            } else if (old instanceof List<?>) {
+                final List<?> list = (List<?>) old;
+                list.remove(lastIndexOf(list, child));
+                if (list.size() == 1) {
+                    buckets.put(key, list.get(0));
+                }
+            }
+        }
+
+        /**
+         * Puts a child in the bucket of its current key.
+         */
+        void update(Element child, List<Element> named) {
+            remove(child);
+            final Object key = key(child);
+            if (key == UNUSABLE) {
+                usable = false;
+            } else if (key != null) {
+                put(child, key, named);
+            }
+        }
+    }
+
+    private ChildIndex(NodeSet children) {
+        this.children = children;
+        version = children.version();
+        for (int i = 0; i < children.size(); i++) {
+            final Element child = children.getElement(i);
+            named(child.name, true).add(child);
+        }
+    }
+
+    /**
+     * Returns the index of the children of a node, or <code>null</code> if
+     * the node has too few children to need one.
+     */
+    static ChildIndex of(Element parent) {
+        final NodeSet children = parent.children;
+        if (children == null || children.size() < THRESHOLD) {
+            if (parent.childIndex != null) {
+                parent.childIndex = null;
+            }
+            return null;
+        }
+        ChildIndex index = parent.childIndex;
+        if (index == null || index.children != children
+                || index.version != children.version()) {
+            index = new ChildIndex(children);
+            parent.childIndex = index;
+        }
+        return index;
+    }
+
+    private ArrayList<Element> named(String name, boolean create) {
+        ArrayList<Element> list = byName.get(name);
+        if (list == null && create) {
+            list = new ArrayList<Element>(1);
+            byName.put(name, list);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the children with a name, in order. The list must not be
+     * changed.
+     */
+    List<Element> named(String name) {
+        final List<Element> list = byName.get(name);
+        return list != null ? list : Collections.<Element> emptyList();
+    }
+
+    /**
+     * Returns the first child for which <code>x.compare(child)</code> does
+     * not return -1, as {@link Element#getChild(Element)} does, or
+     * <code>null</code>. YangElements are looked up in the table by value
+     * and keys. A key of a child may have been changed in place, through
+     * the value field of the key leaf or its value object, which the index
+     * is not told. A child not found in the table is therefore looked for
+     * among all the children with the name, and is put in the right bucket
+     * if found there.
+     */
+    Element find(Element x) {
+        if (x instanceof YangElement) {
+            final String[] keys = ((YangElement) x).keyNames();
+            final int hash = DiffIndex.hash((YangElement) x, keys);
+            if (hash != 0) {
+                final List<Element> candidates;
+                synchronized (this) {
+                    final Table table = table(x.name, null, keys);
+                    candidates = table.usable ? table.get(Integer
+                            .valueOf(hash)) : null;
+                }
+                if (candidates != null) {
+                    final Element found = first(x, candidates);
+                    if (found != null) {
+                        return found;
+                    }
+                    final Element stale = first(x, named(x.name));
+                    if (stale != null) {
+                        changed(stale);
+                    }
+                    return stale;
+                }
+            }
+            // a missing key, let compare() handle it
+        }
+        return first(x, named(x.name));
+    }
+
+    private static Element first(Element x, List<Element> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            final Element child = candidates.get(i);
+            if (x.compare(child) >= 0) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the children named <code>name</code> with a child named
+     * <code>leafName</code> whose value, as a string, is
+     * <code>value</code>, in order. Among children with several children
+     * named <code>leafName</code> the first one counts, as in
+     * {@link Element#getValueOfChild(String)}. The namespaces are not
+     * compared.
+     *
+     * @return The children, or <code>null</code> if some of the values are
+     *         booleans or numbers, which do not compare as strings
+     */
+    synchronized List<Element> withChildValue(String name, String leafName,
+            String value) {
+        final Table table = table(name, leafName, null);
+        return table.usable ? table.get(value) : null;
+    }
+
+    private Table table(String name, String leafName, String[] keys) {
+        if (!dirty.isEmpty()) {
+            for (final Element child : dirty) {
+                final Iterator<Table> it = tables.values().iterator();
+                while (it.hasNext()) {
+                    final Table table = it.next();
+                    if (table.name.equals(child.name)) {
+                        table.update(child, named(child.name));
+                        if (!table.usable) {
+                            // built again when needed
+                            it.remove();
+                        }
+                    }
+                }
+            }
+            dirty.clear();
+        }
+        final String tableKey = leafName != null ? name + " " + leafName
+                : name + Arrays.toString(keys);
+        Table table = tables.get(tableKey);
+        if (table == null) {
+            table = new Table(name, leafName, keys);
+            for (final Element child : named(name)) {
+                final Object key = table.key(child);
+                if (key == UNUSABLE) {
+                    table.usable = false;
+                    break;
+                }
+                if (key != null) {
+                    table.put(child, key, null);
+                }
+            }
+            tables.put(tableKey, table);
+        }
+        return table;
+    }
+
+    /**
+     * Takes a child just put at position <code>pos</code> into the index.
+     * Returns false if the index is out of date, or if there is a child
+     * with the same name after it, and the node should drop the index.
+     */
+    boolean added(Element child, int pos) {
+        if (version + 1 != children.version()) {
+            return false;
+        }
+        for (int i = pos + 1; i < children.size(); i++) {
+            if (children.getElement(i).name.equals(child.name)) {
+                return false;
+            }
+        }
+        version++;
+        named(child.name, true).add(child);
+        changed(child);
+        return true;
+    }
+
+    /**
+     * Takes a child just removed out of the index. Returns false if the
+     * index is out of date and the node should drop it.
+     */
+    boolean removed(Element child) {
+        if (version + 1 != children.version()) {
+            return false;
+        }
+        version++;
+        final ArrayList<Element> list = named(child.name, false);
+        if (list != null) {
+            final int i = lastIndexOf(list, child);
+            if (i >= 0) {
+                list.remove(i);
+            }
+            if (list.isEmpty()) {
+                byName.remove(child.name);
+            }
+        }
+        synchronized (this) {
+            dirty.remove(child);
+            final Iterator<Table> it = tables.values().iterator();
+            while (it.hasNext()) {
+                final Table table = it.next();
+                if (table.name.equals(child.name)) {
+                    table.remove(child);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notes that the value or the children of a child may have changed.
+     */
+    synchronized void changed(Element child) {
+        if (!tables.isEmpty()) {
+            dirty.add(child);
+        }
+    }
+
+    private static int lastIndexOf(List<?> list, Object x) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == x) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,7 +1,9 @@
 package com.tailf.jnc;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *  Handles merging of netconf configurations.
@@ -20,15 +22,62 @@ public class ConfigurationMergeHandler {
     public NodeSet updateConfiguration(final NodeSet masterConfiguration,
                                        final NodeSet configurationFragment,
                                        final String xPath) {
+        return updateConfiguration(masterConfiguration, configurationFragment,
+                splitPathIntoComponents(xPath), null);
+    }
 
-        final List<PathComponent> pathComponents = splitPathIntoComponents(xPath);
+    /**
+     * Updates a master configuration by merging many configuration fragments into it, as
+     * {@link #updateConfiguration(NodeSet, NodeSet, String)} does for each update in turn,
+     * with the result of one update as the master configuration of the next.
+     * <p>
+     * Each distinct XPath is split once, and the elements matched by the XPath of one
+     * update are not searched for again for the leading components the XPath of the next
+     * update shares with it. Updates should be grouped by shared prefix, such as the
+     * changes to the entries of one list, for the master configuration to be walked from
+     * the top once per group rather than once per update.
+     * @param masterConfiguration   the configuration to be updated
+     * @param updates the updates to be made, in order
+     * @return  the updated configuration, which is <code>masterConfiguration</code> unless an
+     *          update with an empty XPath replaced it by its fragment
+     */
+    public NodeSet updateConfiguration(final NodeSet masterConfiguration,
+                                       final List<Update> updates) {
+
+        final Map<String, List<PathComponent>> pathsSplit = new HashMap<String, List<PathComponent>>();
+        NodeSet configuration = masterConfiguration;
+        PathCursor cursor = new PathCursor(configuration);
+
+        for (final Update update : updates) {
+            List<PathComponent> pathComponents = pathsSplit.get(update.xPath);
+            if (pathComponents == null) {
+                pathComponents = splitPathIntoComponents(update.xPath);
+                pathsSplit.put(update.xPath, pathComponents);
+            }
+            final NodeSet updated = updateConfiguration(configuration, update.configurationFragment,
+                    pathComponents, cursor);
+            if (updated != configuration) {
+                // The fragment replaced the configuration, start again from it.
+                configuration = updated;
+                cursor = new PathCursor(configuration);
+            }
+        }
+        return configuration;
+    }
+
+    private NodeSet updateConfiguration(final NodeSet masterConfiguration,
+                                        final NodeSet configurationFragment,
+                                        final List<PathComponent> pathComponents,
+                                        final PathCursor cursor) {
 
         if (pathComponents.isEmpty() || pathComponents.get(0).name.isEmpty()) {
             return configurationFragment;
         }
 
         // Identify the deepest element in the original node set that matches the xpath.
-        final Element deepestMasterElement = findDeepestElement(masterConfiguration, pathComponents);
+        final Element deepestMasterElement = (null != cursor)
+                ? cursor.findDeepestElement(pathComponents)
+                : findDeepestElement(masterConfiguration, pathComponents);
 
         // If there were no matches, we can just add the update node set to the original.
         if (null == deepestMasterElement) {
@@ -83,17 +132,18 @@ public class ConfigurationMergeHandler {
         if (matchingMasterElementNeedsToBeRemoved) {
 
             // Remove element from original node set.
-            final Element parentElement = removeElementAndReturnItsParent(masterConfiguration, deepestMasterElement);
+            final Element parentElement = removeElementAndReturnItsParent(masterConfiguration,
+                    deepestMasterElement, cursor);
 
             if (updateFragmentNeedsToBeAdded) {
-                addElement(masterConfiguration, parentElement, fragmentElementToBeAdded);
+                addElement(masterConfiguration, parentElement, fragmentElementToBeAdded, cursor);
             } else {
-                removeEmptyParents(masterConfiguration, parentElement);
+                removeEmptyParents(masterConfiguration, parentElement, cursor);
             }
         } else {
             if (updateFragmentNeedsToBeAdded) {
                 // Add elements from update node set to original
-                addElement(masterConfiguration, deepestMasterElement, fragmentElementToBeAdded);
+                addElement(masterConfiguration, deepestMasterElement, fragmentElementToBeAdded, cursor);
             }
         }
         return masterConfiguration;
@@ -101,11 +151,12 @@ public class ConfigurationMergeHandler {
     }
 
     // Remove an element and any ancestors that are consequently childless.
-    private void removeEmptyParents(final NodeSet nodeSet, final Element elementToRemove) {
+    private void removeEmptyParents(final NodeSet nodeSet, final Element elementToRemove,
+                                    final PathCursor cursor) {
 
         Element nextElementToRemove = elementToRemove;
         while (nextElementToRemove != null && nextElementToRemove.getChildren().size() == 0) {
-            nextElementToRemove = removeElementAndReturnItsParent(nodeSet,  nextElementToRemove);
+            nextElementToRemove = removeElementAndReturnItsParent(nodeSet,  nextElementToRemove, cursor);
         }
     }
 
@@ -146,22 +197,41 @@ public class ConfigurationMergeHandler {
     }
 
     // Add an element to a parent element or, if the parent is null, to a nodeset
-    private void addElement(final NodeSet nodeSet, final Element parentElement, final Element elementToBeAdded) {
+    private void addElement(final NodeSet nodeSet, final Element parentElement, final Element elementToBeAdded,
+                            final PathCursor cursor) {
         if (null != parentElement) {
             parentElement.addChild(elementToBeAdded);
         } else {
             nodeSet.add(elementToBeAdded);
         }
+        if (null != cursor && null != parentElement) {
+            cursor.childrenChanged(parentElement);
+        }
     }
 
     // Remove an element from its parent element, or from a nodeset.
     // Returns the parent element of the removed element
-    private Element removeElementAndReturnItsParent(final NodeSet nodeSet, final Element elementToRemove) {
+    private Element removeElementAndReturnItsParent(final NodeSet nodeSet, final Element elementToRemove,
+                                                    final PathCursor cursor) {
         final Element parentElement = elementToRemove.getParent();
         if (null != parentElement) {
             parentElement.deleteChild(elementToRemove);
-        } else {
+            if (null != cursor) {
+                cursor.removed(elementToRemove);
+                cursor.childrenChanged(parentElement);
+            }
+        } else if (null == cursor) {
             nodeSet.removeMember(elementToRemove);
+        } else {
+            // As removeMember(), but the cursor must know which element went.
+            for (int i = 0; i < nodeSet.size(); i++) {
+                final Element element = nodeSet.getElement(i);
+                if (element.equals(elementToRemove)) {
+                    nodeSet.remove(i);
+                    cursor.removed(element);
+                    break;
+                }
+            }
         }
         return parentElement;
     }
@@ -200,7 +270,7 @@ public class ConfigurationMergeHandler {
         NodeSet nextNodesToCheck = nodeSet;
 
         for (final PathComponent component : pathComponents) {
-            final NodeSet candidates = nextNodesToCheck;
+            final Iterable<Element> candidates = candidates(deepestMatchingElement, nextNodesToCheck, component);
             nextNodesToCheck = null;
 
             for (final Element candidateElement : candidates) {
@@ -218,6 +288,26 @@ public class ConfigurationMergeHandler {
         return deepestMatchingElement;
     }
 
+    // Returns the elements among the children of a parent element, or of a node set if the
+    // parent is null, that may match an xpath component, in order. The children of a parent
+    // with many children are found from its ChildIndex, by name and by the first key.
+    private Iterable<Element> candidates(final Element parentElement, final NodeSet children,
+                                         final PathComponent pc) {
+        if (parentElement != null && parentElement.getChildren() == children) {
+            final ChildIndex index = ChildIndex.of(parentElement);
+            if (index != null) {
+                if (pc.keys.isEmpty()) {
+                    return index.named(pc.name);
+                }
+                // An element whose first child is the key has it as its first child of that name.
+                final Key key = pc.keys.get(0);
+                final List<Element> withKey = index.withChildValue(pc.name, key.name, key.value);
+                return (withKey != null) ? withKey : index.named(pc.name);
+            }
+        }
+        return children;
+    }
+
     // Splits a raw XPath string into discrete elements.
     private List<PathComponent> splitPathIntoComponents(final String rawPath) {
         final List<PathComponent> pcs = new ArrayList<PathComponent>();
@@ -316,6 +406,142 @@ public class ConfigurationMergeHandler {
         return true;
     }
 
+    // A string which is the same for an element and a path component with keyCount keys
+    // if and only if the element matches the component, or null if the element matches no
+    // such component.
+    private static String matchKey(final Element elem, final int keyCount) {
+        if (keyCount == 0) {
+            return elem.name;
+        }
+        final NodeSet keyElements = elem.getChildren();
+        if ((keyElements == null) || (keyElements.size() < keyCount)) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder(elem.name);
+        for (int i = 0; i < keyCount; i++) {
+            final Element keyElement = keyElements.getElement(i);
+            if (keyElement.getValue() == null) {
+                return null;
+            }
+            sb.append('\0').append(keyElement.name).append('\0').append(keyElement.getValue().toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A configuration fragment and the XPath of the elements it updates, for
+     * {@link ConfigurationMergeHandler#updateConfiguration(NodeSet, List)}.
+     */
+    public static class Update {
+
+        private final NodeSet configurationFragment;
+        private final String xPath;
+
+        /**
+         * @param configurationFragment contains the elements to be used to update the configuration
+         * @param xPath contains an XPath definition of the element(s) to be updated
+         */
+        public Update(final NodeSet configurationFragment, final String xPath) {
+            this.configurationFragment = configurationFragment;
+            this.xPath = xPath;
+        }
+
+        public NodeSet getConfigurationFragment() {
+            return configurationFragment;
+        }
+
+        public String getXPath() {
+            return xPath;
+        }
+    }
+
+    // The elements of a master configuration matched by the components of the last xpath in
+    // a batch, which are not searched for again for the components the next xpath shares.
+    //
+    // The configuration is only changed at the end of the path just found, and the cursor
+    // is told of the changes as they are made. An element removed, or whose keys changed
+    // with its children so that it no longer matches, is searched for again, as are the ones
+    // below it. Elements are added last among their siblings, so the remembered elements are
+    // still the first that match. So what is found is always what findDeepestElement() would
+    // find.
+    private final class PathCursor {
+
+        private final NodeSet masterConfiguration;
+        private final List<PathComponent> components = new ArrayList<PathComponent>();
+        private final List<Element> elements = new ArrayList<Element>();
+
+        private PathCursor(final NodeSet masterConfiguration) {
+            this.masterConfiguration = masterConfiguration;
+        }
+
+        // As findDeepestElement(masterConfiguration, pathComponents).
+        private Element findDeepestElement(final List<PathComponent> pathComponents) {
+            int shared = 0;
+            while (shared < elements.size() && shared < pathComponents.size()
+                    && (pathComponents.get(shared) == components.get(shared)
+                        || pathComponents.get(shared).matchKey().equals(components.get(shared).matchKey()))) {
+                shared++;
+            }
+            forget(shared);
+
+            Element deepestMatchingElement = (shared > 0) ? elements.get(shared - 1) : null;
+            NodeSet nextNodesToCheck = (shared > 0) ? deepestMatchingElement.getChildren() : masterConfiguration;
+
+            for (int i = shared; i < pathComponents.size() && nextNodesToCheck != null; i++) {
+                final PathComponent component = pathComponents.get(i);
+                final Iterable<Element> candidates = candidates(deepestMatchingElement, nextNodesToCheck, component);
+                nextNodesToCheck = null;
+
+                for (final Element candidateElement : candidates) {
+                    if (isMatchingElement(candidateElement, component)) {
+                        components.add(component);
+                        elements.add(candidateElement);
+                        deepestMatchingElement = candidateElement;
+                        nextNodesToCheck = candidateElement.getChildren();
+                        break;
+                    }
+                }
+            }
+            return deepestMatchingElement;
+        }
+
+        // Forgets the elements from a depth down.
+        private void forget(final int depth) {
+            for (int i = elements.size() - 1; i >= depth; i--) {
+                elements.remove(i);
+                components.remove(i);
+            }
+        }
+
+        private int depthOf(final Element element) {
+            for (int i = 0; i < elements.size(); i++) {
+                if (elements.get(i) == element) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // An element was removed from the configuration.
+        private void removed(final Element element) {
+            final int depth = depthOf(element);
+            if (depth >= 0) {
+                forget(depth);
+            }
+        }
+
+        // A child was added to or removed from an element still in the configuration.
+        private void childrenChanged(final Element element) {
+            final int depth = depthOf(element);
+            if (depth >= 0) {
+                final PathComponent component = components.get(depth);
+                if (!component.matchKey().equals(matchKey(element, component.keys.size()))) {
+                    forget(depth);
+                }
+            }
+        }
+    }
+
     // Encapsulates the name and value of a 'key' from an xpath predicate
     private static class Key {
 
@@ -333,6 +559,7 @@ public class ConfigurationMergeHandler {
 
         private final String name;
         private final List<Key> keys;
+        private String matchKey;
 
         public PathComponent(final String name) {
             this.keys = new ArrayList<Key>();
@@ -341,6 +568,19 @@ public class ConfigurationMergeHandler {
 
         public void addKey(final String name, final String value) {
             this.keys.add(new Key(name, value));
+            this.matchKey = null;
+        }
+
+        // See ConfigurationMergeHandler.matchKey(Element, int).
+        public String matchKey() {
+            if (matchKey == null) {
+                final StringBuilder sb = new StringBuilder(name);
+                for (final Key key : keys) {
+                    sb.append('\0').append(key.name).append('\0').append(key.value);
+                }
+                matchKey = sb.toString();
+            }
+            return matchKey;
         }
 
         @Override
@@ -0,0 +1,229 @@
+package com.tailf.jnc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the children of one node matching the children of another, for
+ * {@link YangElement#getDiff}. A child of A matches the first remaining
+ * child of B for which <code>compare()</code> does not return -1, that is
+ * with the same name, namespace and value and, for list entries, the same
+ * keys.
+ * <p>
+ * The children of B are grouped by name and namespace, and list entries by
+ * a hash of their value and keys, so that a match is found without going
+ * through all the children of B. Groups mixing YangElements with other
+ * elements, or entries of classes with different keys, are searched in
+ * order, calling <code>compare()</code>.
+ */
+final class DiffIndex {
+
+    /**
+     * The children of B with a name and namespace.
+     */
+    private static final class Group {
+        final String namespace;
+        Group next; // with the same name and another namespace
+
+        int[] members = new int[4];
+        int size;
+        int start; // members before this one are taken
+
+        /* key names shared by all members, only if all are YangElements */
+        String[] keyNames;
+        boolean keyed = true;
+
+        /* hash -> members, built when first needed */
+        Map<Integer, Group> entries;
+
+        Group(String namespace) {
+            this.namespace = namespace;
+        }
+
+        void add(int i) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = i;
+        }
+    }
+
+    private final List<Element> children;
+    private final boolean[] taken;
+    private final Map<String, Group> groups = new HashMap<String, Group>();
+
+    /**
+     * Indexes the children of B.
+     *
+     * @param children The children of B
+     */
+    DiffIndex(List<Element> children) {
+        this.children = children;
+        taken = new boolean[children.size()];
+        for (int i = 0; i < taken.length; i++) {
+            final Element child = children.get(i);
+            final Group group = group(child, true);
+            if (group.keyed) {
+                if (!(child instanceof YangElement)) {
+                    group.keyed = false;
+                } else if (group.size == 0) {
+                    group.keyNames = ((YangElement) child).keyNames();
+                } else if (!Arrays.equals(group.keyNames,
+                        ((YangElement) child).keyNames())) {
+                    group.keyed = false;
+                }
+            }
+            group.add(i);
+        }
+    }
+
+    private Group group(Element e, boolean create) {
+        Group group = groups.get(e.name);
+        while (group != null && !group.namespace.equals(e.namespace)) {
+            group = group.next;
+        }
+        if (group == null && create) {
+            group = new Group(e.namespace);
+            group.next = groups.put(e.name, group);
+        }
+        return group;
+    }
+
+    /**
+     * Removes and returns the first remaining child of B matching a child
+     * of A, or returns <code>null</code> if there is none.
+     *
+     * @param a A child of A
+     */
+    Element take(Element a) {
+        final Group group = group(a, false);
+        if (group == null) {
+            return null;
+        }
+        if (group.keyed && a instanceof YangElement
+                && Arrays.equals(group.keyNames, ((YangElement) a).keyNames())) {
+            final int hash = hash((YangElement) a, group.keyNames);
+            if (hash != 0) {
+                if (group.entries == null) {
+                    group.entries = entries(group);
+                }
+                final Group entries = group.entries.get(hash);
+                return entries == null ? null : take(entries, a);
+            }
+            // a missing key, let compare() handle it
+        }
+        return take(group, a);
+    }
+
+    /**
+     * Takes the first remaining member of a group matching a child of A.
+     */
+    private Element take(Group group, Element a) {
+        while (group.start < group.size && taken[group.members[group.start]]) {
+            group.start++;
+        }
+        for (int j = group.start; j < group.size; j++) {
+            final int i = group.members[j];
+            if (!taken[i] && matches(a, children.get(i))) {
+                taken[i] = true;
+                return children.get(i);
+            }
+        }
+        return null;
+    }
+
+    private Map<Integer, Group> entries(Group group) {
+        final Map<Integer, Group> entries = new HashMap<Integer, Group>();
+        for (int j = 0; j < group.size; j++) {
+            final int i = group.members[j];
+            final int hash = hash((YangElement) children.get(i),
+                    group.keyNames);
+            if (hash != 0) {
+                Group same = entries.get(hash);
+                if (same == null) {
+                    same = new Group(group.namespace);
+                    entries.put(hash, same);
+                }
+                same.add(i);
+            }
+            // an entry without all its keys matches nothing keyed
+        }
+        return entries;
+    }
+
+    /**
+     * Adds the children of B which were not taken, in order.
+     *
+     * @param nodes The node set to add them to
+     */
+    void addRemaining(NodeSet nodes) {
+        for (int i = 0; i < taken.length; i++) {
+            if (!taken[i]) {
+                nodes.add(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns whether <code>a.compare(b)</code> would return 0 or 1,
+     * without comparing the non-key children.
+     */
+    static boolean matches(Element a, Element b) {
+        if (!(a instanceof YangElement) || !(b instanceof YangElement)) {
+            return a.compare(b) >= 0;
+        }
+        if (!a.equals(b)) {
+            return false;
+        }
+        final String[] keys = ((YangElement) a).keyNames();
+        if (keys != null) {
+            for (final String key : keys) {
+                if (!a.getChild(key).equals(b.getChild(key))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the value and keys of an element, the same for all elements
+     * which match. Returns 0 if a key is missing.
+     */
+    static int hash(YangElement e, String[] keys) {
+        int hash = valueHash(e.value);
+        if (keys != null) {
+            for (final String key : keys) {
+                final Element x = e.getChild(key);
+                if (x == null) {
+                    return 0;
+                }
+                hash = 31 * hash + x.namespace.hashCode()
+                        + valueHash(x.value);
+            }
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Hashes a value, the same for all values which are equal. Numbers
+     * of different types may be equal, they are hashed by their double
+     * value.
+     */
+    static int valueHash(Object value) {
+        while (value instanceof YangBaseType<?>) {
+            value = ((YangBaseType<?>) value).getValue();
+        }
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return Double.valueOf(
+                    Utils.bigDecimalValueOf((Number) value).doubleValue())
+                    .hashCode();
+        }
+        return value.hashCode();
+    }
+}
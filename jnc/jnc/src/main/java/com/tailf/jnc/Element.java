@@ -8,6 +8,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -98,6 +99,11 @@ public class Element implements Serializable {
      */
     protected Element parent = null;
 
+    /**
+     * Index of the children, once there are many, see {@link ChildIndex}.
+     */
+    transient ChildIndex childIndex;
+
     /**
      * Constructor that creates a new element tree. An element consists of a
      * name that belongs to a namespace.
@@ -491,6 +497,15 @@ public class Element implements Serializable {
 
         children.add(child);
         child.parent = this;
+        indexAdded(child, children.size() - 1);
+        changed();
+    }
+
+    /* keeps the index of the children, if there is one, up to date */
+    private void indexAdded(Element child, int pos) {
+        if (childIndex != null && !childIndex.added(child, pos)) {
+            childIndex = null;
+        }
     }
 
     /**
@@ -530,6 +545,8 @@ public class Element implements Serializable {
 
         child.parent = this;
         children.add(index, child);
+        indexAdded(child, index);
+        changed();
         return children.indexOf(child);
     }
 
@@ -567,6 +584,8 @@ public class Element implements Serializable {
         }
 
         children.add(pos, child);
+        indexAdded(child, pos);
+        changed();
         return pos;
     }
 
@@ -644,6 +663,10 @@ public class Element implements Serializable {
             if (child == children.getElement(i)) {
                 children.remove(i);
                 child.parent = null;
+                if (childIndex != null && !childIndex.removed(child)) {
+                    childIndex = null;
+                }
+                changed();
                 break;
             }
         }
@@ -659,6 +682,20 @@ public class Element implements Serializable {
         return children != null && children.size() > 0;
     }
 
+    /**
+     * Shrinks the lists of children and prefixes to their size. Called by
+     * the parsers once an element is complete, since a parsed tree is
+     * mostly read and the lists would otherwise keep room for ten entries.
+     */
+    void trimToSize() {
+        if (children != null) {
+            children.trimToSize();
+        }
+        if (prefixes != null) {
+            prefixes.trimToSize();
+        }
+    }
+
     /* Attibutes */
 
     /**
@@ -833,12 +870,8 @@ public class Element implements Serializable {
      * @return Value of child, or null if none
      */
     public Object getValueOfChild(String childName) {
-        for (final Element child : children) {
-            if (child.name.equals(childName)) {
-                return child.getValue();
-            }
-        }
-        return null;
+        final Element child = getChild(childName);
+        return child != null ? child.getValue() : null;
     }
 
     /**
@@ -860,8 +893,18 @@ public class Element implements Serializable {
      *         <code>false</code> otherwise.
      */
     public boolean exists(String pathStr) throws JNCException {
-        final NodeSet nodes = get(pathStr);
-        return (nodes != null && !nodes.isEmpty());
+        return Path.compile(pathStr).evalFirst(this) != null;
+    }
+
+    /**
+     * Check if any nodes in this element matches a parsed path expression.
+     * 
+     * @param path The path to match
+     * @return <code>true</code> if any node matches path;
+     *         <code>false</code> otherwise.
+     */
+    public boolean exists(Path path) throws JNCException {
+        return path.evalFirst(this) != null;
     }
 
     /**
@@ -874,10 +917,19 @@ public class Element implements Serializable {
      * @return The value of the (first) found element or <code>null</code>
      */
     public Object getValue(String pathStr) throws JNCException {
-        final NodeSet nodes = get(pathStr);
-        // Don't call exists, to avoid computing matches twice
-        return (nodes != null && !nodes.isEmpty()) ? nodes.getElement(0)
-                .getValue() : null;
+        return getValue(Path.compile(pathStr));
+    }
+
+    /**
+     * Returns the value of a the first subnode matching a parsed path
+     * expression, or null if there are no matches.
+     * 
+     * @param path Path to find node
+     * @return The value of the (first) found element or <code>null</code>
+     */
+    public Object getValue(Path path) throws JNCException {
+        final Element node = path.evalFirst(this);
+        return node != null ? node.getValue() : null;
     }
 
     /**
@@ -923,6 +975,7 @@ public class Element implements Serializable {
     public void setValue(Object value) {
         trace("setValue: " + name + "=\"" + value + "\"");
         this.value = value;
+        changed();
     }
 
     /**
@@ -957,6 +1010,7 @@ public class Element implements Serializable {
      */
     public void deleteValue() {
         value = null;
+        changed();
     }
 
     /* Get */
@@ -980,11 +1034,18 @@ public class Element implements Serializable {
      * @return The first element node found by the expression.
      */
     public Element getFirst(String pathStr) throws JNCException {
-        final NodeSet nodeSet = get(pathStr);
-        if (nodeSet == null || nodeSet.isEmpty()) {
-            return null;
-        }
-        return nodeSet.getElement(0);
+        return Path.compile(pathStr).evalFirst(this);
+    }
+
+    /**
+     * Returns first node that matches a parsed path expression, or
+     * <code>null</code> if no such node was found.
+     * 
+     * @param path Path to find nodes
+     * @return The first element node found by the expression.
+     */
+    public Element getFirst(Path path) throws JNCException {
+        return path.evalFirst(this);
     }
 
     /**
@@ -1020,7 +1081,19 @@ public class Element implements Serializable {
      * @return An array of the element nodes found by the expression.
      */
     public NodeSet get(String pathStr) throws JNCException {
-        final Path path = new Path(pathStr);
+        return Path.compile(pathStr).eval(this);
+    }
+
+    /**
+     * Returns the nodes that match a parsed path expression, see
+     * {@link #get(String)}. A path can be parsed once, with
+     * {@link Path#compile(String)} or <code>new Path(pathStr)</code>, and
+     * then be used on many elements.
+     * 
+     * @param path Path to find nodes
+     * @return An array of the element nodes found by the expression.
+     */
+    public NodeSet get(Path path) throws JNCException {
         return path.eval(this);
     }
 
@@ -1041,7 +1114,10 @@ public class Element implements Serializable {
      */
     public NodeSet getChildren(String name) {
         final NodeSet n = new NodeSet();
-        if (children != null) {
+        final ChildIndex index = ChildIndex.of(this);
+        if (index != null) {
+            n.addAll(index.named(name));
+        } else if (children != null) {
             for (int i = 0; i < children.size(); i++) {
                 final Element elem = children.getElement(i);
                 if (elem.name.equals(name)) {
@@ -1059,6 +1135,11 @@ public class Element implements Serializable {
      * @return The found element or <code>null</code>
      */
     public Element getChild(String name) {
+        final ChildIndex index = ChildIndex.of(this);
+        if (index != null) {
+            final List<Element> named = index.named(name);
+            return named.isEmpty() ? null : named.get(0);
+        }
         if (children != null) {
             for (int i = 0; i < children.size(); i++) {
                 final Element elem = children.getElement(i);
@@ -1097,6 +1178,18 @@ public class Element implements Serializable {
         return copy;
     }
 
+    /**
+     * Makes an immutable copy of the tree, from which new versions can be
+     * derived sharing the unchanged subtrees. Each node is copied, and the
+     * values of {@link YangBaseType} types cloned, once. See
+     * {@link PersistentElement}.
+     *
+     * @return A persistent copy of the element sub-tree.
+     */
+    public PersistentElement snapshot() {
+        return PersistentElement.of(this);
+    }
+
     /**
      * Tries to find an element with the same namespace and name as x.
      * 
@@ -1105,6 +1198,10 @@ public class Element implements Serializable {
      */
     protected Element getChild(Element child) {
         if (children != null) {
+            final ChildIndex index = ChildIndex.of(this);
+            if (index != null) {
+                return index.find(child);
+            }
             for (final Element other : children) {
                 if (child.compare(other) >= 0) {
                     return other;
@@ -1333,7 +1430,7 @@ public class Element implements Serializable {
      * @param pathStr Path string to find nodes
      */
     public void markDelete(String pathStr) throws JNCException {
-        final Path path = new Path(pathStr);
+        final Path path = Path.compile(pathStr);
         final NodeSet nodeSet = path.eval(this);
         if (nodeSet != null) {
             for (int i = 0; i < nodeSet.size(); i++) {
@@ -1357,7 +1454,7 @@ public class Element implements Serializable {
      * @param pathStr Path string to find nodes
      */
     public void markReplace(String pathStr) throws JNCException {
-        final Path path = new Path(pathStr);
+        final Path path = Path.compile(pathStr);
         final NodeSet nodeSet = path.eval(this);
         if (nodeSet != null) {
             for (int i = 0; i < nodeSet.size(); i++) {
@@ -1381,7 +1478,7 @@ public class Element implements Serializable {
      * @param pathStr Path string to find nodes
      */
     public void markMerge(String pathStr) throws JNCException {
-        final Path path = new Path(pathStr);
+        final Path path = Path.compile(pathStr);
         final NodeSet nodeSet = path.eval(this);
         if (nodeSet != null) {
             for (int i = 0; i < nodeSet.size(); i++) {
@@ -1405,7 +1502,7 @@ public class Element implements Serializable {
      * @param pathStr Path string to find nodes
      */
     public void markCreate(String pathStr) throws JNCException {
-        final Path path = new Path(pathStr);
+        final Path path = Path.compile(pathStr);
         final NodeSet nodeSet = path.eval(this);
         if (nodeSet != null) {
             for (int i = 0; i < nodeSet.size(); i++) {
@@ -1592,6 +1689,76 @@ public class Element implements Serializable {
         return (name.hashCode() + namespace.hashCode() + value.hashCode());
     }
 
+    /**
+     * Returns a 64-bit hash of the contents of this subtree: the names,
+     * namespaces and values of its nodes, and the order of the children.
+     * Attributes are not included.
+     * <p>
+     * The hash is computed from the current contents of the subtree each
+     * time it is called, and is not kept: the {@link #value} field and the
+     * value objects can be changed without this class knowing. Trees with
+     * different hashes differ, trees with equal hashes are most likely
+     * equal. To keep the hashes of a tree, and compare versions of it at
+     * once, take a {@link #snapshot()} of it.
+     * 
+     * @return The hash, never 0
+     */
+    public long contentHash() {
+        long h = stringHash(name) * HASH_MULTIPLIER + stringHash(namespace);
+        h = h * HASH_MULTIPLIER + valueHash(value);
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                h = h * HASH_MULTIPLIER + children.getElement(i).contentHash();
+            }
+        }
+        // spread the bits, as in MurmurHash3
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private static long valueHash(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        final Object v = value instanceof YangBaseType<?> ? ((YangBaseType<?>) value)
+                .getValue() : value;
+        return stringHash(value.getClass().getName()) * HASH_MULTIPLIER
+                + stringHash(String.valueOf(v));
+    }
+
+    /* FNV-1a */
+    private static long stringHash(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Has the key lookup tables of the parent and grandparent of this node
+     * updated, see {@link Path}. To be called after changing the value or
+     * children of this node other than through the methods of this class.
+     */
+    public void changed() {
+        if (parent != null) {
+            if (parent.childIndex != null) {
+                parent.childIndex.changed(this);
+            }
+            final Element grandparent = parent.parent;
+            if (grandparent != null && grandparent.childIndex != null) {
+                grandparent.childIndex.changed(parent);
+            }
+        }
+    }
+
     /**
      * Compare two elements. Compares the name, namespace, and value. Returns:
      * 
@@ -1671,65 +1838,63 @@ public class Element implements Serializable {
      * @return This element sub-tree represented as an XML string
      */
     public String toXMLString() {
-        final StringBuffer s = new StringBuffer();
-        toXMLString(0, s);
-        return s.toString();
+        final XMLWriter w = new XMLWriter();
+        toXMLString(0, w);
+        return w.toString();
     }
 
-    private void toXMLString(int indent, StringBuffer s) {
+    private void toXMLString(int indent, XMLWriter w) {
         final boolean flag = hasChildren();
-        final String qName = qualifiedName();
-        s.append(new String(new char[indent * 2]).replace("\0", " "));
-        s.append("<").append(qName);
-        // add xmlns attributes (prefixes)
-        if (prefixes != null) {
-            for (final Prefix p : prefixes) {
-                s.append(" ").append(p.toXMLString());
-            }
-        }
-        // add attributes
-        if (attrs != null) {
-            for (final Attribute attr : attrs) {
-                s.append(" ").append(attr.toXMLString(this));
-            }
-        }
+        final String prefix = prefix();
+        w.printSpaces(indent * 2);
+        w.print('<');
+        w.printName(prefix, name);
+        printPrefixesAndAttrs(w);
         indent++;
         // add children elements if any
         if (flag) {
-            s.append(">").append(("\n"));
+            w.print('>');
+            w.print('\n');
             for (final Element child : children) {
-                child.toXMLString(indent, s);
+                child.toXMLString(indent, w);
             }
         } else { // add value if any
             if (value != null) {
-                s.append(">").append((""));
-                final String stringValue = value.toString().replaceAll("&",
-                        "&amp;");
-                s.append(getIndentationSpacing(false, indent));
-                s.append(stringValue).append((""));
+                w.print('>');
+                printValue(w, XMLWriter.AMP_ESCAPES);
             } else {
-             // self-closing tag
-             s.append("/>").append((""));
-             return;
+                // self-closing tag
+                w.print("/>");
+                return;
             }
         }
         indent--;
-        s.append(getIndentationSpacing(flag, indent)).append("</").append(qName).append(">\n");
+        if (flag) {
+            w.printSpaces(indent * 2);
+        }
+        w.print("</");
+        w.printName(prefix, name);
+        w.print(">\n");
     }
 
     /**
-     * Gets indentation spacing for any given indent level.
-     * 
-     * @param shouldIndent Whether or not there should be any indentation.
-     * @param indent The indentation level.
-     * @return A string with indent * 2 number of spaces if shouldIndent is
-     *         <code>true</code>; otherwise an empty string.
+     * Prints the xmlns attributes and the attributes of the start tag.
      */
-    private String getIndentationSpacing(boolean shouldIndent, int indent) {
-        if (shouldIndent) {
-            return new String(new char[indent * 2]).replace("\0", " ");
+    private void printPrefixesAndAttrs(XMLWriter w) {
+        // add xmlns attributes (prefixes)
+        if (prefixes != null) {
+            for (final Prefix p : prefixes) {
+                w.print(' ');
+                p.encode(w);
+            }
+        }
+        // add attributes
+        if (attrs != null) {
+            for (final Attribute attr : attrs) {
+                w.print(' ');
+                attr.encode(w, this);
+            }
         }
-        return "";
     }
 
     /**
@@ -1794,37 +1959,57 @@ public class Element implements Serializable {
     protected void encode(OutTransport out, boolean newline_at_end,
                           Capabilities capas) throws JNCException
     {
-        final String qName = qualifiedName();
-        out.print("<" + qName);
-        // add xmlns attributes (prefixes)
-        if (prefixes != null) {
-            for (final Prefix p : prefixes) {
-                out.print(" ");
-                p.encode(out);
-            }
+        if (out instanceof XMLWriter) {
+            writeXML((XMLWriter) out, newline_at_end, capas);
+            return;
         }
-        // add attributes
-        if (attrs != null) {
-            for (final Attribute attr : attrs) {
-                out.print(" ");
-                attr.encode(out, this);
-            }
+        // encode into a buffer, passed on as a whole
+        final XMLWriter w = new XMLWriter(out);
+        writeXML(w, newline_at_end, capas);
+        w.drain();
+    }
+
+    /* prints the value of this leaf as XML text */
+    private void printValue(XMLWriter w, byte[][] escapes) {
+        if (value instanceof YangBinary) {
+            // decoded a chunk at a time
+            ((YangBinary) value).print(w, escapes);
+        } else {
+            w.printEscaped(value.toString(), escapes);
         }
+    }
+
+    private void writeXML(XMLWriter w, boolean newline_at_end,
+            Capabilities capas) throws JNCException {
+        final String prefix = prefix();
+        w.print('<');
+        w.printName(prefix, name);
+        printPrefixesAndAttrs(w);
         if (hasChildren()) {
             // add children elements if any
-            out.println(">");
+            w.print('>');
+            w.print('\n');
             for (final Element child : children) {
-                child.encode(out, true, capas);
+                child.encode(w, true, capas);
             }
         } else if (value != null) {
             // otherwise, add value (if any)
-            out.print(">" + Utils.escapeXml(value.toString()));
+            w.print('>');
+            printValue(w, XMLWriter.TEXT_ESCAPES);
         } else {
-	    // self-closing tag
-	    out.print("/>" + (newline_at_end ? "\n" : ""));
-	    return;
-	}
-        out.print("</" + qName + ">" + (newline_at_end ? "\n" : ""));
+            // self-closing tag
+            w.print("/>");
+            if (newline_at_end) {
+                w.print('\n');
+            }
+            return;
+        }
+        w.print("</");
+        w.printName(prefix, name);
+        w.print('>');
+        if (newline_at_end) {
+            w.print('\n');
+        }
     }
 
     /**
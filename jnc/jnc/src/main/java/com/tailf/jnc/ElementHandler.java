@@ -28,11 +28,24 @@ class ElementHandler extends DefaultHandler {
     private boolean leaf = false;
     private String leafNs;
     private String leafName;
-    private String leafValue;
+
+    // text of the current element or leaf, collected across characters()
+    private final XMLParser.TextBuffer text;
+
+    // canonical names and namespaces, borrowed for the parse
+    private final SymbolTable symbols;
+
+    ElementHandler(SymbolTable symbols) {
+        this.symbols = symbols;
+        text = new XMLParser.TextBuffer(symbols);
+    }
 
     @Override
     public void startElement(String uri, String localName, String qName,
             Attributes attributes) throws SAXException {
+        uri = symbols.intern(uri);
+        localName = symbols.intern(localName);
+        text.clear();
 
         if (unknownLevel > 0) {
             unkownStartElement(uri, localName, attributes);
@@ -65,12 +78,11 @@ class ElementHandler extends DefaultHandler {
             leaf = true;
             leafNs = uri;
             leafName = localName;
-            leafValue = "";
             return;
         }
         child.prefixes = prefixes;
         prefixes = null;
-        addOtherAttributes(attributes, child);
+        XMLParser.addAttributes(symbols, attributes, child);
         current = child; // step down
     }
 
@@ -78,7 +90,7 @@ class ElementHandler extends DefaultHandler {
         final Element child = new Element(uri, localName);
         child.prefixes = prefixes;
         prefixes = null;
-        addOtherAttributes(attributes, child);
+        XMLParser.addAttributes(symbols, attributes, child);
         if (current == null) {
             top = child;
         } else {
@@ -87,23 +99,10 @@ class ElementHandler extends DefaultHandler {
         current = child; // step down
     }
 
-    private void addOtherAttributes(Attributes attributes, Element child) {
-        // add other attributes
-        for (int i = 0; i < attributes.getLength(); i++) {
-            final String attrName = attributes.getLocalName(i);
-            final String attrUri = attributes.getURI(i);
-            final String attrValue = attributes.getValue(i);
-            final Attribute attr = new Attribute(attrUri, attrName, attrValue);
-            child.addAttr(attr);
-        }
-    }
-
     private void unknownEndElement() {
-        // check that we don't have mixed content
-        if (current.hasChildren() && current.value != null) {
-            // MIXED content not allowed
-            current.value = null;
-        }
+        // MIXED content not allowed
+        text.assignTo(current);
+        current.trimToSize();
         // step up
         current = current.getParent();
     }
@@ -121,17 +120,15 @@ class ElementHandler extends DefaultHandler {
             // If it's a Leaf - we need to set value properly using
             // the setLeafValue method which will check restrictions
             try {
-            ((YangElement) current).setLeafValue(leafNs, leafName, leafValue);
+            ((YangElement) current).setLeafValue(leafNs, leafName, text.take());
             } catch (final JNCException e) {
                 e.printStackTrace();
                 throw new SAXException(e.toString());
             }
         } else {
-            // check that we don't have mixed content
-            if (current.hasChildren() && current.value != null) {
-                // MIXED content not allowed
-                current.value = null;
-            }
+            // MIXED content not allowed
+            text.assignTo(current);
+            current.trimToSize();
         }
 
         // step up
@@ -142,28 +139,9 @@ class ElementHandler extends DefaultHandler {
         }
     }
 
-    private void unknownCharacters(char[] ch, int start, int length) {
-        if (current.value == null) {
-            current.value = "";
-        }
-        current.value = current.value + new String(ch, start, length);
-    }
-
     @Override
     public void characters(char[] ch, int start, int length) {
-        if (unknownLevel > 0) {
-            unknownCharacters(ch, start, length);
-            return;
-        }
-
-        if (leaf) {
-            leafValue = leafValue + new String(ch, start, length);
-        } else {
-            if (current.value == null) {
-                current.value = "";
-            }
-            current.value = current.value + new String(ch, start, length);
-        }
+        text.append(ch, start, length);
     }
 
     @Override
@@ -171,6 +149,6 @@ class ElementHandler extends DefaultHandler {
         if (prefixes == null) {
             prefixes = new PrefixMap();
         }
-        prefixes.add(new Prefix(prefix, uri));
+        prefixes.add(XMLParser.newPrefix(symbols, prefix, uri));
     }
 }
@@ -0,0 +1,647 @@
+package com.tailf.jnc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A compact, read-only index of a parsed XML document.
+ * <p>
+ * Instead of an {@link Element} object per node, the index keeps the
+ * structure of the document in a few primitive arrays: for each node its
+ * parent and next sibling, the id of its name and namespace in a table of
+ * interned symbols, and the offset and length of its text in one character
+ * buffer shared by all the nodes. That is 20 bytes per node, plus the text.
+ * The few attributes and prefix mappings are kept in arrays of their own,
+ * sorted by the node they belong to.
+ * <p>
+ * Nodes are identified by their int index, in document order, the top
+ * element being node 0. The index can be navigated directly, or elements
+ * can be built from it when they are needed, with {@link #element(int)}
+ * and {@link #get(String)}. Subtrees which are never accessed are never
+ * built. A built element is attached to its built ancestors, which only
+ * hold the children built so far until they are built themselves.
+ * <p>
+ * Documents are created with {@link XMLParser#parseIndexed(String)}. The
+ * elements built from them are plain elements, also when parsed by a
+ * {@link YangXMLParser}. Documents are not thread safe once elements are
+ * built from them.
+ */
+public class IndexedDocument {
+
+    /** no node, for example the parent of the top element */
+    public static final int NONE = -1;
+
+    private static final int INITIAL_NODES = 64;
+
+    /* symbols */
+    private final ArrayList<String> symbols = new ArrayList<String>();
+    private final HashMap<String, Integer> symbolIds = new HashMap<String, Integer>();
+
+    /* distinct (name, namespace) pairs, and an open hash table on them */
+    private int qnameCount;
+    private int[] qnameName = new int[16];
+    private int[] qnameNs = new int[16];
+    private int[] qnameTable = new int[32];
+
+    /*
+     * nodes, in document order: the first child of a node, if any, is the
+     * node right after it
+     */
+    private int count;
+    private int[] parent = new int[INITIAL_NODES];
+    private int[] nextSibling = new int[INITIAL_NODES];
+    private int[] qname = new int[INITIAL_NODES];
+    private int[] valueStart = new int[INITIAL_NODES];
+    private int[] valueLength = new int[INITIAL_NODES];
+
+    /* character data of all the nodes */
+    private char[] text = new char[1024];
+    private int textLength;
+
+    /* attributes and prefix mappings, with the node they belong to */
+    private int attrCount;
+    private int[] attrOwner = new int[16];
+    private int[] attrNs = new int[16];
+    private int[] attrName = new int[16];
+    private int[] attrValueStart = new int[16];
+    private int[] attrValueLength = new int[16];
+    private int prefixCount;
+    private int[] prefixOwner = new int[16];
+    private int[] prefixName = new int[16];
+    private int[] prefixUri = new int[16];
+
+    /* the elements built so far, and which of them are not complete */
+    private Element[] elements;
+    private final BitSet partial = new BitSet();
+
+    IndexedDocument() {
+    }
+
+    /**
+     * Returns the number of element nodes in the document.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the top element node, or {@link #NONE} if the document is
+     * empty.
+     */
+    public int root() {
+        return count > 0 ? 0 : NONE;
+    }
+
+    /**
+     * Returns the parent node of a node, or {@link #NONE}.
+     */
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * Returns the first child node of a node, or {@link #NONE}.
+     */
+    public int firstChild(int node) {
+        return node + 1 < count && parent[node + 1] == node ? node + 1 : NONE;
+    }
+
+    /**
+     * Returns the next sibling node of a node, or {@link #NONE}.
+     */
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * Returns the first child node of a node with the given name, or
+     * {@link #NONE}.
+     */
+    public int child(int node, String childName) {
+        for (int c = firstChild(node); c != NONE; c = nextSibling[c]) {
+            if (name(c).equals(childName)) {
+                return c;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the local name of a node.
+     */
+    public String name(int node) {
+        return symbols.get(qnameName[qname[node]]);
+    }
+
+    /**
+     * Returns the namespace of a node.
+     */
+    public String namespace(int node) {
+        return symbols.get(qnameNs[qname[node]]);
+    }
+
+    /**
+     * Returns the value of a node, as {@link Element#getValue()} would for
+     * the parsed element: <code>null</code> if it has children or no text.
+     */
+    public String value(int node) {
+        if (valueLength[node] < 0) {
+            return null;
+        }
+        return new String(text, valueStart[node], valueLength[node]);
+    }
+
+    /**
+     * Returns the value of an attribute of a node, or <code>null</code>.
+     */
+    public String attrValue(int node, String attrName) {
+        final int end = lowerBound(attrOwner, attrCount, node + 1);
+        for (int a = lowerBound(attrOwner, attrCount, node); a < end; a++) {
+            if (symbols.get(this.attrName[a]).equals(attrName)) {
+                return new String(text, attrValueStart[a], attrValueLength[a]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the namespace a prefix is mapped to in the context of a node,
+     * like {@link Element#lookupContextPrefix(String)}.
+     */
+    public String lookupContextPrefix(int node, String prefix) {
+        for (int n = node; n != NONE; n = parent[n]) {
+            final int end = lowerBound(prefixOwner, prefixCount, n + 1);
+            for (int p = lowerBound(prefixOwner, prefixCount, n); p < end; p++) {
+                if (symbols.get(prefixName[p]).equals(prefix)) {
+                    return symbols.get(prefixUri[p]);
+                }
+            }
+        }
+        return Element.defaultPrefixes.prefixToNs(prefix);
+    }
+
+    /**
+     * Returns the index of the first of the n sorted values that is greater
+     * than or equal to the key.
+     */
+    private static int lowerBound(int[] a, int n, int key) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (a[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the element of a node, with all its descendants, building it
+     * if it was not already. Building an element also builds its ancestors,
+     * so that it has the same context (parent and prefixes) as in a parsed
+     * tree.
+     *
+     * @param node The node
+     * @return The element, the same instance on every call
+     */
+    public Element element(int node) {
+        if (elements == null) {
+            elements = new Element[count];
+        }
+        Element e = elements[node];
+        if (e != null && !partial.get(node)) {
+            return e;
+        }
+        final boolean attached = e != null;
+        e = complete(node);
+        if (!attached) {
+            attach(node);
+        }
+        return e;
+    }
+
+    /**
+     * Returns the top element of the document, with the whole document
+     * built.
+     */
+    public Element getRoot() {
+        return count > 0 ? element(0) : null;
+    }
+
+    /**
+     * Evaluates a path with the top element as context node, like
+     * {@link Element#get(String)}, building only the selected elements.
+     *
+     * @param pathStr Path expression
+     * @return The selected elements
+     */
+    public NodeSet get(String pathStr) throws JNCException {
+        return select(Path.compile(pathStr));
+    }
+
+    /**
+     * Evaluates a path with the top element as context node, building only
+     * the selected elements.
+     *
+     * @param path The path
+     * @return The selected elements
+     */
+    public NodeSet select(Path path) throws JNCException {
+        final NodeSet result = new NodeSet();
+        if (count == 0) {
+            return result;
+        }
+        int[] nodes = { 0 };
+        int n = 1;
+        for (final Path.LocationStep step : path.locationSteps) {
+            int[] selected = new int[Math.max(n, 4)];
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                final int node = nodes[i];
+                switch (step.axis) {
+                case Path.AXIS_CHILD:
+                    for (int c = firstChild(node); c != NONE; c = nextSibling[c]) {
+                        if (nodeTest(step, c)) {
+                            selected = add(selected, m++, c);
+                        }
+                    }
+                    break;
+                case Path.AXIS_PARENT:
+                    if (parent[node] != NONE && nodeTest(step, parent[node])) {
+                        selected = add(selected, m++, parent[node]);
+                    }
+                    break;
+                case Path.AXIS_SELF:
+                    if (nodeTest(step, node)) {
+                        selected = add(selected, m++, node);
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            nodes = selected;
+            n = m;
+        }
+        for (int i = 0; i < n; i++) {
+            result.add(element(nodes[i]));
+        }
+        return result;
+    }
+
+    private static int[] add(int[] a, int i, int node) {
+        if (i == a.length) {
+            a = Arrays.copyOf(a, 2 * i);
+        }
+        a[i] = node;
+        return a;
+    }
+
+    /**
+     * The name test and the predicates of a step, like
+     * Path.LocationStep.nodeTest does on a tree.
+     */
+    private boolean nodeTest(Path.LocationStep step, int node)
+            throws JNCException {
+        if (!name(node).equals(step.name)) {
+            return false;
+        }
+        if (step.prefix != null
+                && !namespace(node).equals(
+                        lookupContextPrefix(node, step.prefix))) {
+            return false;
+        }
+        if (step.predicates != null) {
+            final Element probe = probe(node);
+            final NodeSet contextSet = new NodeSet(probe);
+            for (final Path.Expr predicate : step.predicates) {
+                if (!predicate.eval(probe, contextSet).booleanValue()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a throwaway element of a node with its attributes and its
+     * children one level down, which is what predicates look at.
+     */
+    private Element probe(int node) {
+        final Element e = newElement(node);
+        e.children = new NodeSet();
+        for (int c = firstChild(node); c != NONE; c = nextSibling[c]) {
+            final Element child = new Element(namespace(c), name(c));
+            child.value = value(c);
+            e.children.add(child);
+        }
+        return e;
+    }
+
+    private Element newElement(int node) {
+        final Element e = new Element(namespace(node), name(node));
+        e.value = value(node);
+        final int attrBegin = lowerBound(attrOwner, attrCount, node);
+        final int attrEnd = lowerBound(attrOwner, attrCount, node + 1);
+        if (attrBegin < attrEnd) {
+            e.attrs = new ArrayList<Attribute>(attrEnd - attrBegin);
+            for (int a = attrBegin; a < attrEnd; a++) {
+                e.attrs.add(new Attribute(symbols.get(attrNs[a]), symbols
+                        .get(attrName[a]), new String(text,
+                        attrValueStart[a], attrValueLength[a])));
+            }
+        }
+        final int prefixBegin = lowerBound(prefixOwner, prefixCount, node);
+        final int prefixEnd = lowerBound(prefixOwner, prefixCount, node + 1);
+        if (prefixBegin < prefixEnd) {
+            e.prefixes = new PrefixMap();
+            for (int p = prefixBegin; p < prefixEnd; p++) {
+                e.prefixes.add(new Prefix(symbols.get(prefixName[p]),
+                        symbols.get(prefixUri[p])));
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Builds the element of a node and all its descendants, reusing the
+     * elements already built.
+     */
+    private Element complete(int node) {
+        Element e = elements[node];
+        if (e != null && !partial.get(node)) {
+            return e;
+        }
+        if (e == null) {
+            e = newElement(node);
+            elements[node] = e;
+        }
+        partial.clear(node);
+        if (firstChild(node) != NONE) {
+            final NodeSet children = new NodeSet();
+            for (int c = firstChild(node); c != NONE; c = nextSibling[c]) {
+                final Element child = complete(c);
+                child.parent = e;
+                children.add(child);
+            }
+            e.children = children;
+        }
+        return e;
+    }
+
+    /**
+     * Adds the element of a node to the element of its parent, building the
+     * parent, as a partial element, if needed.
+     */
+    private void attach(int node) {
+        final int p = parent[node];
+        if (p == NONE) {
+            return;
+        }
+        Element pe = elements[p];
+        if (pe == null) {
+            pe = newElement(p);
+            pe.value = null;
+            elements[p] = pe;
+            partial.set(p);
+            attach(p);
+        }
+        final Element e = elements[node];
+        e.parent = pe;
+        if (pe.children == null) {
+            pe.children = new NodeSet();
+        }
+        /* keep the built children in document order */
+        int i = pe.children.size();
+        for (int c = nextSibling[node]; c != NONE && i > 0; c = nextSibling[c]) {
+            if (elements[c] != null) {
+                i = pe.children.indexOf(elements[c]);
+                break;
+            }
+        }
+        pe.children.add(i, e);
+    }
+
+    /* Building */
+
+    private int symbol(String s) {
+        final Integer id = symbolIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        symbols.add(s);
+        symbolIds.put(s, symbols.size() - 1);
+        return symbols.size() - 1;
+    }
+
+    /**
+     * Returns the id of a (name, namespace) pair, adding it if it is new.
+     */
+    private int qname(int nameId, int nsId) {
+        final int mask = qnameTable.length - 1;
+        int i = (nameId * 31 + nsId) & mask;
+        int q;
+        while ((q = qnameTable[i]) != 0) {
+            if (qnameName[q - 1] == nameId && qnameNs[q - 1] == nsId) {
+                return q - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if (qnameCount == qnameName.length) {
+            qnameName = Arrays.copyOf(qnameName, 2 * qnameCount);
+            qnameNs = Arrays.copyOf(qnameNs, 2 * qnameCount);
+        }
+        qnameName[qnameCount] = nameId;
+        qnameNs[qnameCount] = nsId;
+        /* table entries are ids plus one, zero marks a free slot */
+        qnameTable[i] = ++qnameCount;
+        if (qnameCount > qnameTable.length >> 1) {
+            qnameTable = new int[2 * qnameTable.length];
+            for (int j = 0; j < qnameCount; j++) {
+                int k = (qnameName[j] * 31 + qnameNs[j])
+                        & (qnameTable.length - 1);
+                while (qnameTable[k] != 0) {
+                    k = (k + 1) & (qnameTable.length - 1);
+                }
+                qnameTable[k] = j + 1;
+            }
+        }
+        return qnameCount - 1;
+    }
+
+    private int appendText(char[] ch, int start, int length) {
+        ensureText(length);
+        System.arraycopy(ch, start, text, textLength, length);
+        final int offset = textLength;
+        textLength += length;
+        return offset;
+    }
+
+    private int appendText(String s) {
+        ensureText(s.length());
+        s.getChars(0, s.length(), text, textLength);
+        final int offset = textLength;
+        textLength += s.length();
+        return offset;
+    }
+
+    private void ensureText(int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(2 * text.length, textLength
+                    + length));
+        }
+    }
+
+    private void growNodes() {
+        final int size = 2 * parent.length;
+        parent = Arrays.copyOf(parent, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        qname = Arrays.copyOf(qname, size);
+        valueStart = Arrays.copyOf(valueStart, size);
+        valueLength = Arrays.copyOf(valueLength, size);
+    }
+
+    /**
+     * Trims the arrays to their used size once the document is parsed.
+     */
+    void trim() {
+        parent = Arrays.copyOf(parent, count);
+        nextSibling = Arrays.copyOf(nextSibling, count);
+        qname = Arrays.copyOf(qname, count);
+        valueStart = Arrays.copyOf(valueStart, count);
+        valueLength = Arrays.copyOf(valueLength, count);
+        text = Arrays.copyOf(text, textLength);
+        attrOwner = Arrays.copyOf(attrOwner, attrCount);
+        attrNs = Arrays.copyOf(attrNs, attrCount);
+        attrName = Arrays.copyOf(attrName, attrCount);
+        attrValueStart = Arrays.copyOf(attrValueStart, attrCount);
+        attrValueLength = Arrays.copyOf(attrValueLength, attrCount);
+        prefixOwner = Arrays.copyOf(prefixOwner, prefixCount);
+        prefixName = Arrays.copyOf(prefixName, prefixCount);
+        prefixUri = Arrays.copyOf(prefixUri, prefixCount);
+    }
+
+    /**
+     * Returns a handler building this index from the parse events, with
+     * the names canonicalized by the given table.
+     */
+    DefaultHandler builder(SymbolTable symbols) {
+        return new Builder(symbols);
+    }
+
+    /**
+     * The handler building the index, the counterpart of the handlers of
+     * {@link XMLParser} building element trees.
+     */
+    private class Builder extends DefaultHandler {
+
+        private final SymbolTable symbolTable;
+
+        private int current = NONE;
+        /* last child added to each open node */
+        private int[] lastChild = new int[16];
+        private int depth;
+
+        /* text of the current node, collected across characters() calls */
+        private int textStart;
+        private boolean textPresent;
+
+        Builder(SymbolTable symbolTable) {
+            this.symbolTable = symbolTable;
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            if (prefixCount == prefixName.length) {
+                prefixOwner = Arrays.copyOf(prefixOwner, 2 * prefixCount);
+                prefixName = Arrays.copyOf(prefixName, 2 * prefixCount);
+                prefixUri = Arrays.copyOf(prefixUri, 2 * prefixCount);
+            }
+            /* the owner is the element about to start */
+            prefixOwner[prefixCount] = count;
+            prefixName[prefixCount] = symbol(symbolTable.intern(prefix));
+            prefixUri[prefixCount] = symbol(symbolTable.intern(uri));
+            prefixCount++;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            // MIXED content not allowed, drop the text of the parent
+            textLength = textStart;
+            if (count == parent.length) {
+                growNodes();
+            }
+            final int node = count++;
+            parent[node] = current;
+            nextSibling[node] = NONE;
+            qname[node] = qname(symbol(symbolTable.intern(localName)),
+                    symbol(symbolTable.intern(uri)));
+            valueLength[node] = -1;
+            for (int i = 0; i < attributes.getLength(); i++) {
+                if (attrCount == attrName.length) {
+                    attrOwner = Arrays.copyOf(attrOwner, 2 * attrCount);
+                    attrNs = Arrays.copyOf(attrNs, 2 * attrCount);
+                    attrName = Arrays.copyOf(attrName, 2 * attrCount);
+                    attrValueStart = Arrays.copyOf(attrValueStart,
+                            2 * attrCount);
+                    attrValueLength = Arrays.copyOf(attrValueLength,
+                            2 * attrCount);
+                }
+                attrOwner[attrCount] = node;
+                attrNs[attrCount] = symbol(symbolTable.intern(attributes
+                        .getURI(i)));
+                attrName[attrCount] = symbol(symbolTable.intern(attributes
+                        .getLocalName(i)));
+                final String value = attributes.getValue(i);
+                attrValueStart[attrCount] = appendText(value);
+                attrValueLength[attrCount] = value.length();
+                attrCount++;
+            }
+
+            if (current != NONE) {
+                final int last = lastChild[depth - 1];
+                if (last != NONE) {
+                    nextSibling[last] = node;
+                }
+                lastChild[depth - 1] = node;
+            }
+            if (depth == lastChild.length) {
+                lastChild = Arrays.copyOf(lastChild, 2 * depth);
+            }
+            lastChild[depth++] = NONE;
+            current = node;
+            textStart = textLength;
+            textPresent = false;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (lastChild[depth - 1] == NONE && textPresent) {
+                valueStart[current] = textStart;
+                valueLength[current] = textLength - textStart;
+            } else {
+                // MIXED content not allowed, drop the text
+                textLength = textStart;
+            }
+            depth--;
+            current = parent[current];
+            textStart = textLength;
+            textPresent = false;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            appendText(ch, start, length);
+            textPresent = true;
+        }
+    }
+}
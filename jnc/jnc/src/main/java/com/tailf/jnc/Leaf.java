@@ -16,19 +16,15 @@ public class Leaf extends Element {
         super(ns, name);
     }
 
-    // cache the Tagpath and the SchemaNode
-    private Tagpath tp = null;
+    // cache the SchemaNode
     private SchemaNode n = null;
 
     @Override
     protected void encode(OutTransport out, boolean newline_at_end,
                           Capabilities capas) throws JNCException {
         if (RevisionInfo.olderRevisionSupportEnabled && capas != null) {
-            if (tp == null) {
-                tp = tagpath();
-            }
             if (n == null) {
-                n = SchemaTree.lookup(namespace, tp);
+                n = SchemaTree.lookup(namespace, this);
             }
             final String rev = capas.getRevision(namespace);
             if (n != null && n.revInfo != null) {
@@ -45,8 +41,8 @@ public class Leaf extends Element {
                             if (r.data.equals(getValue().toString())) {
                                 throw new JNCException(
                                         JNCException.REVISION_ERROR,
-                                        tp + " bad enum value for rev (" + rev
-                                            + ") " + r.data);
+                                        tagpath() + " bad enum value for rev ("
+                                            + rev + ") " + r.data);
                             }
                             break;
                         case RevisionInfo.R_BITS_ADDED:
@@ -54,8 +50,8 @@ public class Leaf extends Element {
                             if (r.data.equals(getValue().toString())) {
                                 throw new JNCException(
                                         JNCException.REVISION_ERROR,
-                                        tp + " bad bits value for rev (" + rev
-                                            + ") " + r.data);
+                                        tagpath() + " bad bits value for rev ("
+                                            + rev + ") " + r.data);
                             }
                             break;
                         case RevisionInfo.R_MANDATORY_TRUE_TO_FALSE:
@@ -192,6 +192,12 @@ public class NetconfSession {
      */
     protected XMLParser parser;
 
+    /**
+     * Parser for the replies to {@link #callRpc(Element)}, created on first
+     * use.
+     */
+    private XMLParser elementParser;
+
     /**
      * The outgoing transport for this Session
      */
@@ -202,6 +208,12 @@ public class NetconfSession {
      */
     protected InTransport in;
 
+    /**
+     * Buffer in front of {@link #out} for encoding requests, unless the
+     * transport already is an {@link XMLWriter}.
+     */
+    private XMLWriter writer;
+
 
    /**
      * Creates a new session object using the given transport object. This will
@@ -272,6 +284,24 @@ public class NetconfSession {
     {
       this.out = out;
     }
+
+    /**
+     * Returns the writer to encode a request with. What a request which
+     * failed half-way left in it is discarded.
+     */
+    XMLWriter writer() {
+        final XMLWriter w;
+        if (out instanceof XMLWriter) {
+            w = (XMLWriter) out;
+        } else {
+            if (writer == null || !writer.writesTo(out)) {
+                writer = new XMLWriter(out);
+            }
+            w = writer;
+        }
+        w.clear();
+        return w;
+    }
     
     /**
      * Returns the transport object used by this session.
@@ -309,8 +339,9 @@ public class NetconfSession {
      */
     protected void hello() throws JNCException, IOException {
         trace("hello: ");
-        encode_hello(out);
-        out.flush();
+        final XMLWriter w = writer();
+        encode_hello(w);
+        w.flush();
         final String reply = in.readOne().toString();
         establish_capabilities(reply);
     }
@@ -385,8 +416,9 @@ public class NetconfSession {
     public int sendRequest(Element request) throws JNCException
     {
         // print, but no newline at the end
-        request.encode(out, false, capabilities);
-        out.flush();
+        final XMLWriter w = writer();
+        request.encode(w, false, capabilities);
+        w.flush();
         return message_id - 1; // FIXME
     }
 
@@ -432,8 +464,9 @@ public class NetconfSession {
      */
     public NodeSet callRpc(Element data) throws JNCException, IOException {
         trace("call: " + data.toXMLString());
-        final int mid = encode_rpc(out, data);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_rpc(w, data);
+        w.flush();
         return recv_call_rpc_reply(data, mid);
     }
 
@@ -444,8 +477,9 @@ public class NetconfSession {
      */
     public int sendRpc(Element data) throws JNCException, IOException {
         trace("send rpc: " + data.toXMLString());
-        final int mid = encode_rpc(out, data);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_rpc(w, data);
+        w.flush();
         return mid;
     }
 
@@ -492,8 +526,9 @@ public class NetconfSession {
      */
     public NodeSet get() throws JNCException, IOException {
         trace("get: \"\"");
-        final int mid = encode_get(out, "");
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_get(w, "");
+        w.flush();
         return recv_rpc_reply_data(mid);
     }
 
@@ -1275,8 +1310,11 @@ public class NetconfSession {
 
     NodeSet recv_call_rpc_reply(Element e, int mid) throws JNCException,
             IOException {
-        final XMLParser parser = new XMLParser(); // XXX: Why new parser?
-        return recv_rpc_reply("", parser, Integer.toString(mid));
+        // plain Element tree, also when the session parser is data model aware
+        if (elementParser == null) {
+            elementParser = new XMLParser(parser.getBackend());
+        }
+        return recv_rpc_reply("", elementParser, Integer.toString(mid));
     }
 
     NodeSet recv_rpc_reply(String path) throws JNCException, IOException {
@@ -2504,8 +2542,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "the :candidate capability is not supported by server");
         }
-        final int mid = encode_commit(out);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_commit(w);
+        w.flush();
         return mid;
     }
 
@@ -2516,24 +2555,27 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "illegal to use kill-session on own session id");
         }
-        final int mid = encode_killSession(out, sessionId1);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_killSession(w, sessionId1);
+        w.flush();
         return mid;
     }
 
     protected int close_session_request()
     {
         trace("closeSession");
-        final int mid = encode_closeSession(out);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_closeSession(w);
+        w.flush();
         return mid;
     }
 
     protected int action_request(Element data) throws JNCException
     {
         trace("action: " + data.toXMLString());
-        int mid = encode_action(out, data);
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_action(w, data);
+        w.flush();
         return mid;
     }
 
@@ -2548,8 +2590,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "the :confirmed-commit capability is not supported by server");
         }
-        final int mid = encode_confirmedCommit(out, timeoutSecs);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_confirmedCommit(w, timeoutSecs);
+        w.flush();
         return mid;
     }
 
@@ -2557,17 +2600,19 @@ public class NetconfSession {
     {
         trace("copyConfig: source=" + sourceUrl + " target="
               + datastoreToString(target));
-        int mid = encode_copyConfig(out, encode_url(sourceUrl),
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, encode_url(sourceUrl),
                                encode_datastore(target));
-        out.flush();
+        w.flush();
         return mid;
     }
 
     protected int copy_config_request(String sourceUrl, String targetUrl) throws JNCException
     {
         trace("copyConfig: source=" + sourceUrl + " target=" + targetUrl);
-        int mid = encode_copyConfig(out, encode_url(sourceUrl), encode_url(targetUrl));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, encode_url(sourceUrl), encode_url(targetUrl));
+        w.flush();
         return mid;
     }
 
@@ -2575,9 +2620,10 @@ public class NetconfSession {
     {
         trace("copyConfig: source=" + datastoreToString(source) + " target="
               + targetUrl);
-        int mid = encode_copyConfig(out, encode_datastore(source),
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, encode_datastore(source),
                                encode_url(targetUrl));
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2585,9 +2631,10 @@ public class NetconfSession {
     {
         trace("copyConfig: " + datastoreToString(source) + " "
               + datastoreToString(target));
-        int mid = encode_copyConfig(out, encode_datastore(source),
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, encode_datastore(source),
                                encode_datastore(target));
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2595,8 +2642,9 @@ public class NetconfSession {
     {
         trace("copyConfig: target=" + targetUrl + "\n"
               + sourceTrees.toXMLString());
-        int mid = encode_copyConfig(out, sourceTrees, encode_url(targetUrl));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, sourceTrees, encode_url(targetUrl));
+        w.flush();
         return mid;
     }
 
@@ -2604,8 +2652,9 @@ public class NetconfSession {
     {
         trace("copyConfig: target=" + datastoreToString(target) + "\n"
               + sourceTrees.toXMLString());
-        int mid = encode_copyConfig(out, sourceTrees, encode_datastore(target));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_copyConfig(w, sourceTrees, encode_datastore(target));
+        w.flush();
         return mid;
     }
 
@@ -2621,9 +2670,10 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :xpath is not supported by server");
         }
-        final int mid = encode_createSubscription(out, streamName,
+        final XMLWriter w = writer();
+        final int mid = encode_createSubscription(w, streamName,
                                                        eventFilter, startTime, stopTime);
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2636,25 +2686,28 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :notification is not supported by server");
         }
-        final int mid = encode_createSubscription(out, streamName,
+        final XMLWriter w = writer();
+        final int mid = encode_createSubscription(w, streamName,
                                                        eventFilter, startTime, stopTime);
-        out.flush();
+        w.flush();
         return mid;
     }
 
     protected int delete_config_request(int datastore) throws JNCException
     {
         trace("deleteConfig: " + datastoreToString(datastore));
-        int mid = encode_deleteConfig(out, encode_datastore(datastore));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_deleteConfig(w, encode_datastore(datastore));
+        w.flush();
         return mid;
     }
 
     protected int delete_config_request(String targetUrl) throws JNCException
     {
         trace("deleteConfig: " + targetUrl);
-        int mid = encode_deleteConfig(out, encode_url(targetUrl));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_deleteConfig(w, encode_url(targetUrl));
+        w.flush();
         return mid;
     }
 
@@ -2665,8 +2718,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "the :candidate capability is not supported by server");
         }
-        final int mid = encode_discardChanges(out);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_discardChanges(w);
+        w.flush();
         return mid;
     }
 
@@ -2674,9 +2728,10 @@ public class NetconfSession {
     {
         trace("editConfig: target=" + datastoreToString(datastore) + "\n"
               + configTree.toXMLString());
-        final int mid = encode_editConfig(out, encode_datastore(datastore),
+        final XMLWriter w = writer();
+        final int mid = encode_editConfig(w, encode_datastore(datastore),
                                                configTree);
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2684,9 +2739,10 @@ public class NetconfSession {
     {
         trace("editConfig: target=" + datastoreToString(datastore) + "\n"
               + configTrees.toXMLString());
-        final int mid = encode_editConfig(out, encode_datastore(datastore),
+        final XMLWriter w = writer();
+        final int mid = encode_editConfig(w, encode_datastore(datastore),
                                                configTrees);
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2694,17 +2750,19 @@ public class NetconfSession {
     {
         trace("editConfig: target=" + datastoreToString(datastore)
               + " source=" + url);
-        final int mid = encode_editConfig(out, encode_datastore(datastore),
+        final XMLWriter w = writer();
+        final int mid = encode_editConfig(w, encode_datastore(datastore),
                                                encode_url(url));
-        out.flush();
+        w.flush();
         return mid;
     }
 
     protected int get_request(Element subtreeFilter) throws JNCException
     {
         trace("get: " + subtreeFilter.toXMLString());
-        final int mid = encode_get(out, subtreeFilter);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_get(w, subtreeFilter);
+        w.flush();
         return mid;
     }
 
@@ -2715,16 +2773,18 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "the :xpath capability is not supported by server");
         }
-        final int mid = encode_get(out, xpath);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_get(w, xpath);
+        w.flush();
         return mid;
     }
 
     protected int get_config_request(int datastore) throws JNCException
     {
         trace("getConfig: " + datastoreToString(datastore));
-        final int mid = encode_getConfig(out, encode_datastore(datastore));
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_getConfig(w, encode_datastore(datastore));
+        w.flush();
         return mid;
     }
 
@@ -2732,9 +2792,10 @@ public class NetconfSession {
     {
         trace("getConfig: " + datastoreToString(datastore) + "\n"
               + subtreeFilter.toXMLString());
-        final int mid = encode_getConfig(out, encode_datastore(datastore),
+        final XMLWriter w = writer();
+        final int mid = encode_getConfig(w, encode_datastore(datastore),
                                               subtreeFilter);
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2746,9 +2807,10 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "the :xpath capability is not supported by server");
         }
-        final int mid = encode_getConfig(out, encode_datastore(datastore),
+        final XMLWriter w = writer();
+        final int mid = encode_getConfig(w, encode_datastore(datastore),
                                               xpath);
-        out.flush();
+        w.flush();
         return mid;
     }
 
@@ -2763,8 +2825,9 @@ public class NetconfSession {
     protected int lock_request(int datastore) throws JNCException
     {
         trace("lock: " + datastoreToString(datastore));
-        int mid = encode_lock(out, encode_datastore(datastore));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_lock(w, encode_datastore(datastore));
+        w.flush();
         return mid;
     }
 
@@ -2779,8 +2842,9 @@ public class NetconfSession {
         // if (!xpathCapability)
         // throw new JNCException(JNCException.SESSION_ERROR,
         // "capability :xpath is not supported by server");
-        final int mid = encode_lockPartial(out, select);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_lockPartial(w, select);
+        w.flush();
         return mid;
     }
 
@@ -2819,8 +2883,9 @@ public class NetconfSession {
     protected int unlock_request(int datastore) throws JNCException
     {
         trace("unlock: " + datastoreToString(datastore));
-        int mid = encode_unlock(out, encode_datastore(datastore));
-        out.flush();
+        final XMLWriter w = writer();
+        int mid = encode_unlock(w, encode_datastore(datastore));
+        w.flush();
         return mid;
     }
 
@@ -2835,8 +2900,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :xpath is not supported by server");
         }
-        final int mid = encode_unlockPartial(out, lockId);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_unlockPartial(w, lockId);
+        w.flush();
         return mid;
     }
 
@@ -2847,8 +2913,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :validate is not supported by server");
         }
-        final int mid = encode_validate(out, configTree);
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_validate(w, configTree);
+        w.flush();
         return mid;
     }
 
@@ -2859,8 +2926,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :validate is not supported by server");
         }
-        final int mid = encode_validate(out, encode_datastore(datastore));
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_validate(w, encode_datastore(datastore));
+        w.flush();
         return mid;
     }
 
@@ -2871,8 +2939,9 @@ public class NetconfSession {
             throw new JNCException(JNCException.SESSION_ERROR,
                     "capability :validate is not supported by server");
         }
-        final int mid = encode_validate(out, encode_url(url));
-        out.flush();
+        final XMLWriter w = writer();
+        final int mid = encode_validate(w, encode_url(url));
+        w.flush();
         return mid;
     }
 }
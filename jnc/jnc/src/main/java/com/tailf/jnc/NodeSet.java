@@ -39,9 +39,22 @@ public class NodeSet extends ArrayList<Element> {
      * @param pathStr Path string to find nodes within the nodes
      */
     public NodeSet get(String pathStr) throws JNCException {
+        if (isEmpty()) {
+            return new NodeSet();
+        }
+        return get(Path.compile(pathStr));
+    }
+
+    /**
+     * 'Get' using a parsed path expression on nodes within the set.
+     * returning new NodeSet
+     * 
+     * @param path Path to find nodes within the nodes
+     */
+    public NodeSet get(Path path) throws JNCException {
         final NodeSet result = new NodeSet();
         for (Element e : this) {
-            final NodeSet r = e.get(pathStr);
+            final NodeSet r = e.get(path);
             if (r != null && r.size() > 0) {
                 result.addAll(r);
             }
@@ -155,4 +168,21 @@ public class NodeSet extends ArrayList<Element> {
         }
     }
 
+    /* replacements made by set(), which ArrayList does not count */
+    private transient int replaced;
+
+    @Override
+    public Element set(int index, Element element) {
+        replaced++;
+        return super.set(index, element);
+    }
+
+    /**
+     * Returns a number that changes whenever the set is changed, for
+     * {@link ChildIndex} to know when it is out of date.
+     */
+    int version() {
+        return modCount + replaced;
+    }
+
 }
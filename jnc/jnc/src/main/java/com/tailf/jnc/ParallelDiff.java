@@ -0,0 +1,242 @@
+package com.tailf.jnc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The parallel versions of {@link YangElement#getDiff} and of the sync
+ * computed by {@link YangElement#syncMerge(YangElement, YangElement)}.
+ * <p>
+ * At each level the children of the two trees are first matched in order,
+ * as the sequential versions do. The matched pairs are then compared and
+ * recursed into in chunks of {@link #CHUNK} pairs, each run as a fork/join
+ * task, and the results of the chunks are put together in order. The
+ * result is the same as the one of the sequential version, node for node.
+ * <p>
+ * The trees must not be changed while the tasks run.
+ */
+final class ParallelDiff {
+
+    /** number of children pairs handled by one task */
+    static final int CHUNK = 256;
+
+    private ParallelDiff() {
+    }
+
+    /**
+     * The four node sets of a diff, or part of one.
+     */
+    private static final class Diff {
+        final NodeSet uniqueA = new NodeSet();
+        final NodeSet uniqueB = new NodeSet();
+        final NodeSet changedA = new NodeSet();
+        final NodeSet changedB = new NodeSet();
+
+        void addTo(NodeSet uA, NodeSet uB, NodeSet cA, NodeSet cB) {
+            uA.addAll(uniqueA);
+            uB.addAll(uniqueB);
+            cA.addAll(changedA);
+            cB.addAll(changedB);
+        }
+    }
+
+    /**
+     * Runs {@link YangElement#getDiff} in a pool.
+     */
+    static void getDiff(final YangElement a, final YangElement b,
+            NodeSet uniqueA, NodeSet uniqueB, NodeSet changedA,
+            NodeSet changedB, ForkJoinPool pool) {
+        final Diff diff = new Diff();
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                diff(a, b, diff);
+            }
+        });
+        diff.addTo(uniqueA, uniqueB, changedA, changedB);
+    }
+
+    /**
+     * The diff of two subtrees, in the calling task, as done by
+     * {@link YangElement#getDiff}.
+     */
+    private static void diff(YangElement a, YangElement b, Diff diff) {
+        if (a.compare(b) < 0) {
+            diff.uniqueA.add(a);
+            diff.uniqueB.add(b);
+            return;
+        }
+        if (a.children == null || b.children == null) {
+            if (b.children != null) {
+                diff.uniqueB.addAll(b.children);
+            } else if (a.children != null) {
+                diff.uniqueA.addAll(a.children);
+            }
+            return;
+        }
+        final DiffIndex bIndex = new DiffIndex(b.children);
+        final int n = a.children.size();
+        final Element[] aChildren = a.children.toArray(new Element[n]);
+        final Element[] bChildren = new Element[n];
+        for (int i = 0; i < n; i++) {
+            bChildren[i] = bIndex.take(aChildren[i]);
+        }
+        if (n <= CHUNK) {
+            diffPairs(aChildren, bChildren, 0, n, diff);
+        } else {
+            final List<RecursiveAction> chunks = new ArrayList<RecursiveAction>();
+            final List<Diff> diffs = new ArrayList<Diff>();
+            for (int lo = 0; lo < n; lo += CHUNK) {
+                final int from = lo;
+                final int to = Math.min(n, lo + CHUNK);
+                final Diff chunkDiff = new Diff();
+                diffs.add(chunkDiff);
+                chunks.add(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        diffPairs(aChildren, bChildren, from, to, chunkDiff);
+                    }
+                });
+            }
+            RecursiveAction.invokeAll(chunks);
+            for (final Diff chunkDiff : diffs) {
+                chunkDiff.addTo(diff.uniqueA, diff.uniqueB, diff.changedA,
+                        diff.changedB);
+            }
+        }
+        bIndex.addRemaining(diff.uniqueB);
+    }
+
+    private static void diffPairs(Element[] aChildren, Element[] bChildren,
+            int from, int to, Diff diff) {
+        for (int i = from; i < to; i++) {
+            final Element aChild = aChildren[i];
+            final Element bChild = bChildren[i];
+            if (bChild == null) {
+                diff.uniqueA.add(aChild);
+            } else {
+                final int bRes = aChild.compare(bChild);
+                if (bRes == 1) {
+                    diff.changedA.add(aChild);
+                    diff.changedB.add(bChild);
+                } else if (aChild instanceof YangElement) {
+                    diff((YangElement) aChild, (YangElement) bChild, diff);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the sync of {@link YangElement#syncMerge(YangElement, YangElement)}
+     * in a pool.
+     *
+     * @param a A copy of subtree A, emptied of its matched children
+     * @param b A copy of subtree B, the one to return
+     * @param toDel Place for the children of b to remove afterwards
+     */
+    static void csync(final YangElement a, final YangElement b,
+            NodeSet toDel, ForkJoinPool pool) {
+        final NodeSet del = new NodeSet();
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                csync(a, b, del);
+            }
+        });
+        toDel.addAll(del);
+    }
+
+    /**
+     * The sync of two subtrees, in the calling task, as done by
+     * YangElement.csync2(). Returns the number of differences.
+     */
+    private static int csync(YangElement a, YangElement b, NodeSet toDel) {
+        int n = 0;
+        final Element[] bChildren;
+        final Element[] aChildren;
+        if (b.children == null) {
+            bChildren = aChildren = new Element[0];
+        } else {
+            bChildren = new Element[b.children.size()];
+            aChildren = new Element[bChildren.length];
+            for (int i = 0; i < b.children.size(); i++) {
+                final Element bChild = b.children.get(i);
+                if (a.keyNames() != null && bChild instanceof Leaf
+                        && ((Leaf) bChild).isKey()) {
+                    // inside list entries we ignore keys
+                    continue;
+                }
+                bChildren[n] = bChild;
+                aChildren[n] = YangElement.findDeleteChild(bChild, a.children);
+                n++;
+            }
+        }
+
+        int diffs = 0;
+        if (n <= CHUNK) {
+            diffs += csyncPairs(aChildren, bChildren, 0, n, toDel);
+        } else {
+            final List<RecursiveAction> chunks = new ArrayList<RecursiveAction>();
+            final NodeSet[] dels = new NodeSet[(n + CHUNK - 1) / CHUNK];
+            final int[] counts = new int[dels.length];
+            for (int c = 0; c < dels.length; c++) {
+                final int chunk = c;
+                final int from = c * CHUNK;
+                final int to = Math.min(n, from + CHUNK);
+                dels[c] = new NodeSet();
+                chunks.add(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        counts[chunk] = csyncPairs(aChildren, bChildren, from,
+                                to, dels[chunk]);
+                    }
+                });
+            }
+            RecursiveAction.invokeAll(chunks);
+            for (int c = 0; c < dels.length; c++) {
+                diffs += counts[c];
+                toDel.addAll(dels[c]);
+            }
+        }
+        return diffs + YangElement.csyncRemaining(a, b);
+    }
+
+    private static int csyncPairs(Element[] aChildren, Element[] bChildren,
+            int from, int to, NodeSet toDel) {
+        int diffs = 0;
+        for (int i = from; i < to; i++) {
+            final Element aChild = aChildren[i];
+            final Element bChild = bChildren[i];
+            if (aChild == null) {
+                // It's a new child that needs to be merged
+                diffs++;
+            } else if (aChild instanceof YangElement) {
+                final int d = csync((YangElement) aChild,
+                        (YangElement) bChild, toDel);
+                diffs += d;
+                if (d == 0) {
+                    // both children are identical - remove from b as well
+                    toDel.add(bChild);
+                }
+            } else if (aChild instanceof Leaf) {
+                if (aChild.equals(bChild)) {
+                    // remove identical leaves from b - no need to send them
+                    toDel.add(bChild);
+                } else {
+                    diffs++;
+                }
+            }
+        }
+        return diffs;
+    }
+}
@@ -0,0 +1,41 @@
+package com.tailf.jnc;
+
+import java.io.IOException;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The XML tokenizer used by {@link XMLParser} and {@link YangXMLParser}.
+ * <p>
+ * A backend reads the XML text and reports it as SAX events to the handler
+ * which builds the {@link Element} tree, so that all backends build the
+ * same trees. The SAX backend is used unless another one is given to the
+ * parser with {@link XMLParser#setBackend(ParserBackend)}.
+ * <p>
+ * Backends must be usable from several threads at the same time.
+ */
+public interface ParserBackend {
+
+    /**
+     * A backend using a SAX XMLReader, borrowed from a shared pool for
+     * each parse.
+     */
+    ParserBackend SAX = new SAXParserBackend();
+
+    /**
+     * A backend using a StAX XMLStreamReader.
+     */
+    ParserBackend STAX = new StAXParserBackend();
+
+    /**
+     * Parses the input, reporting the prefix mappings, elements and
+     * character data to the handler.
+     * 
+     * @param is Input source where the XML text is read from
+     * @param handler Handler receiving the parse events
+     */
+    void parse(InputSource is, ContentHandler handler) throws IOException,
+            SAXException;
+}
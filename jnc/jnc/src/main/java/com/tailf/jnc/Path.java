@@ -1,6 +1,8 @@
 package com.tailf.jnc;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A path expression. This is a small subset of the W3C recommendations of
@@ -17,6 +19,10 @@ import java.util.ArrayList;
  * NodeSet s = path.eval(element_tree);
  * </pre>
  * 
+ * A path is not changed by its evaluation, so it may be parsed once and
+ * then evaluated many times, also by several threads at the same time.
+ * {@link #compile(String)} returns such shared paths, which the methods
+ * taking a path string, like {@link Element#get(String)}, use.
  **/
 
 public class Path {
@@ -36,6 +42,52 @@ public class Path {
     Path() {
     }
 
+    /** upper bound on the number of compiled paths kept */
+    private static final int MAX_COMPILED = 1024;
+
+    /*
+     * path string -> path, shared by all threads: the paths compiled or used
+     * since the last rotation, and the ones before it
+     */
+    private static volatile ConcurrentHashMap<String, Path> recent = new ConcurrentHashMap<String, Path>();
+    private static volatile ConcurrentHashMap<String, Path> older = new ConcurrentHashMap<String, Path>();
+
+    /**
+     * Returns the Path for a path expression string, parsing it only the
+     * first time. Up to a thousand or so paths are kept, in two halves: the
+     * recently used paths, and the ones used before them, which are dropped
+     * when the recent half is full. A path which is used again before half
+     * as many other paths have been compiled is kept, so that paths with
+     * values in their predicates do not push out the paths used all the
+     * time.
+     * 
+     * @param pathStr A path expression string
+     * @return A Path, which may be shared and must not be changed
+     */
+    public static Path compile(String pathStr) throws JNCException {
+        final ConcurrentHashMap<String, Path> young = recent;
+        Path path = young.get(pathStr);
+        if (path == null) {
+            path = older.get(pathStr);
+            if (path == null) {
+                path = new Path(pathStr);
+            }
+            if (young.size() >= MAX_COMPILED / 2) {
+                rotate(young);
+            }
+            recent.put(pathStr, path);
+        }
+        return path;
+    }
+
+    private static synchronized void rotate(
+            ConcurrentHashMap<String, Path> young) {
+        if (recent == young) {
+            older = young;
+            recent = new ConcurrentHashMap<String, Path>();
+        }
+    }
+
     /**
      * Evaluates the Path given a contextNode.
      * <p>
@@ -55,6 +107,71 @@ public class Path {
         return nodeSet;
     }
 
+    /**
+     * Evaluates the Path given a contextNode, stopping at the first match.
+     * <p>
+     * Returns the first node of the NodeSet that {@link #eval(Element)}
+     * returns, found without making the NodeSet: the candidates of each
+     * location step are taken one at a time and followed through the next
+     * steps, depth first.
+     * 
+     * @param contextNode The context node to evaluate expressions on
+     * @return The first matching element, or <code>null</code>
+     */
+    public Element evalFirst(Element contextNode) throws JNCException {
+        trace("evalFirst(): " + this);
+        return first(contextNode, 0);
+    }
+
+    /**
+     * Returns the first match of the steps from <code>step</code> on.
+     */
+    private Element first(Element node, int step) throws JNCException {
+        if (step == locationSteps.size()) {
+            return node;
+        }
+        final LocationStep locStep = locationSteps.get(step);
+        if (locStep.usesContext()) {
+            // position() and last() need all the candidates
+            final NodeSet nodes = locStep.step(new NodeSet(node));
+            for (int i = 0; i < nodes.size(); i++) {
+                final Element found = first(nodes.getElement(i), step + 1);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+        switch (locStep.axis) {
+        case AXIS_CHILD:
+            if (node.children != null) {
+                final List<Element> candidates = locStep.candidates(node);
+                for (int i = 0; i < candidates.size(); i++) {
+                    final Element child = candidates.get(i);
+                    if (locStep.matches(child)) {
+                        final Element found = first(child, step + 1);
+                        if (found != null) {
+                            return found;
+                        }
+                    }
+                }
+            }
+            return null;
+        case AXIS_PARENT:
+            if (node.parent != null && locStep.matches(node.parent)) {
+                return first(node.parent, step + 1);
+            }
+            return null;
+        case AXIS_SELF:
+            if (locStep.matches(node)) {
+                return first(node, step + 1);
+            }
+            return null;
+        default:
+            return null;
+        }
+    }
+
     /**
      * Evaluate the Path given a NodeSet.
      * <p>
@@ -151,7 +268,7 @@ public class Path {
                 switch (axis) {
                 case AXIS_CHILD:
                     if (node.children != null) {
-                        result.addAll(nodeTest(node.children));
+                        result.addAll(nodeTest(candidates(node)));
                     }
                     break;
                 case AXIS_PARENT:
@@ -168,17 +285,93 @@ public class Path {
             return result;
         }
 
+        /**
+         * Returns the children of node that may match this step. When the
+         * node has many children these are looked up in its index, see
+         * {@link ChildIndex}: by name, or with a predicate comparing a child
+         * of the candidates to a string, like <code>[name='eth0']</code>, by
+         * the value of that child.
+         */
+        List<Element> candidates(Element node) {
+            final ChildIndex index = ChildIndex.of(node);
+            if (index == null) {
+                return node.children;
+            }
+            if (predicates != null) {
+                Expr key = null;
+                for (int i = 0; i < predicates.size(); i++) {
+                    final Expr p = predicates.get(i);
+                    if (p.usesContext()) {
+                        // needs all the children with the name
+                        key = null;
+                        break;
+                    }
+                    if (key == null && p.isKeyTest()) {
+                        key = p;
+                    }
+                }
+                if (key != null) {
+                    final List<Element> found = index.withChildValue(name,
+                            (String) ((Expr) key.lvalue).lvalue,
+                            (String) key.rvalue);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+            return index.named(name);
+        }
+
+        /**
+         * Returns true if any predicate uses position() or last(), which
+         * depend on the other candidates.
+         */
+        boolean usesContext() {
+            if (predicates != null) {
+                for (int i = 0; i < predicates.size(); i++) {
+                    if (predicates.get(i).usesContext()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Performs the nodeTest and the predicates on one node. Only for
+         * steps where {@link #usesContext()} is false.
+         */
+        boolean matches(Element node) throws JNCException {
+            if (!node.name.equals(name)) {
+                return false;
+            }
+            if (prefix != null) {
+                final String namespace = node.lookupContextPrefix(prefix);
+                if (!node.namespace.equals(namespace)) {
+                    return false;
+                }
+            }
+            if (predicates != null) {
+                for (int i = 0; i < predicates.size(); i++) {
+                    if (!predicates.get(i).eval(node, null).booleanValue()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
         /**
          * perform nodeTest on nodeSet. (only NameTest) since all nodes are
          * simplified to be Elements
          */
-        private NodeSet nodeTest(NodeSet nodeSet) throws JNCException {
+        private NodeSet nodeTest(List<Element> nodeSet) throws JNCException {
             NodeSet result = new NodeSet();
             /**
              * A simple "NameTest" Filter away those with wrong name
              */
             for (int i = 0; i < nodeSet.size(); i++) {
-                final Element node = nodeSet.getElement(i);
+                final Element node = nodeSet.get(i);
                 if (node.name.equals(name)) {
                     /* check namespace also, if prefix is given */
                     String namespace;
@@ -330,6 +523,27 @@ public class Path {
             this.rvalue = rvalue;
         }
 
+        /**
+         * Returns true if this expression, or a sub expression, is
+         * position() or last().
+         */
+        boolean usesContext() {
+            return op == FUN_POSITION || op == FUN_LAST
+                    || (lvalue instanceof Expr && ((Expr) lvalue).usesContext())
+                    || (rvalue instanceof Expr
+                            && ((Expr) rvalue).usesContext());
+        }
+
+        /**
+         * Returns true if this is a child = 'string' test, which holds for
+         * the nodes found by {@link ChildIndex#withChildValue}.
+         */
+        boolean isKeyTest() {
+            return op == EQ && lvalue instanceof Expr
+                    && ((Expr) lvalue).op == CHILD_VALUE
+                    && rvalue instanceof String;
+        }
+
         public Boolean eval(Element node, NodeSet contextSet)
                 throws JNCException {
             return f_boolean(eval2(node, contextSet));
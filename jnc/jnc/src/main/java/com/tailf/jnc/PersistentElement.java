@@ -0,0 +1,728 @@
+package com.tailf.jnc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * An immutable configuration tree, which shares its unchanged subtrees with
+ * the versions it is derived from.
+ * <p>
+ * A persistent tree is created from an {@link Element} tree with
+ * {@link Element#snapshot()}, which copies each node of the tree once, and
+ * turned back into one with {@link #toElement()}. Each node keeps the class
+ * of the element it was copied from, so that a tree of the classes
+ * generated for a YANG module is built again with those classes. Keeping a
+ * version of a persistent tree is only keeping a reference to it. Changes
+ * are made with an {@link Editor}, which copies the changed nodes and their
+ * ancestors only, all the other nodes are shared by the old and the new
+ * version:
+ *
+ * <pre>
+ * PersistentElement before = config.snapshot();
+ * PersistentElement.Editor ed = before.edit();
+ * ed.down(&quot;interfaces&quot;).down(&quot;interface&quot;).down(&quot;mtu&quot;).setValue(&quot;9000&quot;);
+ * PersistentElement after = ed.root();
+ * </pre>
+ *
+ * Nodes have no parent link, which is what allows a subtree to be part of
+ * several trees. Two versions can be compared with {@link #equals(Object)},
+ * and the changes between them found with
+ * {@link #getDiff(PersistentElement, PersistentElement, NodeSet, NodeSet, NodeSet, NodeSet)}
+ * and {@link #sync(PersistentElement, PersistentElement)}. All of them skip
+ * the subtrees the versions share without looking into them.
+ * <p>
+ * Persistent trees may be shared by several threads.
+ */
+public final class PersistentElement {
+
+    private static final PersistentElement[] NO_CHILDREN = new PersistentElement[0];
+    private static final Attribute[] NO_ATTRS = new Attribute[0];
+    private static final Prefix[] NO_PREFIXES = new Prefix[0];
+
+    private final Class<? extends Element> type;
+    private final String namespace;
+    private final String name;
+    private final Object value;
+    private final Attribute[] attrs;
+    private final Prefix[] prefixes;
+    private final PersistentElement[] children;
+
+    /* hash of the subtree, computed on first use, 0 if not yet */
+    private int hash;
+
+    private PersistentElement(Class<? extends Element> type,
+            String namespace, String name, Object value, Attribute[] attrs,
+            Prefix[] prefixes, PersistentElement[] children) {
+        this.type = type;
+        this.namespace = namespace;
+        this.name = name;
+        this.value = value;
+        this.attrs = attrs;
+        this.prefixes = prefixes;
+        this.children = children;
+    }
+
+    /**
+     * Creates a persistent copy of an element tree.
+     *
+     * @param e The top element of the tree to copy
+     */
+    public static PersistentElement of(Element e) {
+        PersistentElement[] children = NO_CHILDREN;
+        if (e.children != null && !e.children.isEmpty()) {
+            children = new PersistentElement[e.children.size()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = of(e.children.getElement(i));
+            }
+        }
+        Attribute[] attrs = NO_ATTRS;
+        if (e.attrs != null && !e.attrs.isEmpty()) {
+            attrs = new Attribute[e.attrs.size()];
+            for (int i = 0; i < attrs.length; i++) {
+                attrs[i] = (Attribute) e.attrs.get(i).clone();
+            }
+        }
+        Prefix[] prefixes = NO_PREFIXES;
+        if (e.prefixes != null && !e.prefixes.isEmpty()) {
+            prefixes = new Prefix[e.prefixes.size()];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = copy(e.prefixes.get(i));
+            }
+        }
+        return new PersistentElement(e.getClass(), e.namespace, e.name,
+                copyValue(e.value), attrs, prefixes, children);
+    }
+
+    /**
+     * Creates a new leaf or empty container, to be added with an
+     * {@link Editor}. The node is a plain {@link Element}, a node of another
+     * class, like a {@link Leaf}, is created from an element with
+     * {@link #of(Element)}.
+     *
+     * @param namespace The namespace of the node
+     * @param name The name of the node
+     * @param value The value of the node, or <code>null</code>
+     */
+    public static PersistentElement create(String namespace, String name,
+            Object value) {
+        return new PersistentElement(Element.class, namespace, name,
+                copyValue(value), NO_ATTRS, NO_PREFIXES, NO_CHILDREN);
+    }
+
+    /**
+     * Builds a mutable element tree with the contents of this tree. Each
+     * node is an instance of the class of the element it was copied from.
+     * {@link Element} and {@link Leaf} nodes are created with their
+     * constructors, nodes of other classes, like the generated ones, with
+     * their public nullary constructor, as the parser does.
+     *
+     * @throws YangException If the class of a node cannot be instantiated
+     */
+    public Element toElement() throws YangException {
+        final Element e = newElement();
+        if (children.length > 0) {
+            e.children = new NodeSet();
+            e.children.ensureCapacity(children.length);
+            for (final PersistentElement child : children) {
+                final Element c = child.toElement();
+                c.parent = e;
+                e.children.add(c);
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Creates an element with the contents of this node, without children.
+     */
+    private Element newElement() throws YangException {
+        final Element e;
+        if (type == Element.class) {
+            e = new Element(namespace, name);
+        } else if (type == Leaf.class) {
+            e = new Leaf(namespace, name);
+        } else {
+            try {
+                e = YangClassCache.newInstance(type);
+            } catch (final InstantiationException ex) {
+                throw new YangException(YangException.ELEMENT_MISSING, name
+                        + ": cannot instantiate " + type.getName());
+            } catch (final IllegalAccessException ex) {
+                throw new YangException(YangException.ELEMENT_MISSING, name
+                        + ": cannot instantiate " + type.getName());
+            }
+            e.namespace = namespace;
+            e.name = name;
+        }
+        e.value = copyValue(value);
+        e.attrs = null;
+        if (attrs.length > 0) {
+            e.attrs = new ArrayList<Attribute>(attrs.length);
+            for (final Attribute attr : attrs) {
+                e.attrs.add((Attribute) attr.clone());
+            }
+        }
+        e.prefixes = null;
+        if (prefixes.length > 0) {
+            e.prefixes = new PrefixMap();
+            for (final Prefix p : prefixes) {
+                e.prefixes.add(copy(p));
+            }
+            e.prefixes.trimToSize();
+        }
+        return e;
+    }
+
+    private static Prefix copy(Prefix p) {
+        final Prefix copy = new Prefix(p.name, p.value);
+        copy.qName = p.qName;
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof YangBaseType<?>) {
+            return ((YangBaseType<?>) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the namespace of this node.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the name of this node.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value of this node, or <code>null</code>. Values of
+     * {@link YangBaseType} types are copied, so that the tree cannot be
+     * changed through them.
+     */
+    public Object getValue() {
+        return copyValue(value);
+    }
+
+    /**
+     * Returns the class of the element this node was copied from, which
+     * {@link #toElement()} creates.
+     */
+    public Class<? extends Element> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the value of an attribute, or <code>null</code> if there is
+     * no attribute with that name.
+     *
+     * @param attrName The name of the attribute
+     */
+    public String getAttrValue(String attrName) {
+        for (final Attribute attr : attrs) {
+            if (attr.name.equals(attrName)) {
+                return attr.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of children.
+     */
+    public int size() {
+        return children.length;
+    }
+
+    /**
+     * Returns the child at the given position.
+     *
+     * @param i The position of the child
+     */
+    public PersistentElement getChild(int i) {
+        return children[i];
+    }
+
+    /**
+     * Returns the first child with the given name, or <code>null</code>.
+     *
+     * @param childName The name of the child
+     */
+    public PersistentElement getChild(String childName) {
+        final int i = indexOf(childName, 0);
+        return i < 0 ? null : children[i];
+    }
+
+    /**
+     * Returns the position of the first child with the given name, starting
+     * from a position, or -1 if there is none.
+     *
+     * @param childName The name of the child
+     * @param from The position to start at
+     */
+    public int indexOf(String childName, int from) {
+        for (int i = from; i < children.length; i++) {
+            if (children[i].name.equals(childName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an unmodifiable list of the children.
+     */
+    public List<PersistentElement> getChildren() {
+        return new AbstractList<PersistentElement>() {
+            @Override
+            public PersistentElement get(int index) {
+                return children[index];
+            }
+
+            @Override
+            public int size() {
+                return children.length;
+            }
+        };
+    }
+
+    /**
+     * Returns an editor deriving new versions from this tree.
+     */
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Compares the contents of two trees: names, namespaces, values,
+     * attributes and children in order. Subtrees shared by the two trees
+     * are equal at once.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PersistentElement)) {
+            return false;
+        }
+        final PersistentElement b = (PersistentElement) other;
+        if (hash != 0 && b.hash != 0 && hash != b.hash) {
+            return false;
+        }
+        if (!name.equals(b.name) || !equal(namespace, b.namespace)
+                || !equal(value, b.value)
+                || children.length != b.children.length
+                || attrs.length != b.attrs.length) {
+            return false;
+        }
+        for (int i = 0; i < attrs.length; i++) {
+            if (!attrs[i].name.equals(b.attrs[i].name)
+                    || !equal(attrs[i].ns, b.attrs[i].ns)
+                    || !equal(attrs[i].value, b.attrs[i].value)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (!children[i].equals(b.children[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Returns a hash of the contents of the subtree, computed once.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = name.hashCode();
+            h = 31 * h + (namespace == null ? 0 : namespace.hashCode());
+            h = 31 * h + (value == null ? 0 : value.hashCode());
+            for (final Attribute attr : attrs) {
+                h = 31 * h + attr.name.hashCode();
+                h = 31 * h + (attr.value == null ? 0 : attr.value.hashCode());
+            }
+            for (final PersistentElement child : children) {
+                h = 31 * h + child.hashCode();
+            }
+            if (h == 0) {
+                h = 1;
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Produces the 'diff' between two versions of a tree, as
+     * {@link YangElement#getDiff(YangElement, YangElement, NodeSet, NodeSet, NodeSet, NodeSet)}
+     * does for the trees built by {@link #toElement()}, and puts elements of
+     * such trees in the node sets.
+     * <p>
+     * Subtrees shared by the two versions are equal and are skipped.
+     * Elements are only built for the nodes on the paths to the changes and
+     * for their children, which are compared, and for the subtrees put in
+     * the node sets. Comparing a version with one derived from it by an
+     * {@link Editor} then takes time in proportion to the changes and the
+     * number of children along the paths to them, not to the size of the
+     * tree.
+     *
+     * @param a Version A, whose top node is a YangElement
+     * @param b Version B, whose top node is a YangElement
+     * @param uniqueA Place for elements that are unique to A.
+     * @param uniqueB Place for elements that are unique to B.
+     * @param changedA Place for elements changed in A.
+     * @param changedB Place for elements changed in B.
+     * @throws YangException If the class of a node cannot be instantiated
+     * @throws IllegalArgumentException If a top node is not a YangElement
+     */
+    public static void getDiff(PersistentElement a, PersistentElement b,
+            NodeSet uniqueA, NodeSet uniqueB, NodeSet changedA,
+            NodeSet changedB) throws YangException {
+        if (a == b) {
+            return;
+        }
+        final IdentityHashMap<Element, PersistentElement> nodes = new IdentityHashMap<Element, PersistentElement>();
+        final Element ea = a.keyed(nodes);
+        final Element eb = b.keyed(nodes);
+        if (!(ea instanceof YangElement) || !(eb instanceof YangElement)) {
+            throw new IllegalArgumentException("not YangElements: "
+                    + a.type.getName() + ", " + b.type.getName());
+        }
+        a.expand(ea, nodes);
+        b.expand(eb, nodes);
+        diff((YangElement) ea, (YangElement) eb, nodes, uniqueA, uniqueB,
+                changedA, changedB);
+    }
+
+    /**
+     * Returns a subtree for syncing version A of a tree with all the
+     * necessary operations to make it look like version B, as
+     * {@link YangElement#sync(YangElement, YangElement)} does for the trees
+     * built by {@link #toElement()}. The versions are compared with
+     * {@link #getDiff(PersistentElement, PersistentElement, NodeSet, NodeSet, NodeSet, NodeSet)}.
+     *
+     * @param a Version A, whose top node is a YangElement
+     * @param b Version B, whose top node is a YangElement
+     * @return Subtree with operations to transmute version A into version B.
+     */
+    public static YangElement sync(PersistentElement a, PersistentElement b)
+            throws JNCException {
+        final NodeSet uniqueA = new NodeSet();
+        final NodeSet uniqueB = new NodeSet();
+        final NodeSet changedA = new NodeSet();
+        final NodeSet changedB = new NodeSet();
+        getDiff(a, b, uniqueA, uniqueB, changedA, changedB);
+        return YangElement.sync(uniqueA, uniqueB, changedB);
+    }
+
+    /**
+     * The diff of two nodes whose children have been built, in the same
+     * steps as YangElement.getDiff() takes. A pair of matching children
+     * built from the same node is skipped, otherwise their children are
+     * built before they are compared.
+     */
+    private static void diff(YangElement a, YangElement b,
+            IdentityHashMap<Element, PersistentElement> nodes, NodeSet uniqueA,
+            NodeSet uniqueB, NodeSet changedA, NodeSet changedB)
+            throws YangException {
+        if (a.compare(b) < 0) {
+            uniqueA.add(fill(a, nodes));
+            uniqueB.add(fill(b, nodes));
+            return;
+        }
+        if (a.children == null || b.children == null) {
+            if (b.children != null) {
+                addFilled(b.children, uniqueB, nodes);
+            } else if (a.children != null) {
+                addFilled(a.children, uniqueA, nodes);
+            }
+            return;
+        }
+        final DiffIndex bIndex = new DiffIndex(b.children);
+        for (int i = 0; i < a.children.size(); i++) {
+            final Element aChild = a.children.getElement(i);
+            final Element bChild = bIndex.take(aChild);
+            if (bChild == null) {
+                uniqueA.add(fill(aChild, nodes));
+                continue;
+            }
+            final PersistentElement pa = nodes.get(aChild);
+            final PersistentElement pb = nodes.get(bChild);
+            if (pa == pb) {
+                // shared by both versions
+                continue;
+            }
+            pa.expand(aChild, nodes);
+            pb.expand(bChild, nodes);
+            final int bRes = aChild.compare(bChild);
+            if (bRes == 1) { // different content
+                changedA.add(fill(aChild, nodes));
+                changedB.add(fill(bChild, nodes));
+            } else if (aChild instanceof YangElement) {
+                diff((YangElement) aChild, (YangElement) bChild, nodes,
+                        uniqueA, uniqueB, changedA, changedB);
+            }
+        }
+        final NodeSet remaining = new NodeSet();
+        bIndex.addRemaining(remaining);
+        addFilled(remaining, uniqueB, nodes);
+    }
+
+    /**
+     * Creates an element of this node with the key children of a list
+     * entry, which is enough to match it with another entry.
+     */
+    private Element keyed(IdentityHashMap<Element, PersistentElement> nodes)
+            throws YangException {
+        final Element e = newElement();
+        nodes.put(e, this);
+        if (e instanceof YangElement) {
+            final String[] keys = ((YangElement) e).keyNames();
+            if (keys != null) {
+                for (final PersistentElement child : children) {
+                    for (final String key : keys) {
+                        if (child.name.equals(key)) {
+                            e.addChild(child.toElement());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Gives an element of this node its children, each with its keys.
+     */
+    private void expand(Element e,
+            IdentityHashMap<Element, PersistentElement> nodes)
+            throws YangException {
+        e.children = null;
+        e.childIndex = null;
+        for (final PersistentElement child : children) {
+            e.addChild(child.keyed(nodes));
+        }
+    }
+
+    /**
+     * Gives an element all of its subtree, to be put in a node set.
+     */
+    private static Element fill(Element e,
+            IdentityHashMap<Element, PersistentElement> nodes)
+            throws YangException {
+        e.children = null;
+        e.childIndex = null;
+        for (final PersistentElement child : nodes.get(e).children) {
+            e.addChild(child.toElement());
+        }
+        return e;
+    }
+
+    private static void addFilled(NodeSet elements, NodeSet to,
+            IdentityHashMap<Element, PersistentElement> nodes)
+            throws YangException {
+        for (int i = 0; i < elements.size(); i++) {
+            to.add(fill(elements.getElement(i), nodes));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PersistentElement{name=" + name + ", namespace=" + namespace
+                + ", value=" + value + ", children=" + children.length + "}";
+    }
+
+    /**
+     * Derives new versions of a persistent tree. The editor is positioned
+     * on a node, initially the top node, and moved with {@link #down(int)}
+     * and {@link #up()}. Changes replace the current node with a changed
+     * copy, and moving up replaces its parent with a copy pointing to it.
+     * Only the nodes on the paths to the changes are copied.
+     * <p>
+     * An editor is not safe for use by several threads at the same time.
+     */
+    public static final class Editor {
+
+        private PersistentElement node;
+
+        /* the ancestors of the current node, and its position in each */
+        private final ArrayList<PersistentElement> parents = new ArrayList<PersistentElement>();
+        private int[] positions = new int[8];
+
+        Editor(PersistentElement top) {
+            node = top;
+        }
+
+        /**
+         * Returns the current node.
+         */
+        public PersistentElement node() {
+            return node;
+        }
+
+        /**
+         * Moves to the child at the given position.
+         *
+         * @param i The position of the child
+         */
+        public Editor down(int i) {
+            final PersistentElement child = node.children[i];
+            final int depth = parents.size();
+            if (depth == positions.length) {
+                final int[] grown = new int[depth * 2];
+                System.arraycopy(positions, 0, grown, 0, depth);
+                positions = grown;
+            }
+            positions[depth] = i;
+            parents.add(node);
+            node = child;
+            return this;
+        }
+
+        /**
+         * Moves to the first child with the given name.
+         *
+         * @param childName The name of the child
+         * @throws IllegalArgumentException if there is no such child
+         */
+        public Editor down(String childName) {
+            final int i = node.indexOf(childName, 0);
+            if (i < 0) {
+                throw new IllegalArgumentException("no child " + childName
+                        + " in " + node.name);
+            }
+            return down(i);
+        }
+
+        /**
+         * Moves to the parent of the current node.
+         *
+         * @throws IllegalStateException if the editor is at the top node
+         */
+        public Editor up() {
+            final int depth = parents.size();
+            if (depth == 0) {
+                throw new IllegalStateException("at the top node");
+            }
+            final PersistentElement parent = parents.remove(depth - 1);
+            final int i = positions[depth - 1];
+            if (parent.children[i] == node) {
+                node = parent;
+            } else {
+                final PersistentElement[] children = parent.children.clone();
+                children[i] = node;
+                node = parent.withChildren(children);
+            }
+            return this;
+        }
+
+        /**
+         * Moves up to the top node and returns it, the new version of the
+         * tree.
+         */
+        public PersistentElement root() {
+            while (!parents.isEmpty()) {
+                up();
+            }
+            return node;
+        }
+
+        /**
+         * Replaces the current node.
+         *
+         * @param replacement The node to put in its place
+         */
+        public Editor replace(PersistentElement replacement) {
+            node = replacement;
+            return this;
+        }
+
+        /**
+         * Sets the value of the current node.
+         *
+         * @param value The new value, or <code>null</code>
+         */
+        public Editor setValue(Object value) {
+            node = new PersistentElement(node.type, node.namespace,
+                    node.name, copyValue(value), node.attrs, node.prefixes,
+                    node.children);
+            return this;
+        }
+
+        /**
+         * Sets an attribute without namespace on the current node.
+         *
+         * @param attrName The name of the attribute
+         * @param attrValue The value, or <code>null</code> to remove it
+         */
+        public Editor setAttr(String attrName, String attrValue) {
+            final ArrayList<Attribute> attrs = new ArrayList<Attribute>();
+            for (final Attribute attr : node.attrs) {
+                if (!attr.name.equals(attrName)) {
+                    attrs.add(attr);
+                }
+            }
+            if (attrValue != null) {
+                attrs.add(new Attribute(attrName, attrValue));
+            }
+            node = new PersistentElement(node.type, node.namespace,
+                    node.name, node.value, attrs.toArray(new Attribute[attrs
+                            .size()]), node.prefixes, node.children);
+            return this;
+        }
+
+        /**
+         * Adds a child last to the current node.
+         *
+         * @param child The child to add, which may be part of other trees
+         */
+        public Editor addChild(PersistentElement child) {
+            final PersistentElement[] children = new PersistentElement[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0,
+                    node.children.length);
+            children[node.children.length] = child;
+            node = node.withChildren(children);
+            return this;
+        }
+
+        /**
+         * Removes a child of the current node.
+         *
+         * @param i The position of the child
+         */
+        public Editor removeChild(int i) {
+            final PersistentElement[] old = node.children;
+            if (i < 0 || i >= old.length) {
+                throw new IndexOutOfBoundsException("child " + i + " of "
+                        + old.length);
+            }
+            final PersistentElement[] children = old.length == 1 ? NO_CHILDREN
+                    : new PersistentElement[old.length - 1];
+            System.arraycopy(old, 0, children, 0, i);
+            System.arraycopy(old, i + 1, children, i, old.length - i - 1);
+            node = node.withChildren(children);
+            return this;
+        }
+    }
+
+    private PersistentElement withChildren(PersistentElement[] newChildren) {
+        return new PersistentElement(type, namespace, name, value, attrs,
+                prefixes, newChildren);
+    }
+}
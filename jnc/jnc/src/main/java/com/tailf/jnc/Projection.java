@@ -0,0 +1,411 @@
+package com.tailf.jnc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A selection of the parts of a document to build when parsing it, given as
+ * a set of {@link Path} expressions.
+ * <p>
+ * The paths are evaluated the way {@link Element#get(String)} does, with the
+ * top element of the document as context node. A path starting with '/' is
+ * absolute, its first step names the top element. When parsing with a
+ * projection, see {@link XMLParser#parse(String, Projection)}, only the
+ * following elements are built:
+ * <ul>
+ * <li>the top element,
+ * <li>the elements selected by one of the paths, with all their
+ * descendants,
+ * <li>the ancestors of the selected elements,
+ * </ul>
+ * All other subtrees are skipped while parsing. Evaluating one of the paths
+ * on the projected tree selects the same elements as on the complete tree.
+ * <p>
+ * Example, to read the operational status of some interfaces:
+ *
+ * <pre>
+ * Projection p = new Projection(&quot;data/interfaces-state/interface/name&quot;,
+ *         &quot;data/interfaces-state/interface/oper-status&quot;);
+ * Element reply = parser.parse(replyStr, p);
+ * </pre>
+ *
+ * A projection may be shared by several parsers and threads.
+ */
+public class Projection {
+
+    /**
+     * A path compiled for matching element names while parsing.
+     */
+    private static class Compiled {
+        /** the top element name to match, or null if any */
+        String top;
+        /** names of the child steps to match below the top element */
+        String[] names;
+        /**
+         * Child names used by the predicates of the top element, at index
+         * 0, and of each step, or null if there are no predicates.
+         */
+        List<Set<String>> keys;
+        /** the path evaluated on the projected tree, to prune it */
+        Path eval;
+    }
+
+    private final Compiled[] paths;
+
+    /** the child names used by all the predicates */
+    private final Set<String> allKeys = new HashSet<String>();
+
+    /**
+     * Creates a projection from path expression strings.
+     *
+     * @param pathStrs Path expressions of the elements to build
+     */
+    public Projection(String... pathStrs) throws JNCException {
+        final Path[] parsed = new Path[pathStrs.length];
+        for (int i = 0; i < pathStrs.length; i++) {
+            parsed[i] = new Path(pathStrs[i]);
+        }
+        paths = compile(parsed);
+        collectKeys();
+    }
+
+    /**
+     * Creates a projection from paths.
+     *
+     * @param paths Paths of the elements to build
+     */
+    public Projection(Path... paths) throws JNCException {
+        this.paths = compile(paths);
+        collectKeys();
+    }
+
+    private void collectKeys() {
+        for (final Compiled c : paths) {
+            for (final Set<String> keys : c.keys) {
+                if (keys != null) {
+                    allKeys.addAll(keys);
+                }
+            }
+        }
+    }
+
+    private static Compiled[] compile(Path[] paths) throws JNCException {
+        final Compiled[] compiled = new Compiled[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            final Path path = paths[i];
+            final ArrayList<Path.LocationStep> steps = new ArrayList<Path.LocationStep>(
+                    path.locationSteps);
+            final Compiled c = new Compiled();
+            c.eval = new Path();
+            c.eval.pathStr = path.pathStr;
+            c.eval.locationSteps = new ArrayList<Path.LocationStep>();
+            final ArrayList<Set<String>> keys = new ArrayList<Set<String>>();
+
+            int first = 0;
+            boolean absolute = false;
+            if (!steps.isEmpty() && steps.get(0).axis == Path.AXIS_ROOT) {
+                absolute = true;
+                first = 1;
+            }
+            if (first < steps.size()
+                    && (absolute || steps.get(first).axis == Path.AXIS_SELF)) {
+                /* the step naming the top element is a self step */
+                final Path.LocationStep step = steps.get(first);
+                checkAxis(path, step, absolute ? Path.AXIS_CHILD
+                        : Path.AXIS_SELF);
+                c.top = step.name;
+                final Path.LocationStep self = c.eval.new LocationStep(
+                        Path.AXIS_SELF, step.prefix, step.name);
+                self.predicates = step.predicates;
+                c.eval.locationSteps.add(self);
+                keys.add(keys(step));
+                first++;
+            } else {
+                keys.add(null);
+            }
+            c.names = new String[steps.size() - first];
+            for (int j = first; j < steps.size(); j++) {
+                final Path.LocationStep step = steps.get(j);
+                checkAxis(path, step, Path.AXIS_CHILD);
+                c.names[j - first] = step.name;
+                c.eval.locationSteps.add(step);
+                keys.add(keys(step));
+            }
+            keys.trimToSize();
+            c.keys = keys;
+            compiled[i] = c;
+        }
+        return compiled;
+    }
+
+    private static void checkAxis(Path path, Path.LocationStep step,
+            int axis) throws JNCException {
+        if (step.axis != axis) {
+            throw new JNCException(JNCException.PATH_ERROR,
+                    "unsupported location step in projection: " + step
+                            + " in " + path.pathStr);
+        }
+    }
+
+    private static Set<String> keys(Path.LocationStep step) {
+        if (step.predicates == null) {
+            return null;
+        }
+        final Set<String> keys = new HashSet<String>();
+        for (final Path.Expr expr : step.predicates) {
+            addKeys(expr, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Collects the names of the children whose value a predicate reads.
+     */
+    private static void addKeys(Object expr, Set<String> keys) {
+        if (expr instanceof Path.Expr) {
+            final Path.Expr e = (Path.Expr) expr;
+            if (e.op == Path.CHILD_VALUE) {
+                keys.add((String) e.lvalue);
+            } else {
+                addKeys(e.lvalue, keys);
+                addKeys(e.rvalue, keys);
+            }
+        }
+    }
+
+    /**
+     * Returns a handler passing on to the given handler only the events of
+     * the elements to build.
+     */
+    Filter filter(ContentHandler handler) {
+        return new Filter(handler);
+    }
+
+    /**
+     * Removes from a projected tree the elements which were built since
+     * their names matched the paths, but which are not selected by them
+     * once the predicates are evaluated. The leaves read by the predicates
+     * are kept, so that the paths still select the same elements.
+     *
+     * @param top The top element of the projected tree
+     */
+    void prune(Element top) throws JNCException {
+        if (top == null) {
+            return;
+        }
+        final Map<Element, Boolean> keep = new IdentityHashMap<Element, Boolean>();
+        for (final Compiled c : paths) {
+            for (final Element selected : c.eval.eval(top)) {
+                keep.put(selected, Boolean.TRUE);
+                for (Element e = selected.parent; e != null
+                        && !keep.containsKey(e); e = e.parent) {
+                    keep.put(e, Boolean.FALSE);
+                }
+            }
+        }
+        if (keep.get(top) != Boolean.TRUE) {
+            prune(top, keep);
+        }
+    }
+
+    private void prune(Element parent, Map<Element, Boolean> keep) {
+        if (parent.children == null) {
+            return;
+        }
+        final NodeSet kept = new NodeSet();
+        for (final Element child : parent.children) {
+            final Boolean selected = keep.get(child);
+            if (selected == null) {
+                if (!child.hasChildren() && allKeys.contains(child.name)) {
+                    kept.add(child);
+                } else {
+                    child.parent = null;
+                }
+            } else {
+                kept.add(child);
+                if (!selected) {
+                    prune(child, keep);
+                }
+            }
+        }
+        parent.children = kept.isEmpty() ? null : kept;
+    }
+
+    /**
+     * The filtering handler. It keeps a stack with, for each open element
+     * being built, the path steps matched so far. Elements matching no step
+     * are skipped along with their subtree.
+     */
+    final class Filter extends DefaultHandler {
+
+        private final ContentHandler handler;
+
+        /* per open element: the matched (path, step) pairs, or null */
+        private final ArrayList<long[]> stack = new ArrayList<long[]>();
+
+        /* depth below a selected element, or in a skipped subtree */
+        private int fullDepth;
+        private int skipDepth;
+
+        /* prefix mappings of the next element, passed on if it is built */
+        private final ArrayList<String> pendingPrefixes = new ArrayList<String>();
+
+        Filter(ContentHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * Whether the element just started is skipped. Lets a backend pass
+         * over its subtree without reporting it, it must then only report
+         * the end of the element.
+         */
+        boolean isSkipping() {
+            return skipDepth == 1;
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            handler.startDocument();
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            handler.endDocument();
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            if (skipDepth == 0) {
+                pendingPrefixes.add(prefix);
+                pendingPrefixes.add(uri);
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName,
+                String qName, Attributes attributes) throws SAXException {
+            if (skipDepth > 0) {
+                skipDepth++;
+                return;
+            }
+            if (fullDepth > 0) {
+                fullDepth++;
+            } else if (stack.isEmpty()) {
+                matchTop(localName);
+            } else {
+                matchChild(localName);
+            }
+            if (skipDepth > 0) {
+                pendingPrefixes.clear();
+                return;
+            }
+            for (int i = 0; i < pendingPrefixes.size(); i += 2) {
+                handler.startPrefixMapping(pendingPrefixes.get(i),
+                        pendingPrefixes.get(i + 1));
+            }
+            pendingPrefixes.clear();
+            handler.startElement(uri, localName, qName, attributes);
+        }
+
+        private void matchTop(String name) {
+            final long[] states = new long[paths.length];
+            int n = 0;
+            for (int p = 0; p < paths.length; p++) {
+                final Compiled c = paths[p];
+                if (c.top != null && !c.top.equals(name)) {
+                    continue;
+                }
+                if (c.names.length == 0) {
+                    fullDepth = 1;
+                    return;
+                }
+                states[n++] = state(p, 0);
+            }
+            push(states, n);
+        }
+
+        private void matchChild(String name) {
+            final long[] parent = stack.get(stack.size() - 1);
+            long[] states = null;
+            int n = 0;
+            for (final long s : parent) {
+                final Compiled c = paths[path(s)];
+                final int k = step(s);
+                final Set<String> keys = c.keys.get(k);
+                if (keys != null && keys.contains(name)) {
+                    fullDepth = 1;
+                    return;
+                }
+                if (c.names[k].equals(name)) {
+                    if (k + 1 == c.names.length) {
+                        fullDepth = 1;
+                        return;
+                    }
+                    if (states == null) {
+                        states = new long[parent.length];
+                    }
+                    states[n++] = state(path(s), k + 1);
+                }
+            }
+            if (n == 0) {
+                skipDepth = 1;
+            } else {
+                push(states, n);
+            }
+        }
+
+        private void push(long[] states, int n) {
+            if (n < states.length) {
+                final long[] a = new long[n];
+                System.arraycopy(states, 0, a, 0, n);
+                states = a;
+            }
+            stack.add(states);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            if (fullDepth > 0) {
+                fullDepth--;
+            } else {
+                stack.remove(stack.size() - 1);
+            }
+            handler.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            // only the text of selected subtrees, not of their ancestors
+            if (fullDepth > 0) {
+                handler.characters(ch, start, length);
+            }
+        }
+    }
+
+    private static long state(int path, int step) {
+        return ((long) path << 32) | step;
+    }
+
+    private static int path(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int step(long state) {
+        return (int) state;
+    }
+}
@@ -0,0 +1,313 @@
+package com.tailf.jnc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The restrictions of a YANG type compiled once for the type: the regular
+ * expressions of its patterns, the bounds of its range, and for a union its
+ * member types, see {@link UnionMembers}. The restrictions
+ * of a type are found by its class with {@link #of(Class)}, and checking a
+ * value against them compiles and allocates nothing once they are known.
+ * <p>
+ * Restrictions may be used by several threads at the same time.
+ */
+final class Restrictions {
+
+    /*
+     * patterns kept per type; the patterns of a type which checks its values
+     * against more than this are compiled on each check
+     */
+    private static final int MAX_PATTERNS = 64;
+
+    /* sets of patterns checked kept per type, see mayMatch() */
+    private static final int MAX_CHECKED = 8;
+
+    private static final ClassValue<Restrictions> BY_TYPE = new ClassValue<Restrictions>() {
+        @Override
+        protected Restrictions computeValue(Class<?> type) {
+            return new Restrictions();
+        }
+    };
+
+    private static final BigDecimal LONG_MIN = BigDecimal
+            .valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal
+            .valueOf(Long.MAX_VALUE);
+
+    /* regex -> compiled pattern */
+    private final ConcurrentHashMap<String, Compiled> patterns = new ConcurrentHashMap<String, Compiled>();
+
+    /*
+     * the different sets of patterns values have been checked against, or
+     * null if there have been more than MAX_CHECKED
+     */
+    private volatile String[][] checked = new String[0][];
+
+    /*
+     * the ranges last given to range(): a subclass of a built-in type sets
+     * its own range after the one of the built-in type
+     */
+    private volatile Range range;
+    private volatile Range previous;
+
+    /* the member types last given to union() */
+    private volatile UnionMembers union;
+
+    /**
+     * A compiled pattern, with a matcher for each thread.
+     */
+    private static final class Compiled extends ThreadLocal<Matcher> {
+        final Pattern pattern;
+
+        Compiled(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected Matcher initialValue() {
+            return pattern.matcher("");
+        }
+
+        boolean matches(String value) {
+            final Matcher matcher = get();
+            try {
+                return matcher.reset(value).matches();
+            } finally {
+                // do not keep the value
+                matcher.reset("");
+            }
+        }
+    }
+
+    /**
+     * The bounds of a range, as BigDecimals, and the longs in the range as
+     * the longs between two bounds, so that whole numbers are checked
+     * without BigDecimals.
+     */
+    static final class Range {
+        private final boolean longArgs;
+        private final Number minArg;
+        private final Number maxArg;
+        final BigDecimal min;
+        final BigDecimal max;
+        private final long minLong;
+        private final long maxLong;
+
+        private Range(Number minArg, Number maxArg) {
+            longArgs = false;
+            this.minArg = minArg;
+            this.maxArg = maxArg;
+            min = Utils.bigDecimalValueOf(minArg);
+            max = Utils.bigDecimalValueOf(maxArg);
+            final BigDecimal lo = min == null ? LONG_MIN : min.setScale(0,
+                    RoundingMode.CEILING);
+            final BigDecimal hi = max == null ? LONG_MAX : max.setScale(0,
+                    RoundingMode.FLOOR);
+            if (lo.compareTo(LONG_MAX) > 0 || hi.compareTo(LONG_MIN) < 0) {
+                // no long is in the range
+                minLong = 1;
+                maxLong = 0;
+            } else {
+                minLong = lo.max(LONG_MIN).longValue();
+                maxLong = hi.min(LONG_MAX).longValue();
+            }
+        }
+
+        private Range(long minArg, long maxArg) {
+            longArgs = true;
+            this.minArg = null;
+            this.maxArg = null;
+            min = BigDecimal.valueOf(minArg);
+            max = BigDecimal.valueOf(maxArg);
+            minLong = minArg;
+            maxLong = maxArg;
+        }
+
+        boolean isRange(Number minArg, Number maxArg) {
+            return !longArgs && same(this.minArg, minArg)
+                    && same(this.maxArg, maxArg);
+        }
+
+        boolean isRange(long minArg, long maxArg) {
+            return longArgs && minLong == minArg && maxLong == maxArg;
+        }
+
+        /**
+         * Returns <code>true</code> if the range holds a number, which must
+         * be one {@link Restrictions#isLong(Object)} holds for.
+         */
+        boolean contains(Number n) {
+            final long v = n.longValue();
+            return v >= minLong && v <= maxLong;
+        }
+    }
+
+    private Restrictions() {
+    }
+
+    /**
+     * Returns the restrictions of a type.
+     */
+    static Restrictions of(Class<?> type) {
+        return BY_TYPE.get(type);
+    }
+
+    /**
+     * Checks a value against regular expressions, as
+     * {@link Pattern#matches(String, CharSequence)} with each.
+     *
+     * @return <code>true</code> if the value matches all of them
+     * @throws YangException If a regular expression has a syntax error.
+     */
+    boolean matches(String value, String[] regexes) throws YangException {
+        checking(regexes);
+        for (final String regex : regexes) {
+            if (!compiled(regex).matches(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Compiled compiled(String regex) throws YangException {
+        Compiled compiled = patterns.get(regex);
+        if (compiled == null) {
+            try {
+                compiled = new Compiled(Pattern.compile(regex));
+            } catch (final PatternSyntaxException e) {
+                YangException.throwException(true, e);
+            }
+            if (patterns.size() < MAX_PATTERNS) {
+                final Compiled old = patterns.putIfAbsent(regex, compiled);
+                if (old != null) {
+                    compiled = old;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private void checking(String[] regexes) {
+        final String[][] c = checked;
+        if (c == null) {
+            return;
+        }
+        for (final String[] set : c) {
+            if (set == regexes || Arrays.equals(set, regexes)) {
+                return;
+            }
+        }
+        synchronized (this) {
+            if (checked == c) {
+                if (c.length < MAX_CHECKED) {
+                    final String[][] more = Arrays.copyOf(c, c.length + 1);
+                    more[c.length] = regexes.clone();
+                    checked = more;
+                } else {
+                    checked = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>false</code> if a value given to the String constructor
+     * of the type cannot be one of its values, because it does not match the
+     * patterns which values of the type have been checked against so far.
+     * This assumes that the type checks the same patterns for every value,
+     * as generated types do; a value whose whitespace the type may replace
+     * or collapse before checking is not looked at.
+     */
+    boolean mayMatch(String value) {
+        final String[][] c = checked;
+        if (c == null || c.length == 0 || Utils.wsReplace(value) != value
+                || Utils.wsCollapse(value) != value) {
+            return true;
+        }
+        try {
+            for (final String[] regexes : c) {
+                for (final String regex : regexes) {
+                    if (!compiled(regex).matches(value)) {
+                        return false;
+                    }
+                }
+            }
+        } catch (final YangException e) {
+            // the type will tell
+        }
+        return true;
+    }
+
+    /**
+     * Returns the member types of the union type, which are most likely the
+     * ones it has been given before.
+     */
+    UnionMembers union(String[] memberTypes) {
+        UnionMembers u = union;
+        if (u == null || !Arrays.equals(u.memberTypes, memberTypes)) {
+            u = new UnionMembers(memberTypes);
+            union = u;
+        }
+        return u;
+    }
+
+    /**
+     * Returns the range between two bounds, which the type has most likely
+     * been given before.
+     */
+    Range range(Number min, Number max) {
+        Range r = range;
+        if (r != null && r.isRange(min, max)) {
+            return r;
+        }
+        r = previous;
+        if (r != null && r.isRange(min, max)) {
+            return r;
+        }
+        return setRange(new Range(min, max));
+    }
+
+    /**
+     * Returns the range between two bounds given as longs, as
+     * {@link #range(Number, Number)} does without boxing them.
+     */
+    Range range(long min, long max) {
+        Range r = range;
+        if (r != null && r.isRange(min, max)) {
+            return r;
+        }
+        r = previous;
+        if (r != null && r.isRange(min, max)) {
+            return r;
+        }
+        return setRange(new Range(min, max));
+    }
+
+    private synchronized Range setRange(Range r) {
+        previous = range;
+        range = r;
+        return r;
+    }
+
+    private static boolean same(Number a, Number b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /**
+     * Returns <code>true</code> if a number is a Long, an Integer, a Short,
+     * a Byte or a BigInteger which fits a long, which compare as longs.
+     */
+    static boolean isLong(Object n) {
+        return n instanceof Long || n instanceof Integer
+                || n instanceof Short || n instanceof Byte
+                || (n instanceof BigInteger
+                        && ((BigInteger) n).bitLength() < 64);
+    }
+}
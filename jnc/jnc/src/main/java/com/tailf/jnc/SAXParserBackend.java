@@ -0,0 +1,35 @@
+package com.tailf.jnc;
+
+import java.io.IOException;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A {@link ParserBackend} parsing with the SAX readers of the
+ * {@link XMLReaderPool}.
+ */
+public class SAXParserBackend implements ParserBackend {
+
+    @Override
+    public void parse(InputSource is, ContentHandler handler)
+            throws IOException, SAXException {
+        final XMLReader reader;
+        try {
+            reader = XMLReaderPool.borrow();
+        } catch (final JNCException e) {
+            throw new SAXException(e.toString());
+        }
+        reader.setContentHandler(handler);
+        reader.parse(is);
+        /* readers whose parse failed are not given back */
+        XMLReaderPool.release(reader);
+    }
+
+    @Override
+    public String toString() {
+        return "SAX";
+    }
+}
@@ -20,6 +20,9 @@ public class SchemaNode {
     public String desc;
     public RevisionInfo[] revInfo;
 
+    /* the id given by SchemaTree when registered, or -1 */
+    int id = -1;
+
 //    public static final int CS_NODE_IS_DYN = (1 << 0);
 //    public static final int CS_NODE_IS_WRITE = (1 << 1);
 //    public static final int CS_NODE_IS_CDB = (1 << 2);
@@ -72,6 +75,18 @@ public class SchemaNode {
         return "SchemaNode{" + tagpath + "}";
     }
 
+    /**
+     * Returns the id of this node, a number below
+     * {@link SchemaTree#getNodeCount()} given to each schema node when its
+     * schema is registered, which may be used to keep data on schema nodes
+     * in arrays. The node with an id is {@link SchemaTree#getNode(int)}.
+     * 
+     * @return The id, or -1 if this node has not been registered.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Finds the schema class for a data element
      * 
@@ -79,7 +94,7 @@ public class SchemaNode {
      * @return the schema node with same namespace and tagpath as e
      */
     public static SchemaNode get(Element e) {
-        return SchemaTree.lookup(e.namespace, e.tagpath());
+        return SchemaTree.lookup(e.namespace, e);
     }
 
 }
@@ -1,7 +1,11 @@
 package com.tailf.jnc;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -182,8 +186,64 @@ public class SchemaParser {
         }
     }
 
+    /**
+     * Read in a schema file, and populate a hashtable with SchemaNode
+     * objects, from a binary snapshot of the file if there is one which was
+     * written from the file as it is now, see {@link SchemaSnapshot}.
+     * Otherwise the file is parsed and the snapshot is written, for the next
+     * time. The snapshot is only a cache: if it cannot be read or written,
+     * the file is parsed as usual.
+     *
+     * @param filename name of file containing the schema
+     * @param h The hashtable to populate.
+     * @param snapshot name of the snapshot file of the schema
+     * @throws JNCException If there is an IO or SAX parse problem.
+     */
+    public void readFile(String filename, HashMap<Tagpath, SchemaNode> h,
+            String snapshot) throws JNCException {
+        final byte[] source;
+        try {
+            source = SchemaSnapshot.readAll(new FileInputStream(filename));
+        } catch (final IOException e) {
+            throw new JNCException(JNCException.PARSER_ERROR, "Unable to open"
+                    + " file: " + filename + ": " + e);
+        }
+        final File file = new File(snapshot);
+        if (file.isFile() && readSnapshot(file, source, h)) {
+            return;
+        }
+        final HashMap<Tagpath, SchemaNode> read = new HashMap<Tagpath, SchemaNode>();
+        parse(source, filename, read);
+        try {
+            SchemaSnapshot.write(read, source, file);
+        } catch (final IOException e) {
+            // parsed again next time
+        }
+        h.putAll(read);
+        SchemaTree.registerLoaded(h);
+    }
+
     private void readFile(InputSource inputSource,
             HashMap<Tagpath, SchemaNode> h) throws JNCException {
+        parse(inputSource, h);
+        // lookups see the schema once it has been read
+        SchemaTree.registerLoaded(h);
+    }
+
+    /**
+     * Parses a schema file read into memory, and populates a hashtable with
+     * its SchemaNode objects.
+     */
+    void parse(byte[] source, String systemId, HashMap<Tagpath, SchemaNode> h)
+            throws JNCException {
+        final InputSource inputSource = new InputSource(
+                new ByteArrayInputStream(source));
+        inputSource.setSystemId(systemId);
+        parse(inputSource, h);
+    }
+
+    private void parse(InputSource inputSource,
+            HashMap<Tagpath, SchemaNode> h) throws JNCException {
         try {
             final SchemaHandler handler = new SchemaHandler(h);
             parser.setContentHandler(handler);
@@ -199,6 +259,11 @@ public class SchemaParser {
      * Scans the classpath for the XML schema file and populates the hashtable with 
      * SchemaNode objects. Class is passed in so that in the case of multiple {@link ClassLoader}s 
      * the correct one can be used to locate the schema.
+     * <p>
+     * If there is a binary snapshot of the schema file beside it on the
+     * classpath, named as the file with {@link SchemaSnapshot#SUFFIX} added,
+     * and it was written from the file as it is now, the schema is read from
+     * the snapshot instead of parsing the file.
      * 
      * @param filename
      * @param h
@@ -211,6 +276,57 @@ public class SchemaParser {
         if (url == null){
             throw new JNCException(JNCException.PARSER_ERROR, "Cannot find file: " + filename + " on the classpath.");
         }
-        readFile(url, h);
+        final URL snapshot = clazz.getResource(filename
+                + SchemaSnapshot.SUFFIX);
+        if (snapshot == null) {
+            readFile(url, h);
+            return;
+        }
+        final byte[] source;
+        try {
+            source = SchemaSnapshot.readAll(url.openStream());
+        } catch (final IOException e) {
+            throw new JNCException(JNCException.PARSER_ERROR, "Unable to open"
+                    + " file: " + url + ": " + e);
+        }
+        if (!readSnapshot(snapshot, source, h)) {
+            parse(source, url.toString(), h);
+            SchemaTree.registerLoaded(h);
+        }
+    }
+
+    /*
+     * Reads the schema from a snapshot if it was written from source, and
+     * returns false if not or if the snapshot cannot be read.
+     */
+    private static boolean readSnapshot(File snapshot, byte[] source,
+            HashMap<Tagpath, SchemaNode> h) {
+        try {
+            return readSnapshot(SchemaSnapshot.map(snapshot), source, h);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean readSnapshot(URL snapshot, byte[] source,
+            HashMap<Tagpath, SchemaNode> h) {
+        try {
+            return readSnapshot(SchemaSnapshot.map(snapshot), source, h);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean readSnapshot(ByteBuffer snapshot, byte[] source,
+            HashMap<Tagpath, SchemaNode> h) {
+        try {
+            if (!SchemaSnapshot.read(snapshot, source, h)) {
+                return false;
+            }
+        } catch (final JNCException e) {
+            return false;
+        }
+        SchemaTree.registerLoaded(h);
+        return true;
     }
 }
@@ -0,0 +1,406 @@
+package com.tailf.jnc;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of a schema file, which {@link SchemaParser} reads
+ * instead of parsing the XML of the file when there is one, so that
+ * starting with many YANG modules does not spend its time parsing their
+ * schemas. The snapshot is memory-mapped when it is a file.
+ * <p>
+ * A snapshot is written with {@link #write(String, String)}, or from the
+ * command line:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.SchemaSnapshot Module.schema ...
+ * </pre>
+ *
+ * which writes <code>Module.schema.bin</code> beside each schema file, where
+ * {@link SchemaParser#findAndReadFile(String, HashMap, Class)} looks for it.
+ * <p>
+ * A snapshot holds the length and CRC-32 of the schema file it was written
+ * from, and is only used in place of that file as it was. The strings of
+ * the schema, mostly the names of its Tagpaths, are kept once each, and
+ * the SchemaNode objects read share them.
+ */
+public final class SchemaSnapshot {
+
+    /**
+     * Added to the name of a schema file to get the name of its snapshot.
+     */
+    public static final String SUFFIX = ".bin";
+
+    /* "JNCS" */
+    private static final int MAGIC = 0x4a4e4353;
+
+    private static final int VERSION = 1;
+
+    private SchemaSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of a schema file.
+     *
+     * @param schemaFile name of file containing the schema
+     * @param snapshotFile name of the snapshot file to write
+     * @throws JNCException If there is an IO or SAX parse problem.
+     */
+    public static void write(String schemaFile, String snapshotFile)
+            throws JNCException {
+        try {
+            final byte[] source = readAll(new FileInputStream(schemaFile));
+            final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
+            new SchemaParser().parse(source, schemaFile, h);
+            write(h, source, new File(snapshotFile));
+        } catch (final IOException e) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "write snapshot: " + snapshotFile + " error: " + e);
+        }
+    }
+
+    /**
+     * Reads in a snapshot, and populates a hashtable with SchemaNode
+     * objects, as {@link SchemaParser#readFile(String, HashMap)} does with
+     * the schema file the snapshot was written from. The schema file is not
+     * read, nor checked against the snapshot.
+     *
+     * @param snapshotFile name of the snapshot file
+     * @param h The hashtable to populate.
+     * @throws JNCException If there is an IO problem or the file is not a
+     *             snapshot.
+     */
+    public static void read(String snapshotFile,
+            HashMap<Tagpath, SchemaNode> h) throws JNCException {
+        try {
+            if (!read(map(new File(snapshotFile)), null, h)) {
+                throw new JNCException(JNCException.PARSER_ERROR,
+                        "read snapshot: " + snapshotFile
+                                + " error: unsupported version");
+            }
+        } catch (final IOException e) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "read snapshot: " + snapshotFile + " error: " + e);
+        }
+        SchemaTree.registerLoaded(h);
+    }
+
+    /**
+     * Writes the snapshot of each schema file given, named as the file with
+     * {@link #SUFFIX} added.
+     */
+    public static void main(String[] args) throws JNCException {
+        if (args.length == 0) {
+            System.err.println("usage: SchemaSnapshot schema-file ...");
+            System.exit(1);
+        }
+        for (final String schemaFile : args) {
+            write(schemaFile, schemaFile + SUFFIX);
+        }
+    }
+
+    /**
+     * Writes the snapshot of a schema read from source. The snapshot is
+     * written beside the file and then moved in place, so that it is never
+     * read half written.
+     */
+    static void write(Map<Tagpath, SchemaNode> schema, byte[] source,
+            File file) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (final SchemaNode node : schema.values()) {
+            if (node.tagpath != null) {
+                add(strings, node.tagpath.p);
+            }
+            add(strings, node.namespace);
+            add(strings, node.children);
+            add(strings, node.desc);
+            if (node.revInfo != null) {
+                for (final RevisionInfo ri : node.revInfo) {
+                    add(strings, ri.data);
+                    add(strings, ri.introduced);
+                }
+            }
+        }
+
+        final File dir = file.getAbsoluteFile().getParentFile();
+        final File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(source.length);
+                out.writeInt(crc(source));
+                out.writeInt(strings.size());
+                for (final String s : strings.keySet()) {
+                    final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+                out.writeInt(schema.size());
+                for (final SchemaNode node : schema.values()) {
+                    write(out, strings, node.tagpath == null ? null
+                            : node.tagpath.p);
+                    write(out, strings, node.namespace);
+                    out.writeInt(node.primitive_type);
+                    out.writeInt(node.min_occurs);
+                    out.writeInt(node.max_occurs);
+                    write(out, strings, node.children);
+                    out.writeLong(node.flags);
+                    write(out, strings, node.desc);
+                    if (node.revInfo == null) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(node.revInfo.length);
+                        for (final RevisionInfo ri : node.revInfo) {
+                            out.writeInt(ri.type);
+                            out.writeInt(ri.idata);
+                            write(out, strings, ri.data);
+                            write(out, strings, ri.introduced);
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static void add(Map<String, Integer> strings, String s) {
+        if (s != null && !strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+
+    private static void add(Map<String, Integer> strings, String[] a) {
+        if (a != null) {
+            for (final String s : a) {
+                add(strings, s);
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out,
+            Map<String, Integer> strings, String s) throws IOException {
+        out.writeInt(s == null ? -1 : strings.get(s));
+    }
+
+    private static void write(DataOutputStream out,
+            Map<String, Integer> strings, String[] a) throws IOException {
+        if (a == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(a.length);
+        for (final String s : a) {
+            write(out, strings, s);
+        }
+    }
+
+    /**
+     * Reads a snapshot into a hashtable, if it was written from source or
+     * source is null, and returns false otherwise. Nothing is put into the
+     * hashtable unless the whole snapshot is read.
+     *
+     * @throws JNCException If snapshot is not a snapshot or is truncated.
+     */
+    static boolean read(ByteBuffer snapshot, byte[] source,
+            Map<Tagpath, SchemaNode> h) throws JNCException {
+        final ArrayList<SchemaNode> nodes;
+        try {
+            if (snapshot.getInt() != MAGIC) {
+                throw new JNCException(JNCException.PARSER_ERROR,
+                        "not a schema snapshot");
+            }
+            if (snapshot.getInt() != VERSION) {
+                return false;
+            }
+            final int length = snapshot.getInt();
+            final int crc = snapshot.getInt();
+            if (source != null
+                    && (length != source.length || crc != crc(source))) {
+                return false;
+            }
+
+            final String[] strings = new String[count(snapshot, 4)];
+            byte[] b = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                final int n = count(snapshot, 1);
+                if (n > b.length) {
+                    b = new byte[Math.max(n, b.length * 2)];
+                }
+                snapshot.get(b, 0, n);
+                strings[i] = new String(b, 0, n, StandardCharsets.UTF_8);
+            }
+
+            final int count = count(snapshot, 40);
+            nodes = new ArrayList<SchemaNode>(count);
+            for (int i = 0; i < count; i++) {
+                final SchemaNode node = new SchemaNode();
+                final String[] p = strings(snapshot, strings);
+                node.tagpath = p == null ? null : new Tagpath(p);
+                node.namespace = string(snapshot, strings);
+                node.primitive_type = snapshot.getInt();
+                node.min_occurs = snapshot.getInt();
+                node.max_occurs = snapshot.getInt();
+                node.children = strings(snapshot, strings);
+                node.flags = snapshot.getLong();
+                node.desc = string(snapshot, strings);
+                final int revisions = optionalCount(snapshot, 16);
+                if (revisions >= 0) {
+                    node.revInfo = new RevisionInfo[revisions];
+                    for (int j = 0; j < revisions; j++) {
+                        final RevisionInfo ri = new RevisionInfo();
+                        ri.type = snapshot.getInt();
+                        ri.idata = snapshot.getInt();
+                        ri.data = string(snapshot, strings);
+                        ri.introduced = string(snapshot, strings);
+                        node.revInfo[j] = ri;
+                    }
+                }
+                nodes.add(node);
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "truncated schema snapshot");
+        } catch (final IndexOutOfBoundsException e) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "corrupt schema snapshot: " + e);
+        }
+        for (final SchemaNode node : nodes) {
+            h.put(node.tagpath, node);
+        }
+        return true;
+    }
+
+    /*
+     * Reads a count of items of at least size bytes each, which must fit in
+     * what is left of the snapshot, so that a corrupt count is found before
+     * making an array for it.
+     */
+    private static int count(ByteBuffer snapshot, int size)
+            throws JNCException {
+        final int n = snapshot.getInt();
+        if (n < 0 || n > snapshot.remaining() / size) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "corrupt schema snapshot: count " + n);
+        }
+        return n;
+    }
+
+    /* as count(), or -1 for a null array */
+    private static int optionalCount(ByteBuffer snapshot, int size)
+            throws JNCException {
+        snapshot.mark();
+        if (snapshot.getInt() == -1) {
+            return -1;
+        }
+        snapshot.reset();
+        return count(snapshot, size);
+    }
+
+    private static String string(ByteBuffer snapshot, String[] strings) {
+        final int i = snapshot.getInt();
+        return i == -1 ? null : strings[i];
+    }
+
+    private static String[] strings(ByteBuffer snapshot, String[] strings)
+            throws JNCException {
+        final int n = optionalCount(snapshot, 4);
+        if (n == -1) {
+            return null;
+        }
+        final String[] a = new String[n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = string(snapshot, strings);
+        }
+        return a;
+    }
+
+    /**
+     * Maps a snapshot file into memory.
+     */
+    static ByteBuffer map(File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        try {
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Maps a snapshot into memory if it is a file, or reads it otherwise,
+     * for instance from a jar.
+     */
+    static ByteBuffer map(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return map(new File(url.toURI()));
+            } catch (final URISyntaxException e) {
+                // read below
+            } catch (final IllegalArgumentException e) {
+                // read below
+            }
+        }
+        return ByteBuffer.wrap(readAll(url.openStream()));
+    }
+
+    /**
+     * Reads a stream to its end, and closes it.
+     */
+    static byte[] readAll(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] b = new byte[8192];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                out.write(b, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int crc(byte[] source) {
+        final CRC32 crc = new CRC32();
+        crc.update(source, 0, source.length);
+        return (int) crc.getValue();
+    }
+}
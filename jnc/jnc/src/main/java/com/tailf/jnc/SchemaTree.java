@@ -1,37 +1,123 @@
 package com.tailf.jnc;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The SchemaTree class is used to represent the schemas of all namespaces
+ * <p>
+ * The schema of a namespace is loaded into the HashMap returned by
+ * {@link #create(String)}, and is then registered, which
+ * {@link SchemaParser} does once it has read the schema file. Registering
+ * a schema publishes an immutable copy of it, which lookups use, so that
+ * schemas may be looked up by several threads while other schemas are
+ * being loaded. Registered schema nodes are given ids, see
+ * {@link SchemaNode#getId()} and {@link #getNode(int)}, and their Tagpaths
+ * are interned.
  */
 public class SchemaTree {
 
-    private static HashMap<String, HashMap<Tagpath, SchemaNode>> namespaces = new HashMap<String, HashMap<Tagpath, SchemaNode>>();
+    private static final ConcurrentHashMap<String, Module> namespaces = new ConcurrentHashMap<String, Module>();
+
+    /* the Tagpaths of the registered schema nodes */
+    private static final ConcurrentHashMap<Tagpath, Tagpath> tagpaths = new ConcurrentHashMap<Tagpath, Tagpath>();
+
+    /* registered schema nodes by id; replaced under the class lock */
+    private static volatile SchemaNode[] nodes = new SchemaNode[0];
+
+    /**
+     * The schema of a namespace: the map it is loaded into, and the copy of
+     * it last registered.
+     */
+    private static final class Module {
+        final HashMap<Tagpath, SchemaNode> loaded = new HashMap<Tagpath, SchemaNode>();
+        volatile Table registered;
+    }
+
+    /**
+     * An immutable hash table of schema nodes by Tagpath, which finds the
+     * node of an element without making its Tagpath.
+     */
+    private static final class Table {
+        private final Tagpath[] keys;
+        private final SchemaNode[] values;
+        private final int mask;
+
+        Table(Map<Tagpath, SchemaNode> map) {
+            int size = 2;
+            while (size < map.size() * 2) {
+                size <<= 1;
+            }
+            keys = new Tagpath[size];
+            values = new SchemaNode[size];
+            mask = size - 1;
+            for (final Map.Entry<Tagpath, SchemaNode> e : map.entrySet()) {
+                int i = e.getKey().hashCode() & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = e.getKey();
+                values[i] = e.getValue();
+            }
+        }
+
+        SchemaNode get(Tagpath tp) {
+            for (int i = tp.hashCode() & mask; keys[i] != null; i = (i + 1)
+                    & mask) {
+                if (keys[i].equals(tp)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        SchemaNode get(Element e) {
+            final int h = Tagpath.hashCode(e);
+            for (int i = h & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].hashCode() == h && keys[i].isPathTo(e)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+    }
 
     /**
      * If no hashmap exists for namespace, it is created. Used by generated
      * code to populate new hashmaps for YANG modules.
-     * 
+     *
      * @param namespace The namespace of the module as a String.
      * @return The HashMap associated with namespace.
      */
     public static HashMap<Tagpath, SchemaNode> create(String namespace) {
-        if (namespaces.containsKey(namespace)) {
-            return namespaces.get(namespace);
+        return module(namespace).loaded;
+    }
+
+    private static Module module(String namespace) {
+        Module module = namespaces.get(namespace);
+        if (module == null) {
+            module = new Module();
+            final Module raced = namespaces.putIfAbsent(namespace, module);
+            if (raced != null) {
+                module = raced;
+            }
         }
-        final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
-        namespaces.put(namespace, h);
-        return h;
+        return module;
     }
 
     /**
+     * Returns the HashMap the schema of a namespace is loaded into. Changes
+     * to it are seen by lookups once the namespace is registered again.
+     *
      * @param namespace A YANG module namespace as a String
      * @return The HashMap associated with namespace, or null.
      */
     public static HashMap<Tagpath, SchemaNode> getHashMap(String namespace) {
-        return namespaces.get(namespace);
+        final Module module = namespaces.get(namespace);
+        return module == null ? null : module.loaded;
     }
 
     /**
@@ -42,17 +128,129 @@ public class SchemaTree {
         return namespaces.keySet();
     }
 
+    /**
+     * Registers the schema loaded into the HashMap of a namespace, see
+     * {@link #create(String)}: its Tagpaths are interned, its nodes are
+     * given ids, and lookups use it from now on.
+     *
+     * @param namespace The namespace of the module.
+     */
+    public static void register(String namespace) {
+        register(module(namespace));
+    }
+
+    /**
+     * Registers the namespace whose schema has been loaded into a map, if
+     * the map is the one of a namespace.
+     */
+    static void registerLoaded(Map<Tagpath, SchemaNode> map) {
+        for (final Module module : namespaces.values()) {
+            if (module.loaded == map) {
+                register(module);
+            }
+        }
+    }
+
+    private static synchronized void register(Module module) {
+        final HashMap<Tagpath, SchemaNode> copy;
+        copy = new HashMap<Tagpath, SchemaNode>(module.loaded.size() * 2);
+        SchemaNode[] all = nodes;
+        int count = all.length;
+        for (final Map.Entry<Tagpath, SchemaNode> e : module.loaded
+                .entrySet()) {
+            if (e.getKey() == null) {
+                continue;
+            }
+            final Tagpath tp = intern(e.getKey());
+            final SchemaNode node = e.getValue();
+            if (node != null) {
+                if (node.tagpath != null && node.tagpath.equals(tp)) {
+                    node.tagpath = tp;
+                }
+                if (node.id < 0) {
+                    if (count == all.length) {
+                        all = Arrays.copyOf(all, Math.max(16, count * 2));
+                    }
+                    node.id = count;
+                    all[count++] = node;
+                }
+            }
+            copy.put(tp, node);
+        }
+        if (count != nodes.length) {
+            nodes = Arrays.copyOf(all, count);
+        }
+        module.registered = new Table(copy);
+    }
+
+    /**
+     * Returns the shared Tagpath equal to a Tagpath, which is the Tagpath
+     * itself if no equal one has been interned before. The Tagpaths of
+     * registered schema nodes are interned.
+     *
+     * @param tp A Tagpath.
+     * @return The shared Tagpath equal to tp.
+     */
+    public static Tagpath intern(Tagpath tp) {
+        final Tagpath raced = tagpaths.putIfAbsent(tp, tp);
+        return raced == null ? tp : raced;
+    }
+
+    /**
+     * Returns a registered schema node by its id.
+     *
+     * @param id The id of the node, see {@link SchemaNode#getId()}.
+     * @return The schema node.
+     * @throws ArrayIndexOutOfBoundsException If no node has the id.
+     */
+    public static SchemaNode getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Returns the number of schema nodes registered so far, which are the
+     * ones with ids below it.
+     *
+     * @return The number of registered schema nodes.
+     */
+    public static int getNodeCount() {
+        return nodes.length;
+    }
+
     /**
      * Searches for a SchemaNode given a namespace and a Tagpath.
-     * 
+     *
      * @param namespace The namespace of the module.
      * @param tp The TagPath of the node to search for.
      * @return The SchemaNode with Tagpath tp in module with specified
      *         namespace, or null if not found.
      */
     public static SchemaNode lookup(String namespace, Tagpath tp) {
-        final HashMap<Tagpath, SchemaNode> t = getHashMap(namespace);
-        return t == null ? null : t.get(tp);
+        final Module module = namespaces.get(namespace);
+        if (module == null) {
+            return null;
+        }
+        final Table table = module.registered;
+        return table != null ? table.get(tp) : module.loaded.get(tp);
+    }
+
+    /**
+     * Searches for the SchemaNode of an element, as
+     * <code>lookup(namespace, e.tagpath())</code> does, without making the
+     * Tagpath of the element.
+     *
+     * @param namespace The namespace of the module.
+     * @param e The element.
+     * @return The SchemaNode with the Tagpath of e in module with specified
+     *         namespace, or null if not found.
+     */
+    public static SchemaNode lookup(String namespace, Element e) {
+        final Module module = namespaces.get(namespace);
+        if (module == null) {
+            return null;
+        }
+        final Table table = module.registered;
+        return table != null ? table.get(e) : module.loaded.get(e.tagpath());
     }
 
-}
\ No newline at end of file
+}
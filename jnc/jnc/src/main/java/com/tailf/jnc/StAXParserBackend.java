@@ -0,0 +1,189 @@
+package com.tailf.jnc;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A {@link ParserBackend} pulling the XML text through a StAX
+ * XMLStreamReader, and reporting it to the handler the way a namespace
+ * aware SAX parser would.
+ * <p>
+ * The stream readers read straight from the byte or character stream of
+ * the input source. DTDs and external entities are not supported. When
+ * parsing with a {@link Projection}, the content of skipped subtrees is
+ * passed over without being reported.
+ */
+public class StAXParserBackend implements ParserBackend {
+
+    private final XMLInputFactory factory;
+
+    /**
+     * Constructor, using the default StAX implementation.
+     */
+    public StAXParserBackend() {
+        this(XMLInputFactory.newInstance());
+    }
+
+    /**
+     * Constructor, using the given StAX implementation. The factory is
+     * configured to be namespace aware and to not coalesce text, and must
+     * not be changed afterwards.
+     * 
+     * @param factory Factory creating the stream readers
+     */
+    public StAXParserBackend(XMLInputFactory factory) {
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+        this.factory = factory;
+    }
+
+    @Override
+    public void parse(InputSource is, ContentHandler handler)
+            throws IOException, SAXException {
+        try {
+            final XMLStreamReader reader = createReader(is);
+            try {
+                parse(reader, handler);
+            } finally {
+                reader.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private XMLStreamReader createReader(InputSource is)
+            throws XMLStreamException {
+        if (is.getCharacterStream() != null) {
+            return factory.createXMLStreamReader(is.getCharacterStream());
+        }
+        if (is.getByteStream() != null) {
+            if (is.getEncoding() != null) {
+                return factory.createXMLStreamReader(is.getByteStream(),
+                        is.getEncoding());
+            }
+            return factory.createXMLStreamReader(is.getByteStream());
+        }
+        return factory.createXMLStreamReader(new StreamSource(is
+                .getSystemId()));
+    }
+
+    /**
+     * Reports the events of the stream reader to the handler, until the
+     * end of the document.
+     */
+    static void parse(XMLStreamReader reader, ContentHandler handler)
+            throws XMLStreamException, SAXException {
+        final Projection.Filter filter = handler instanceof Projection.Filter
+                ? (Projection.Filter) handler : null;
+        final AttributesImpl attributes = new AttributesImpl();
+        int depth = 0;
+        handler.startDocument();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    handler.startPrefixMapping(
+                            nonNull(reader.getNamespacePrefix(i)),
+                            nonNull(reader.getNamespaceURI(i)));
+                }
+                attributes.clear();
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    final String localName = reader.getAttributeLocalName(i);
+                    attributes.addAttribute(
+                            nonNull(reader.getAttributeNamespace(i)),
+                            localName,
+                            qName(reader.getAttributePrefix(i), localName),
+                            reader.getAttributeType(i),
+                            reader.getAttributeValue(i));
+                }
+                handler.startElement(nonNull(reader.getNamespaceURI()),
+                        reader.getLocalName(),
+                        qName(reader.getPrefix(), reader.getLocalName()),
+                        attributes);
+                if (filter != null && filter.isSkipping()) {
+                    skipSubtree(reader);
+                    depth--;
+                    filter.endElement(nonNull(reader.getNamespaceURI()),
+                            reader.getLocalName(),
+                            qName(reader.getPrefix(), reader.getLocalName()));
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                handler.endElement(nonNull(reader.getNamespaceURI()),
+                        reader.getLocalName(),
+                        qName(reader.getPrefix(), reader.getLocalName()));
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    handler.endPrefixMapping(
+                            nonNull(reader.getNamespacePrefix(i)));
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                // like SAX, no character data outside the document element
+                if (depth > 0) {
+                    handler.characters(reader.getTextCharacters(),
+                            reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * Moves the reader to the end of the current element, without looking
+     * at its content.
+     */
+    private static void skipSubtree(XMLStreamReader reader)
+            throws XMLStreamException {
+        int level = 1;
+        while (level > 0) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                level++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                level--;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static String qName(String prefix, String localName) {
+        if (prefix == null || prefix.length() == 0) {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+
+    @Override
+    public String toString() {
+        return "StAX";
+    }
+}
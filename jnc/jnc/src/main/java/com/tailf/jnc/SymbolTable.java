@@ -0,0 +1,216 @@
+package com.tailf.jnc;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small symbol table used by the parsers to canonicalize element and
+ * attribute names and namespaces. A NETCONF reply repeats the same few
+ * hundred names over and over, so all the nodes of a parsed tree end up
+ * sharing the same String instances. Short text values, which also repeat
+ * a lot ("true", "up", "1500"), are shared through a small cache.
+ * <p>
+ * The table is not thread safe. The parsers borrow a table from a shared
+ * pool for the duration of one parse, see {@link #borrow()}, as they do
+ * with their readers, so the names are kept from one parse to the next
+ * while the memory kept does not grow with the number of threads parsing.
+ * The value cache is emptied when a table is given back, so the values of
+ * a parse, which may be secrets, are not kept after it.
+ */
+class SymbolTable {
+
+    /**
+     * Upper bound on the number of idle tables kept. Tables borrowed when
+     * the pool is empty are created on demand, and dropped when they are
+     * given back to a full pool.
+     */
+    private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime()
+            .availableProcessors());
+
+    /* most recently used first */
+    private static final ConcurrentLinkedDeque<SymbolTable> idle = new ConcurrentLinkedDeque<SymbolTable>();
+    private static final AtomicInteger idleCount = new AtomicInteger();
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Upper bound on the number of symbols kept, so that a stream of unique
+     * names cannot grow the table without limit. Strings beyond it are
+     * returned as is.
+     */
+    private static final int MAX_SYMBOLS = 1 << 16;
+
+    private String[] symbols = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /** values longer than this are not shared */
+    private static final int MAX_VALUE_LENGTH = 32;
+
+    /**
+     * Recently seen values, by hash. A value replaces the one in its slot,
+     * so values which repeat stay, while unique ones (counters, addresses)
+     * pass through without growing the cache.
+     */
+    private final String[] values = new String[1024];
+
+    /**
+     * Takes an idle table from the pool, or creates a new one if there is
+     * none. The table must be given back with {@link #release(SymbolTable)}
+     * once the parse is done.
+     */
+    static SymbolTable borrow() {
+        final SymbolTable table = idle.pollFirst();
+        if (table != null) {
+            idleCount.decrementAndGet();
+            return table;
+        }
+        return new SymbolTable();
+    }
+
+    /**
+     * Gives a table back to the pool, emptying its value cache.
+     */
+    static void release(SymbolTable table) {
+        Arrays.fill(table.values, null);
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            idle.offerFirst(table);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of idle tables in the pool.
+     */
+    static int idleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Returns the canonical instance of the given string, adding it to the
+     * table if it is not already present.
+     *
+     * @param s The string to canonicalize, may be <code>null</code>
+     * @return The canonical instance equal to s
+     */
+    String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        final int mask = symbols.length - 1;
+        int i = mix(s.hashCode()) & mask;
+        String symbol;
+        while ((symbol = symbols[i]) != null) {
+            if (symbol == s || symbol.equals(s)) {
+                return symbol;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= MAX_SYMBOLS) {
+            return s;
+        }
+        symbols[i] = s;
+        if (++size > symbols.length >> 1) {
+            rehash();
+        }
+        return s;
+    }
+
+    /**
+     * Returns the canonical instance of the characters in the given range,
+     * only allocating a String when the symbol has not been seen before.
+     *
+     * @param ch The characters
+     * @param start The start position in ch
+     * @param length The number of characters to use
+     * @return The canonical String with the given characters
+     */
+    String intern(char[] ch, int start, int length) {
+        int h = 0;
+        for (int j = start; j < start + length; j++) {
+            h = 31 * h + ch[j];
+        }
+        final int mask = symbols.length - 1;
+        int i = mix(h) & mask;
+        String symbol;
+        while ((symbol = symbols[i]) != null) {
+            if (regionEquals(symbol, ch, start, length)) {
+                return symbol;
+            }
+            i = (i + 1) & mask;
+        }
+        return intern(new String(ch, start, length));
+    }
+
+    /**
+     * Returns a String with the characters of the buffer, the same instance
+     * as for the previous equal value if it is still in the value cache.
+     *
+     * @param buffer The characters of the value
+     * @return A String equal to the contents of the buffer
+     */
+    String value(StringBuilder buffer) {
+        final int length = buffer.length();
+        if (length > MAX_VALUE_LENGTH) {
+            return buffer.toString();
+        }
+        int h = 0;
+        for (int j = 0; j < length; j++) {
+            h = 31 * h + buffer.charAt(j);
+        }
+        final int i = mix(h) & (values.length - 1);
+        final String cached = values[i];
+        if (cached != null && cached.length() == length) {
+            int j = 0;
+            while (j < length && cached.charAt(j) == buffer.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return cached;
+            }
+        }
+        final String value = buffer.toString();
+        values[i] = value;
+        return value;
+    }
+
+    /**
+     * Returns the number of symbols in the table.
+     */
+    int size() {
+        return size;
+    }
+
+    private static boolean regionEquals(String s, char[] ch, int start,
+            int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            if (s.charAt(j) != ch[start + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        final String[] old = symbols;
+        symbols = new String[old.length << 1];
+        final int mask = symbols.length - 1;
+        for (final String s : old) {
+            if (s != null) {
+                int i = mix(s.hashCode()) & mask;
+                while (symbols[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                symbols[i] = s;
+            }
+        }
+    }
+}
@@ -3,10 +3,17 @@ package com.tailf.jnc;
 /**
  * The Tagpath class is used to represent the name of individual schema nodes.
  * Each SchemaNode is identified by a Tagpath.
+ * <p>
+ * The hash code is computed once, so the names must not be changed once the
+ * Tagpath has been used as a key. The Tagpaths of the schema nodes are
+ * shared, see {@link SchemaTree#intern(Tagpath)}.
  */
 public class Tagpath {
     public String[] p;
 
+    /* the hash code, or 0 if not computed yet */
+    private int hash;
+
     public Tagpath(int size) {
         p = new String[size];
     }
@@ -23,30 +30,68 @@ public class Tagpath {
 
     @Override
     public String toString() {
-        String ret = "";
+        final StringBuilder ret = new StringBuilder();
         for (int i = 0; i < p.length; i++) {
-            ret += p[i];
+            ret.append(p[i]);
             if (i != p.length - 1) {
-                ret += "/";
+                ret.append('/');
             }
         }
-        return ret;
+        return ret.toString();
     }
 
     @Override
     public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = 0; i < p.length; i++) {
+                h = 31 * h + p[i].hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the hash code a Tagpath to an element would have, see
+     * {@link Element#tagpath()}, without making one.
+     */
+    static int hashCode(Element e) {
+        // the names from the last one, each one with a higher power of 31
         int h = 0;
-        for (int i = 0; i < p.length; i++) {
-            h += p[i].hashCode();
+        int pow = 1;
+        for (; e != null; e = e.parent) {
+            h += pow * e.name.hashCode();
+            pow *= 31;
         }
         return h;
     }
 
+    /**
+     * Returns <code>true</code> if this is the Tagpath to an element, as
+     * <code>equals(e.tagpath())</code> would be.
+     */
+    boolean isPathTo(Element e) {
+        int i = p.length;
+        for (; e != null; e = e.parent) {
+            if (i == 0 || !p[--i].equals(e.name)) {
+                return false;
+            }
+        }
+        return i == 0;
+    }
+
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if ((o instanceof Tagpath)) {
             final Tagpath tp = (Tagpath) o;
             if (tp.p.length == p.length) {
+                if (hash != 0 && tp.hash != 0 && hash != tp.hash) {
+                    return false;
+                }
                 for (int i = 0; i < tp.p.length; i++) {
                     if (!tp.p[i].equals(p[i])) {
                         return false;
@@ -0,0 +1,249 @@
+package com.tailf.jnc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The member types of a union, resolved once for the union type, which
+ * {@link YangUnion#fromString(String)} tries in order. Each member has its
+ * String constructor looked up beforehand, and a check of the syntax of its
+ * values, so that the members a string cannot be a value of are passed over
+ * without making an instance of them and catching the exception:
+ * <ul>
+ * <li>integers and decimal numbers must look like numbers;
+ * <li>booleans must be "true" or "false";
+ * <li>enumerations must be one of their names, which are known once an
+ * instance has been made;
+ * <li>strings of generated types must match the patterns that their type
+ * has checked values against, see {@link Restrictions#mayMatch(String)}.
+ * </ul>
+ * A string which passes the check may still not be a value of the member,
+ * for instance a number out of range, and the next member is then tried.
+ * <p>
+ * The members may be used by several threads at the same time.
+ */
+final class UnionMembers {
+
+    private static final MethodType STRING_CONSTRUCTOR = MethodType
+            .methodType(Object.class, String.class);
+
+    /** The syntax checked before making an instance of a member */
+    private enum Syntax {
+        ANY, INTEGER, DECIMAL, BOOLEAN, ENUMERATION, STRING
+    }
+
+    final String[] memberTypes;
+
+    /* null for member types which cannot be made from a String */
+    private final Member[] members;
+
+    private static final class Member {
+        final Class<?> type;
+        final MethodHandle constructor;
+        final Syntax syntax;
+
+        /* the names of an enumeration, once known */
+        volatile Set<String> enums;
+
+        Member(Class<?> type, MethodHandle constructor, Syntax syntax) {
+            this.type = type;
+            this.constructor = constructor;
+            this.syntax = syntax;
+        }
+
+        /**
+         * Returns false if <code>s</code> cannot be a value of this member.
+         */
+        boolean mayAccept(String s) {
+            switch (syntax) {
+            case INTEGER:
+                return isInteger(s);
+            case DECIMAL:
+                return isDecimal(s);
+            case BOOLEAN:
+                final String b = Utils.wsCollapse(s);
+                return b.equals("true") || b.equals("false");
+            case ENUMERATION:
+                final Set<String> names = enums;
+                return names == null || names.contains(s);
+            case STRING:
+                return Restrictions.of(type).mayMatch(s);
+            default:
+                return true;
+            }
+        }
+
+        /**
+         * Returns a new value of this member, or null if <code>s</code> is
+         * not one.
+         */
+        YangType<?> create(String s) {
+            final Object o;
+            try {
+                o = (Object) constructor.invokeExact(s);
+            } catch (final Throwable e) {
+                // Unable to instantiate a value of this memberType
+                return null;
+            }
+            if (syntax == Syntax.ENUMERATION && enums == null) {
+                final String[] names = ((YangEnumeration) o).enums();
+                if (names != null) {
+                    enums = new HashSet<String>(Arrays.asList(names));
+                }
+            }
+            return (YangType<?>) o;
+        }
+    }
+
+    UnionMembers(String[] memberTypes) {
+        this.memberTypes = memberTypes.clone();
+        members = new Member[memberTypes.length];
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (int i = 0; i < memberTypes.length; i++) {
+            try {
+                final Class<?> type = Class.forName(memberTypes[i]);
+                if (YangType.class.isAssignableFrom(type)
+                        && !Modifier.isAbstract(type.getModifiers())) {
+                    final MethodHandle constructor = lookup
+                            .unreflectConstructor(
+                                    type.getConstructor(String.class))
+                            .asType(STRING_CONSTRUCTOR);
+                    members[i] = new Member(type, constructor, syntaxOf(type));
+                }
+            } catch (final ClassNotFoundException e) {
+            } catch (final NoSuchMethodException e) {
+            } catch (final IllegalAccessException e) {
+            }
+            // Unable to instantiate values of this memberType - left out
+        }
+    }
+
+    /**
+     * Returns a value of the first member type <code>s</code> is a value of,
+     * or null if none.
+     */
+    YangType<?> fromString(String s) {
+        for (final Member member : members) {
+            if (member != null && member.mayAccept(s)) {
+                final YangType<?> value = member.create(s);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * The syntax of the values of a type, from the built-in type it extends,
+     * as long as it parses strings as that type does.
+     */
+    private static Syntax syntaxOf(Class<?> type) {
+        if (YangInt8.class.isAssignableFrom(type)
+                || YangInt16.class.isAssignableFrom(type)
+                || YangInt32.class.isAssignableFrom(type)
+                || YangInt64.class.isAssignableFrom(type)) {
+            return parsesAsBuiltIn(type) ? Syntax.INTEGER : Syntax.ANY;
+        } else if (YangUInt64.class.isAssignableFrom(type)
+                || YangDecimal64.class.isAssignableFrom(type)) {
+            return parsesAsBuiltIn(type) ? Syntax.DECIMAL : Syntax.ANY;
+        } else if (YangBoolean.class.isAssignableFrom(type)) {
+            return parsesAsBuiltIn(type) ? Syntax.BOOLEAN : Syntax.ANY;
+        } else if (YangEnumeration.class.isAssignableFrom(type)) {
+            return Syntax.ENUMERATION;
+        } else if (YangBaseString.class.isAssignableFrom(type)
+                && !builtIn(type)) {
+            // the built-in types may be checked against any patterns
+            return Syntax.STRING;
+        }
+        return Syntax.ANY;
+    }
+
+    private static boolean builtIn(Class<?> type) {
+        return type.getPackage() == YangUnion.class.getPackage();
+    }
+
+    /* true if no type below the built-in types overrides their parsing */
+    private static boolean parsesAsBuiltIn(Class<?> type) {
+        for (Class<?> c = type; c != null && !builtIn(c); c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod("decode", String.class);
+                return false;
+            } catch (final NoSuchMethodException e) {
+            }
+            try {
+                c.getDeclaredMethod("fromString", String.class);
+                return false;
+            } catch (final NoSuchMethodException e) {
+            }
+        }
+        return true;
+    }
+
+    /*
+     * [+-]?(0[xX]|#)?[0-9a-fA-F]+ between spaces, which holds for all that
+     * Long.decode() takes
+     */
+    static boolean isInteger(String s) {
+        int i = 0;
+        int n = s.length();
+        while (i < n && s.charAt(i) == ' ') {
+            i++;
+        }
+        while (n > i && s.charAt(n - 1) == ' ') {
+            n--;
+        }
+        if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            i++;
+        }
+        if (i + 1 < n && s.charAt(i) == '0'
+                && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) {
+            i += 2;
+        } else if (i < n && s.charAt(i) == '#') {
+            i++;
+        }
+        if (i == n) {
+            return false;
+        }
+        for (; i < n; i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * a digit and only digits, signs, points and exponents between spaces,
+     * which holds for all that new BigDecimal() takes
+     */
+    static boolean isDecimal(String s) {
+        boolean digit = false;
+        boolean inner = false;
+        boolean trailing = false;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == ' ') {
+                trailing = inner;
+                continue;
+            }
+            if (trailing) {
+                return false;
+            }
+            inner = true;
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c != '+' && c != '-' && c != '.' && c != 'e'
+                    && c != 'E') {
+                return false;
+            }
+        }
+        return digit;
+    }
+}
@@ -3,8 +3,6 @@ package com.tailf.jnc;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
@@ -61,6 +59,11 @@ final class Utils {
             public boolean cmp(BigDecimal x1, BigDecimal x2) {
                 return x1.subtract(x2).abs().doubleValue() < EPSILON;
             }
+
+            @Override
+            public boolean cmp(long x1, long x2) {
+                return x1 == x2;
+            }
         },
 
         /**
@@ -71,6 +74,11 @@ final class Utils {
             public boolean cmp(BigDecimal x1, BigDecimal x2) {
                 return x1.subtract(x2).doubleValue() > 0;
             }
+
+            @Override
+            public boolean cmp(long x1, long x2) {
+                return x1 > x2;
+            }
         },
 
         /**
@@ -81,6 +89,11 @@ final class Utils {
             public boolean cmp(BigDecimal x1, BigDecimal x2) {
                 return x1.subtract(x2).doubleValue() > -EPSILON;
             }
+
+            @Override
+            public boolean cmp(long x1, long x2) {
+                return x1 >= x2;
+            }
         },
 
         /**
@@ -91,6 +104,11 @@ final class Utils {
             public boolean cmp(BigDecimal x1, BigDecimal x2) {
                 return x1.subtract(x2).doubleValue() < 0;
             }
+
+            @Override
+            public boolean cmp(long x1, long x2) {
+                return x1 < x2;
+            }
         },
 
         /**
@@ -101,6 +119,11 @@ final class Utils {
             public boolean cmp(BigDecimal x1, BigDecimal x2) {
                 return x1.subtract(x2).doubleValue() < EPSILON;
             }
+
+            @Override
+            public boolean cmp(long x1, long x2) {
+                return x1 <= x2;
+            }
         };
 
         /**
@@ -111,6 +134,15 @@ final class Utils {
          * @return The result of the comparison
          */
         public abstract boolean cmp(BigDecimal x1, BigDecimal x2);
+
+        /**
+         * Comparison function for a Boolean operator on whole numbers.
+         * 
+         * @param x1 First operand
+         * @param x2 Second operand
+         * @return The result of the comparison
+         */
+        public abstract boolean cmp(long x1, long x2);
     }
 
     /**
@@ -125,6 +157,20 @@ final class Utils {
      */
     public static void restrict(Object v, Number arg, Operator op)
             throws YangException {
+        if (Restrictions.isLong(arg)) {
+            // compared as longs, without BigDecimals
+            if (Restrictions.isLong(v)) {
+                YangException.throwException(
+                        !op.cmp(((Number) v).longValue(), arg.longValue()), v);
+                return;
+            } else if (v instanceof String) {
+                final int length = ((String) v).length();
+                if (!op.cmp(length, arg.longValue())) {
+                    YangException.throwException(true, length);
+                }
+                return;
+            }
+        }
         if (v instanceof Number) {
             restrict((Number) v, bigDecimalValueOf(arg), op);
         } else if (v instanceof String) {
@@ -165,13 +211,32 @@ final class Utils {
         if (value == null) {
             return null;
         }
+        final int n = value.length();
+        int i = 0;
+        while (i < n && (value.charAt(i) != ' '
+                || (i > 0 && i < n - 1 && value.charAt(i + 1) != ' '))) {
+            i++;
+        }
+        if (i == n) {
+            // no leading, trailing or repeated space
+            return value;
+        }
 
         // Collapse multiple spaces into single spaces
-        final String res = value.replaceAll(" +", " ");
+        final StringBuilder res = new StringBuilder(n);
+        res.append(value, 0, i);
+        for (; i < n; i++) {
+            final char c = value.charAt(i);
+            if (c != ' ' || res.length() == 0
+                    || res.charAt(res.length() - 1) != ' ') {
+                res.append(c);
+            }
+        }
 
         // Remove any leading and/or trailing space
-        final int startOffset = res.startsWith(" ") ? 1 : 0;
-        final int stopOffset = res.length() > 1 && res.endsWith(" ") ? -1 : 0;
+        final int startOffset = res.charAt(0) == ' ' ? 1 : 0;
+        final int stopOffset = res.length() > 1
+                && res.charAt(res.length() - 1) == ' ' ? -1 : 0;
         return res.substring(startOffset, res.length() + stopOffset);
     }
 
@@ -183,22 +248,20 @@ final class Utils {
      *         by " " (a blank).
      */
     public static String wsReplace(String value) {
-        return value == null ? null : value.replaceAll("[\t\n\r]", " ");
-    }
-
-    public static boolean matches(String value, String[] regexes)
-            throws YangException {
-        boolean matches = true;
-        try {
-            for (int i = 0; i < regexes.length; i++) {
-                if (!(matches = Pattern.matches(regexes[i], value))) {
-                    break;
+        if (value == null) {
+            return null;
+        }
+        char[] chars = null;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') {
+                if (chars == null) {
+                    chars = value.toCharArray();
                 }
+                chars[i] = ' ';
             }
-        } catch (final PatternSyntaxException e) {
-            YangException.throwException(true, e);
         }
-        return matches;
+        return chars == null ? value : new String(chars);
     }
 
     // Thanks Dimitris Kolovos for the code below
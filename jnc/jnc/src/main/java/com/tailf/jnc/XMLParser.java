@@ -1,41 +1,59 @@
 package com.tailf.jnc;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * A simple SAX parser, for parsing NETCONF messages, into a simple
  * {@link Element} tree.
- * 
+ * <p>
+ * The XML text is tokenized by a {@link ParserBackend}, SAX unless another
+ * one is given. The parser holds no other state, so one instance may be
+ * used by several threads at the same time, and creating a parser is cheap.
  */
 public class XMLParser {
 
-    /** the parser implementation */
-    protected XMLReader parser;
+    /** the backend tokenizing the XML text */
+    protected ParserBackend backend;
 
     /**
-     * Constructor. Initializes the parser instance.
+     * Constructor, using the SAX backend.
      */
     public XMLParser() throws JNCException {
-        try {
-            final String javaVersion = System.getProperty("java.version");
-            if (javaVersion.startsWith("1.4")) {
-                parser = XMLReaderFactory
-                        .createXMLReader("org.apache.crimson.parser.XMLReaderImpl");
-            } else {
-                parser = XMLReaderFactory.createXMLReader();
-            }
-        } catch (final Exception e) {
-            throw new JNCException(JNCException.PARSER_ERROR,
-                    "failed to initialize parser: " + e);
-        }
+        this(ParserBackend.SAX);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param backend The backend tokenizing the XML text
+     */
+    public XMLParser(ParserBackend backend) throws JNCException {
+        this.backend = backend;
+    }
+
+    /**
+     * Returns the backend tokenizing the XML text.
+     */
+    public ParserBackend getBackend() {
+        return backend;
+    }
 
+    /**
+     * Sets the backend tokenizing the XML text. Should not be called while
+     * parses are in progress.
+     * 
+     * @param backend The backend, for example {@link ParserBackend#STAX}
+     */
+    public void setBackend(ParserBackend backend) {
+        this.backend = backend;
     }
 
     /**
@@ -44,68 +62,149 @@ public class XMLParser {
      */
     private class ConfHandler extends DefaultHandler {
 
+        // canonical names and namespaces, borrowed for the parse
+        private final SymbolTable symbols;
+
         // pointer to current element (node)
         public Element current;
         public Element top;
         public PrefixMap prefixes = null;
 
+        // text of the current element, collected across characters() calls
+        private final TextBuffer text;
+
+        ConfHandler(SymbolTable symbols) {
+            this.symbols = symbols;
+            text = new TextBuffer(symbols);
+        }
+
         @Override
         public void startElement(String uri, String localName, String qName,
                 Attributes attributes) throws SAXException {
-            final Element child = new Element(uri, localName);
+            final Element child = new Element(symbols.intern(uri),
+                    symbols.intern(localName));
             child.prefixes = prefixes;
             prefixes = null;
 
             // add other attributes
-            for (int i = 0; i < attributes.getLength(); i++) {
-                final String attrName = attributes.getLocalName(i);
-                // String attrType= attributes.getType(i);
-                final String attrUri = attributes.getURI(i);
-                final String attrValue = attributes.getValue(i);
-                final Attribute attr = new Attribute(attrUri, attrName,
-                        attrValue);
-                // System.out.println("ATTRIBUTE: "+attributes.getQName(i)+
-                // "  URI="+attributes.getURI(i));
-                trace("add attr: " + attr);
-                child.addAttr(attr);
-            }
+            addAttributes(symbols, attributes, child);
             if (current == null) {
-                trace("add to top: " + child);
                 top = child;
             } else {
                 current.addChild(child);
-                trace("add child: " + child);
+            }
+            if (isTracing()) {
+                trace((current == null ? "add to top: " : "add child: ")
+                        + child);
             }
             current = child; // step down
+            text.clear();
         }
 
         @Override
         public void endElement(String uri, String localName, String qName) {
-            // check that we don't have mixed content
-            if (current.hasChildren() && current.value != null) {
-                // MIXED content not allowed
-                current.value = null;
-            }
+            // MIXED content not allowed
+            text.assignTo(current);
+            current.trimToSize();
             // step up
             current = current.getParent();
         }
 
         @Override
         public void characters(char[] ch, int start, int length) {
-            if (current.value == null) {
-                current.value = "";
-            }
-            current.value = current.value + new String(ch, start, length);
+            text.append(ch, start, length);
         }
 
         @Override
         public void startPrefixMapping(String prefix, String uri) {
-            trace("startPrefixMapping: uri=\"" + uri + "\" prefix=" + prefix);
+            if (isTracing()) {
+                trace("startPrefixMapping: uri=\"" + uri + "\" prefix="
+                        + prefix);
+            }
             if (prefixes == null) {
                 prefixes = new PrefixMap();
             }
-            prefixes.add(new Prefix(prefix, uri));
-            trace("added prefixmapping: " + prefix);
+            prefixes.add(newPrefix(symbols, prefix, uri));
+        }
+    }
+
+    /**
+     * Collects the character data of an element. SAX may split the text of
+     * one element into several characters() calls, so the chunks are
+     * appended to a buffer which is reused for all the elements of a parse
+     * and only turned into a String once the element ends.
+     */
+    static final class TextBuffer {
+        private final StringBuilder buffer = new StringBuilder();
+        private final SymbolTable symbols;
+        private boolean present;
+
+        TextBuffer(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        void append(char[] ch, int start, int length) {
+            buffer.append(ch, start, length);
+            present = true;
+        }
+
+        void clear() {
+            buffer.setLength(0);
+            present = false;
+        }
+
+        /**
+         * Returns the collected text, "" if there was none.
+         */
+        String take() {
+            final String s = symbols.value(buffer);
+            clear();
+            return s;
+        }
+
+        /**
+         * Sets the collected text as the value of the element, unless the
+         * element has children, in which case it gets no value since mixed
+         * content is not allowed.
+         */
+        void assignTo(Element element) {
+            if (element.hasChildren()) {
+                element.value = null;
+            } else if (present) {
+                element.value = symbols.value(buffer);
+            }
+            clear();
+        }
+    }
+
+    /**
+     * Creates a prefix mapping reported by SAX, with its name, namespace and
+     * xmlns attribute name interned.
+     */
+    static Prefix newPrefix(SymbolTable symbols, String prefix, String uri) {
+        final Prefix p = new Prefix(symbols.intern(prefix), symbols.intern(uri));
+        p.qName = symbols.intern(p.qName);
+        return p;
+    }
+
+    /**
+     * Adds the attributes reported by SAX to the element, interning their
+     * names and namespaces. The attribute list is only allocated when there
+     * are attributes, and then with the right size.
+     */
+    static void addAttributes(SymbolTable symbols, Attributes attributes,
+            Element element) {
+        final int length = attributes.getLength();
+        if (length == 0) {
+            return;
+        }
+        if (element.attrs == null) {
+            element.attrs = new ArrayList<Attribute>(length);
+        }
+        for (int i = 0; i < length; i++) {
+            element.addAttr(new Attribute(symbols.intern(attributes.getURI(i)),
+                    symbols.intern(attributes.getLocalName(i)),
+                    attributes.getValue(i)));
         }
     }
 
@@ -113,14 +212,16 @@ public class XMLParser {
      * Read in an XML file and parse it and return an element tree.
      */
     public Element readFile(String filename) throws JNCException {
+        final SymbolTable symbols = SymbolTable.borrow();
         try {
-            final ConfHandler handler = new ConfHandler();
-            parser.setContentHandler(handler);
-            parser.parse(filename);
+            final ConfHandler handler = new ConfHandler(symbols);
+            backend.parse(new InputSource(filename), handler);
             return handler.top;
         } catch (final Exception e) {
             throw new JNCException(JNCException.PARSER_ERROR, "parse file: "
                     + filename + " error: " + e);
+        } finally {
+            SymbolTable.release(symbols);
         }
     }
 
@@ -129,16 +230,35 @@ public class XMLParser {
      * 
      * @param is Inputsource (byte stream) where the XML text is read from
      */
-    public synchronized Element parse(InputSource is) throws JNCException
+    public Element parse(InputSource is) throws JNCException
     {
+        return parse(is, null);
+    }
+
+    /**
+     * Parses an XML string returning an element tree with only the parts of
+     * it selected by a projection.
+     * 
+     * @param is Inputsource (byte stream) where the XML text is read from
+     * @param projection The parts to build, or <code>null</code> for all
+     */
+    public Element parse(InputSource is, Projection projection)
+            throws JNCException {
+        final SymbolTable symbols = SymbolTable.borrow();
         try {
-            final ConfHandler handler = new ConfHandler();
-            parser.setContentHandler(handler);
-            parser.parse(is);
+            final ConfHandler handler = new ConfHandler(symbols);
+            if (projection == null) {
+                backend.parse(is, handler);
+            } else {
+                backend.parse(is, projection.filter(handler));
+                projection.prune(handler.top);
+            }
             return handler.top;
         } catch (final Exception e) {
             throw new JNCException(JNCException.PARSER_ERROR, "parse error: "
                     + e);
+        } finally {
+            SymbolTable.release(symbols);
         }
     }
 
@@ -155,12 +275,124 @@ public class XMLParser {
         return parse(is);
     }
 
+    /**
+     * Parses an XML string into a compact index, from which elements are
+     * only built when they are accessed. The index takes a fraction of the
+     * memory of an element tree, which makes it suitable for keeping large
+     * replies around when only some of their parts will be read.
+     * 
+     * @param is Inputsource (byte stream) where the XML text is read from
+     */
+    public IndexedDocument parseIndexed(InputSource is) throws JNCException {
+        final SymbolTable symbols = SymbolTable.borrow();
+        try {
+            final IndexedDocument doc = new IndexedDocument();
+            backend.parse(is, doc.builder(symbols));
+            doc.trim();
+            return doc;
+        } catch (final Exception e) {
+            throw new JNCException(JNCException.PARSER_ERROR, "parse error: "
+                    + e);
+        } finally {
+            SymbolTable.release(symbols);
+        }
+    }
+
+    /**
+     * Parses an XML String into a compact index, see
+     * {@link #parseIndexed(InputSource)}.
+     * 
+     * @param str String containing the XML text to parse
+     */
+    public IndexedDocument parseIndexed(String str) throws JNCException {
+        final ByteArrayInputStream istream = new ByteArrayInputStream(
+                str.getBytes());
+        return parseIndexed(new InputSource(istream));
+    }
+
+    /**
+     * Parses an XML String, returning an Element tree with only the parts of
+     * it selected by a projection.
+     * 
+     * @param str String containing the XML text to parse
+     * @param projection The parts to build, or <code>null</code> for all
+     */
+    public Element parse(String str, Projection projection)
+            throws JNCException {
+        final ByteArrayInputStream istream = new ByteArrayInputStream(
+                str.getBytes());
+        return parse(new InputSource(istream), projection);
+    }
+
+    /**
+     * Parses the XML text read from a byte stream, returning an element tree
+     * from it. The stream is not closed.
+     * 
+     * @param in Stream where the XML text is read from
+     */
+    public Element parse(InputStream in) throws JNCException {
+        return parse(new InputSource(in));
+    }
+
+    /**
+     * Parses the XML text in the remaining bytes of a buffer, returning an
+     * element tree from it. The bytes are read in place, and the position of
+     * the buffer is advanced past them.
+     * 
+     * @param buf Buffer holding the XML text
+     */
+    public Element parse(ByteBuffer buf) throws JNCException {
+        return parse(new ByteBufferInputStream(buf));
+    }
+
+    /**
+     * An input stream reading the remaining bytes of a buffer.
+     */
+    static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
     /**
      * trace
      */
     protected void trace(String s) {
-        if (Element.debugLevel >= Element.DEBUG_LEVEL_PARSER) {
+        if (isTracing()) {
             System.err.println("*XMLParser: " + s);
         }
     }
+
+    /**
+     * Whether parser tracing is enabled. Checked before building trace
+     * messages, which is too expensive to do for every parsed element.
+     */
+    static boolean isTracing() {
+        return Element.debugLevel >= Element.DEBUG_LEVEL_PARSER;
+    }
 }
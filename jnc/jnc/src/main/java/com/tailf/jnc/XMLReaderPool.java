@@ -0,0 +1,91 @@
+package com.tailf.jnc;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A pool of configured SAX readers shared by all the parsers.
+ * <p>
+ * Creating an XMLReader involves a service lookup and the setup of the
+ * underlying parser, which costs more than parsing a typical rpc-reply. The
+ * parsers therefore borrow a reader for the duration of one parse and give
+ * it back afterwards, which also lets any number of threads parse at the
+ * same time, also with the same {@link XMLParser} instance.
+ */
+final class XMLReaderPool {
+
+    /**
+     * Upper bound on the number of idle readers kept. Readers borrowed when
+     * the pool is empty are created on demand, and dropped when they are
+     * given back to a full pool.
+     */
+    private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime()
+            .availableProcessors());
+
+    /** handler installed on idle readers, so they do not keep a tree alive */
+    private static final DefaultHandler IDLE_HANDLER = new DefaultHandler();
+
+    private static final SAXParserFactory factory;
+
+    static {
+        factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+    }
+
+    /* most recently used first */
+    private static final ConcurrentLinkedDeque<XMLReader> idle = new ConcurrentLinkedDeque<XMLReader>();
+    private static final AtomicInteger idleCount = new AtomicInteger();
+
+    private XMLReaderPool() {
+    }
+
+    /**
+     * Takes an idle reader from the pool, or creates a new one if there is
+     * none. The reader must be given back with {@link #release(XMLReader)}
+     * once the parse is done.
+     */
+    static XMLReader borrow() throws JNCException {
+        final XMLReader reader = idle.pollFirst();
+        if (reader != null) {
+            idleCount.decrementAndGet();
+            return reader;
+        }
+        return newReader();
+    }
+
+    /**
+     * Gives a reader back to the pool. Readers whose parse failed should not
+     * be given back, since they may be left in an inconsistent state.
+     */
+    static void release(XMLReader reader) {
+        reader.setContentHandler(IDLE_HANDLER);
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            idle.offerFirst(reader);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of idle readers in the pool.
+     */
+    static int idleCount() {
+        return idleCount.get();
+    }
+
+    private static XMLReader newReader() throws JNCException {
+        try {
+            synchronized (factory) {
+                return factory.newSAXParser().getXMLReader();
+            }
+        } catch (final Exception e) {
+            throw new JNCException(JNCException.PARSER_ERROR,
+                    "failed to initialize parser: " + e);
+        }
+    }
+}
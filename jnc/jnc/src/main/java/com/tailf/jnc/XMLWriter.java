@@ -0,0 +1,418 @@
+package com.tailf.jnc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes XML as UTF-8 bytes into a buffer, which is passed on to an
+ * {@link OutputStream} or an {@link OutTransport} when full and when
+ * flushed.
+ * <p>
+ * Elements are encoded by {@link Element#encode(OutTransport)} and the
+ * request builders of {@link NetconfSession} straight into the buffer:
+ * element and prefix names are encoded once and then copied, and text
+ * values are escaped char by char through a table, without creating
+ * intermediate strings. When the transport is not an XMLWriter, one is
+ * put in front of it for the duration of the encode.
+ * <p>
+ * An XMLWriter is not safe for use by several threads at the same time.
+ */
+public class XMLWriter implements OutTransport {
+
+    /** number of bytes buffered before they are passed on */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** upper bound on the number of encoded names kept */
+    private static final int MAX_NAMES = 4096;
+
+    /* name -> UTF-8 bytes, shared by all writers */
+    private static final ConcurrentHashMap<String, byte[]> names = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * Escapes of text values, as done by {@link Utils#escapeXml(String)}:
+     * markup chars as entities, control chars as char references. Other
+     * chars below 0xA0 are written as they are.
+     */
+    static final byte[][] TEXT_ESCAPES = new byte[0xA0][];
+
+    /**
+     * Escapes of text values in {@link Element#toXMLString()}, only '&amp;'.
+     */
+    static final byte[][] AMP_ESCAPES = new byte[0xA0][];
+
+    static {
+        for (int c = 1; c < 0x20; c++) {
+            if (c != '\t' && c != '\n' && c != '\r') {
+                TEXT_ESCAPES[c] = ascii("&#" + c + ";");
+            }
+        }
+        for (int c = 0x7F; c < 0xA0; c++) {
+            TEXT_ESCAPES[c] = ascii("&#" + c + ";");
+        }
+        TEXT_ESCAPES['&'] = ascii("&amp;");
+        TEXT_ESCAPES['<'] = ascii("&lt;");
+        TEXT_ESCAPES['>'] = ascii("&gt;");
+        AMP_ESCAPES['&'] = ascii("&amp;");
+    }
+
+    private final OutputStream stream;
+    private final OutTransport transport;
+
+    private byte[] buf;
+    private int count;
+
+    /* start of the value being escaped, the buffer is not drained past it */
+    private int mark = -1;
+
+    /**
+     * Creates a writer passing its output on to a stream.
+     *
+     * @param stream The stream to write the UTF-8 encoded XML to
+     */
+    public XMLWriter(OutputStream stream) {
+        this.stream = stream;
+        transport = null;
+        buf = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Creates a writer passing its output on to a transport, as strings of
+     * up to a few kilobytes.
+     *
+     * @param transport The transport to print the XML to
+     */
+    public XMLWriter(OutTransport transport) {
+        stream = null;
+        this.transport = transport;
+        buf = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Creates a writer keeping all its output, see {@link #toString()}.
+     */
+    XMLWriter() {
+        stream = null;
+        transport = null;
+        buf = new byte[256];
+    }
+
+    /**
+     * Returns whether this writer passes its output on to the given
+     * transport.
+     */
+    boolean writesTo(OutTransport out) {
+        return transport == out;
+    }
+
+    @Override
+    public void print(long i) {
+        print(Long.toString(i));
+    }
+
+    @Override
+    public void print(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (count == buf.length) {
+                    ensure(1);
+                }
+                buf[count++] = (byte) c;
+            } else {
+                i = printChar(s, i, c);
+            }
+        }
+    }
+
+    @Override
+    public void println(int i) {
+        print(Integer.toString(i));
+        print('\n');
+    }
+
+    @Override
+    public void println(String s) {
+        print(s);
+        print('\n');
+    }
+
+    /**
+     * Passes the buffered output on and flushes the stream or transport.
+     */
+    @Override
+    public void flush() {
+        drain();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        } else if (transport != null) {
+            transport.flush();
+        }
+    }
+
+    /**
+     * Passes the buffered output on, without flushing the stream or
+     * transport.
+     */
+    void drain() {
+        if (count == 0 || (stream == null && transport == null)) {
+            return;
+        }
+        try {
+            if (stream != null) {
+                stream.write(buf, 0, count);
+            } else {
+                transport.print(decode(buf, 0, count));
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            count = 0;
+        }
+    }
+
+    /**
+     * Discards the buffered output.
+     */
+    void clear() {
+        count = 0;
+        mark = -1;
+    }
+
+    void print(char c) {
+        if (count == buf.length) {
+            ensure(1);
+        }
+        buf[count++] = (byte) c;
+    }
+
+    /**
+     * Prints a number of spaces.
+     */
+    void printSpaces(int n) {
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[count++] = ' ';
+        }
+    }
+
+    /**
+     * Prints a qualified name, without the colon if the prefix is null or
+     * empty.
+     */
+    void printName(String prefix, String name) {
+        if (prefix != null && prefix.length() > 0) {
+            printName(prefix);
+            print(':');
+        }
+        printName(name);
+    }
+
+    private void printName(String name) {
+        if (name == null) {
+            print(name);
+            return;
+        }
+        byte[] bytes = names.get(name);
+        if (bytes == null) {
+            bytes = encodeName(name);
+            if (bytes == null) {
+                // not a plain name, no shortcut
+                print(name);
+                return;
+            }
+            if (names.size() < MAX_NAMES) {
+                names.putIfAbsent(name, bytes);
+            }
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private static byte[] encodeName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isSurrogate(name.charAt(i))) {
+                return null;
+            }
+        }
+        final XMLWriter w = new XMLWriter();
+        w.print(name);
+        final byte[] bytes = new byte[w.count];
+        System.arraycopy(w.buf, 0, bytes, 0, w.count);
+        return bytes;
+    }
+
+    /**
+     * Prints a text value, escaping the chars below 0xA0 which have an
+     * entry in the given table.
+     * <p>
+     * With {@link #TEXT_ESCAPES}, the output is the same as the one of
+     * {@link Utils#escapeXml(String)}: supplementary chars are written as
+     * char references, a high surrogate at the end is left out, and a
+     * value with a high surrogate followed by something else is written
+     * without escapes.
+     */
+    void printEscaped(String s, byte[][] escapes) {
+        final boolean text = escapes == TEXT_ESCAPES;
+        final int length = s.length();
+        mark = count;
+        try {
+            for (int i = 0; i < length; i++) {
+                final char c = s.charAt(i);
+                if (c < 0xA0) {
+                    final byte[] escape = escapes[c];
+                    if (escape == null) {
+                        if (c >= 0x80) {
+                            i = printChar(s, i, c);
+                            continue;
+                        }
+                        if (count == buf.length) {
+                            ensure(1);
+                        }
+                        buf[count++] = (byte) c;
+                    } else {
+                        ensure(escape.length);
+                        System.arraycopy(escape, 0, buf, count,
+                                escape.length);
+                        count += escape.length;
+                    }
+                } else if (text && Character.isHighSurrogate(c)) {
+                    if (i + 1 == length) {
+                        return;
+                    }
+                    final char low = s.charAt(i + 1);
+                    if (!Character.isLowSurrogate(low)) {
+                        count = mark;
+                        mark = -1;
+                        print(s);
+                        return;
+                    }
+                    printCharRef(Character.toCodePoint(c, low));
+                    i++;
+                } else {
+                    i = printChar(s, i, c);
+                }
+            }
+        } finally {
+            mark = -1;
+        }
+    }
+
+    private void printCharRef(int codePoint) {
+        print('&');
+        print('#');
+        print(Integer.toString(codePoint));
+        print(';');
+    }
+
+    /**
+     * Encodes a char of at least 0x80, and the low surrogate following it
+     * if it is a high surrogate. Returns the index of the last char used.
+     * <p>
+     * Unpaired surrogates are written as '?' to a stream, like
+     * String.getBytes() does, and otherwise as three bytes, which
+     * {@link #decode(byte[], int, int)} turns back into the surrogate.
+     */
+    private int printChar(String s, int i, char c) {
+        ensure(4);
+        if (c < 0x800) {
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+            return i;
+        }
+        if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                return i + 1;
+            }
+            if (stream != null) {
+                buf[count++] = '?';
+                return i;
+            }
+        }
+        buf[count++] = (byte) (0xE0 | (c >> 12));
+        buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buf[count++] = (byte) (0x80 | (c & 0x3F));
+        return i;
+    }
+
+    /**
+     * Makes room for n more bytes, by passing the buffered output on or by
+     * growing the buffer.
+     */
+    private void ensure(int n) {
+        if (count + n <= buf.length) {
+            return;
+        }
+        if (mark < 0 && (stream != null || transport != null)) {
+            drain();
+            if (n <= buf.length) {
+                return;
+            }
+        }
+        final byte[] grown = new byte[Math.max(buf.length * 2, count + n)];
+        System.arraycopy(buf, 0, grown, 0, count);
+        buf = grown;
+    }
+
+    /**
+     * Decodes bytes written by this class, which are well-formed UTF-8
+     * except for unpaired surrogates.
+     */
+    private static String decode(byte[] b, int off, int len) {
+        final char[] chars = new char[len];
+        final int end = off + len;
+        int n = 0;
+        for (int i = off; i < end;) {
+            final int c = b[i] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char) c;
+                i++;
+            } else if (c < 0xE0) {
+                chars[n++] = (char) (((c & 0x1F) << 6) | (b[i + 1] & 0x3F));
+                i += 2;
+            } else if (c < 0xF0) {
+                chars[n++] = (char) (((c & 0x0F) << 12)
+                        | ((b[i + 1] & 0x3F) << 6) | (b[i + 2] & 0x3F));
+                i += 3;
+            } else {
+                final int cp = ((c & 0x07) << 18) | ((b[i + 1] & 0x3F) << 12)
+                        | ((b[i + 2] & 0x3F) << 6) | (b[i + 3] & 0x3F);
+                chars[n++] = Character.highSurrogate(cp);
+                chars[n++] = Character.lowSurrogate(cp);
+                i += 4;
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    private static byte[] ascii(String s) {
+        final byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) s.charAt(i);
+        }
+        return b;
+    }
+
+    /**
+     * Returns the output buffered so far.
+     */
+    @Override
+    public String toString() {
+        return decode(buf, 0, count);
+    }
+}
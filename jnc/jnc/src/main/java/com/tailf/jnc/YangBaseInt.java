@@ -26,6 +26,9 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
      */
     protected BigDecimal MAX_VALUE = null;
 
+    /* MIN_VALUE and MAX_VALUE as set by setMinMax(), shared by the class */
+    private transient Restrictions.Range range;
+
     /**
      * Creates a YangBaseInt object from a String.
      * 
@@ -49,7 +52,7 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
      */
     public YangBaseInt(T value) throws YangException {
         super(value);
-        YangException.throwException(!valid(value.longValue()), this);
+        YangException.throwException(!valid(value), this);
     }
 
     /**
@@ -61,8 +64,9 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
      */
     protected void setMinMax(Number minValue, Number maxValue)
             throws YangException {
-        MIN_VALUE = Utils.bigDecimalValueOf(minValue);
-        MAX_VALUE = Utils.bigDecimalValueOf(maxValue);
+        range = Restrictions.of(getClass()).range(minValue, maxValue);
+        MIN_VALUE = range.min;
+        MAX_VALUE = range.max;
         if (MIN_VALUE == null || MAX_VALUE == null) {
             return;
         }
@@ -70,6 +74,22 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
                 .throwException(MIN_VALUE.compareTo(MAX_VALUE) > 0, this);
     }
 
+    /**
+     * Sets the MIN_VALUE and MAX_VALUE fields of this object, as
+     * {@link #setMinMax(Number, Number)} does without boxing the bounds.
+     * 
+     * @param minValue value to set MIN_VALUE to.
+     * @param maxValue value to set MAX_VALUE to.
+     * @throws YangException If minValue is larger than maxValue.
+     */
+    protected void setMinMax(long minValue, long maxValue)
+            throws YangException {
+        range = Restrictions.of(getClass()).range(minValue, maxValue);
+        MIN_VALUE = range.min;
+        MAX_VALUE = range.max;
+        YangException.throwException(minValue > maxValue, this);
+    }
+
     /**
      * @param n A number to check for validity.
      * @return true if n is within this object's value domain; false otherwise.
@@ -78,6 +98,10 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
         if (MIN_VALUE == null && MAX_VALUE == null) {
             return true;
         }
+        if (range != null && range.min == MIN_VALUE && range.max == MAX_VALUE
+                && Restrictions.isLong(n)) {
+            return range.contains(n);
+        }
         final BigDecimal bd = Utils.bigDecimalValueOf(n);
         boolean res = true;
         if (MIN_VALUE != null) {
@@ -115,6 +139,64 @@ abstract class YangBaseInt<T extends Number> extends YangBaseType<T> {
      */
     protected abstract T decode(String s) throws NumberFormatException;
 
+    /**
+     * Parses a whole number as {@link Long#decode(String)} does, but
+     * without allocating: a decimal number, a hexadecimal one after "0x",
+     * "0X" or "#", or an octal one after a leading "0", with an optional
+     * sign.
+     * 
+     * @param s The string to parse.
+     * @param min The smallest number allowed.
+     * @param max The largest number allowed.
+     * @return The number.
+     * @throws NumberFormatException If s is not such a number, or if the
+     *             number is not in [min, max].
+     */
+    static long decodeLong(String s, long min, long max)
+            throws NumberFormatException {
+        final int n = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        int radix = 10;
+        if (s.startsWith("0x", i) || s.startsWith("0X", i)) {
+            radix = 16;
+            i += 2;
+        } else if (s.startsWith("#", i)) {
+            radix = 16;
+            i++;
+        } else if (s.startsWith("0", i) && n > i + 1) {
+            radix = 8;
+            i++;
+        }
+        if (i == n || s.charAt(i) == '-' || s.charAt(i) == '+') {
+            throw new NumberFormatException("For input string: \"" + s
+                    + "\"");
+        }
+        // accumulated negatively, as Long.MIN_VALUE has no positive
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multmin = limit / radix;
+        long result = 0;
+        for (; i < n; i++) {
+            final int digit = Character.digit(s.charAt(i), radix);
+            if (digit < 0 || result < multmin
+                    || result * radix < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + s
+                        + "\"");
+            }
+            result = result * radix - digit;
+        }
+        final long value = negative ? result : -result;
+        if (value < min || value > max) {
+            throw new NumberFormatException("Value out of range. Value:\""
+                    + s + "\" Radix:" + radix);
+        }
+        return value;
+    }
+
     /*
      * (non-Javadoc)
      * 
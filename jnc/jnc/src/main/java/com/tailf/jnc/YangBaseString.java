@@ -30,8 +30,9 @@ public class YangBaseString extends YangBaseType<String> {
      */
     @Override
     public void setValue(String value) throws YangException {
-        YangException.throwException(value == null,
-                new NullPointerException());
+        if (value == null) {
+            YangException.throwException(true, new NullPointerException());
+        }
         this.value = value;
         check();
     }
@@ -79,13 +80,15 @@ public class YangBaseString extends YangBaseType<String> {
 
     /**
      * Checks that a set of regular expressions match the value of this object.
+     * The regular expressions are compiled once for each class.
      * 
      * @param regexes The regular expressions.
      * @throws YangException If any regexp in regexes has a syntax error or
      *             does not match.
      */
     protected void pattern(String[] regexes) throws YangException {
-        YangException.throwException(!Utils.matches(value, regexes), value);
+        YangException.throwException(
+                !Restrictions.of(getClass()).matches(value, regexes), value);
     }
 
     /**
@@ -65,8 +65,10 @@ abstract class YangBaseType<T> implements YangType<T> {
     @Override
     public void setValue(T value) throws YangException {
         assert !(value instanceof YangType) : "Avoid circular value chain";
-        YangException.throwException(value == null,
-                new NullPointerException());
+        if (value == null) {
+            // not made unless thrown, since filling in its stack trace is slow
+            YangException.throwException(true, new NullPointerException());
+        }
         this.value = value;
         check();
     }
@@ -88,8 +90,9 @@ abstract class YangBaseType<T> implements YangType<T> {
      */
     @Override
     public void check() throws YangException {
-        YangException.throwException(value == null,
-                new NullPointerException());
+        if (value == null) {
+            YangException.throwException(true, new NullPointerException());
+        }
     }
 
     /**
@@ -1,7 +1,23 @@
 package com.tailf.jnc;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Base64;
+
 /**
  * Implements the built-in YANG data type "binary".
+ * <p>
+ * The value is kept base 64 encoded. It can be decoded a few kilobytes at a
+ * time into a buffer or a stream given by the caller, see
+ * {@link #decode(byte[], int)} and {@link #decode(OutputStream)}, and is
+ * written to XML the same way, so that large values are not copied whole
+ * when they are sent.
  * 
  * @author emil@tail-f.com
  */
@@ -9,6 +25,11 @@ public class YangBinary extends YangBaseType<String> {
 
     private static final long serialVersionUID = 1L;
 
+    /* chars of the encoded value decoded at a time, a multiple of 4 */
+    private static final int CHUNK = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     /**
      * Creates a YangBinary object from a String. The string is whitespace
      * collapsed before it is encoded.
@@ -42,7 +63,7 @@ public class YangBinary extends YangBaseType<String> {
     public void setValue(String value) throws YangException {
         value = Utils.wsCollapse(value);
         try {
-            this.value = Base64Coder.encodeString(value);
+            this.value = Base64.getEncoder().encodeToString(value.getBytes());
         } catch (IllegalArgumentException e) {
             YangException.throwException(true, e);
         }
@@ -71,7 +92,145 @@ public class YangBinary extends YangBaseType<String> {
      */
     @Override
     public String toString() {
-        return Base64Coder.decodeString(value);
+        return new String(Base64.getDecoder().decode(value));
+    }
+
+    /**
+     * Returns the number of bytes the value of this object decodes to.
+     * 
+     * @return The decoded length, in bytes.
+     */
+    public int decodedLength() {
+        int n = value.length();
+        while (n > 0 && value.charAt(n - 1) == '=') {
+            n--;
+        }
+        return n / 4 * 3 + (n % 4 == 0 ? 0 : n % 4 - 1);
+    }
+
+    /**
+     * Decodes the value of this object into a buffer.
+     * 
+     * @param buffer The buffer, with room for {@link #decodedLength()} bytes
+     *            from <code>offset</code>
+     * @param offset The position of the first byte in the buffer
+     * @return The number of bytes decoded.
+     * @throws IllegalArgumentException If the value is not valid base 64
+     *             encoded data.
+     * @throws IndexOutOfBoundsException If the decoded value does not fit.
+     */
+    public int decode(byte[] buffer, int offset) {
+        final Chunks chunks = new Chunks(value);
+        int pos = offset;
+        int n;
+        while ((n = chunks.next()) >= 0) {
+            System.arraycopy(chunks.bytes, 0, buffer, pos, n);
+            pos += n;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Decodes the value of this object to a stream.
+     * 
+     * @param out The stream to write the decoded bytes to
+     * @throws IOException If writing to the stream fails.
+     * @throws IllegalArgumentException If the value is not valid base 64
+     *             encoded data.
+     */
+    public void decode(OutputStream out) throws IOException {
+        final Chunks chunks = new Chunks(value);
+        int n;
+        while ((n = chunks.next()) >= 0) {
+            out.write(chunks.bytes, 0, n);
+        }
+    }
+
+    /**
+     * Prints the decoded value of this object as XML text, as
+     * <code>w.printEscaped(toString(), escapes)</code> does. A large value is
+     * decoded and printed a chunk at a time when the default charset, which
+     * toString() decodes with, is UTF-8.
+     */
+    void print(XMLWriter w, byte[][] escapes) {
+        if (value.length() <= CHUNK
+                || !UTF_8.equals(Charset.defaultCharset())) {
+            w.printEscaped(toString(), escapes);
+            return;
+        }
+        final CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final Chunks chunks = new Chunks(value);
+        // bytes of a char split between chunks are kept for the next one
+        final ByteBuffer in = ByteBuffer.allocate(CHUNK);
+        final CharBuffer out = CharBuffer.allocate(CHUNK);
+        int n;
+        while ((n = chunks.next()) >= 0) {
+            in.put(chunks.bytes, 0, n).flip();
+            decoder.decode(in, out, false);
+            in.compact();
+            printChars(w, out, escapes, false);
+        }
+        in.flip();
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        printChars(w, out, escapes, true);
+    }
+
+    /*
+     * Prints the chars in a buffer, but for a high surrogate at the end
+     * which is kept for its low surrogate unless this is the last of them.
+     */
+    private static void printChars(XMLWriter w, CharBuffer out,
+            byte[][] escapes, boolean last) {
+        out.flip();
+        int end = out.limit();
+        if (!last && end > 0 && Character.isHighSurrogate(out.get(end - 1))) {
+            end--;
+        }
+        w.printEscaped(new String(out.array(), 0, end), escapes);
+        out.position(end);
+        out.compact();
+    }
+
+    /**
+     * The decoded bytes of an encoded value, a chunk at a time.
+     */
+    private static final class Chunks {
+        private final Base64.Decoder decoder = Base64.getDecoder();
+        private final String value;
+        private final byte[] chars;
+        final byte[] bytes;
+        private int pos;
+
+        Chunks(String value) {
+            this.value = value;
+            final int n = Math.min(value.length(), CHUNK);
+            chars = new byte[n];
+            bytes = new byte[n / 4 * 3 + 2];
+        }
+
+        /**
+         * Decodes the next chunk into <code>bytes</code>, and returns the
+         * number of bytes, or -1 at the end of the value.
+         */
+        int next() {
+            final int n = Math.min(value.length() - pos, CHUNK);
+            if (n <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < n; i++) {
+                final char c = value.charAt(pos + i);
+                // other chars are not base 64 and must not be cut to one
+                chars[i] = c < 0x80 ? (byte) c : (byte) '*';
+            }
+            pos += n;
+            if (n == chars.length) {
+                return decoder.decode(chars, bytes);
+            }
+            return decoder.decode(Arrays.copyOf(chars, n), bytes);
+        }
     }
 
     /**
@@ -83,7 +242,7 @@ public class YangBinary extends YangBaseType<String> {
      */
     @Override
     protected String fromString(String s) throws YangException {
-        return Base64Coder.encodeString(s);
+        return Base64.getEncoder().encodeToString(s.getBytes());
     }
 
     /**
@@ -145,195 +304,4 @@ public class YangBinary extends YangBaseType<String> {
         Utils.restrict(value, numberOfBytes, Utils.Operator.LE);
     }
 
-    /* ---------- YangBinary encoder/decoder class ---------- */
-
-    /**
-     * A Base64 Encoder/Decoder used to encode and decode data in Base64 format
-     * as described in RFC 4648.
-     * <p>
-     * This is "Open Source" software and released under the <a
-     * href="http://www.gnu.org/licenses/lgpl.html">GNU/LGPL</a> license.<br>
-     * It is provided "as is" without warranty of any kind.<br>
-     * Copyright 2003: Christian d'Heureuse, Inventec Informatik AG,
-     * Switzerland.<br>
-     * Home page: <a href="http://www.source-code.biz">www.source-code.biz</a>
-     * <br>
-     * 
-     * @author Christian d'Heureuse
-     */
-    private static class Base64Coder {
-
-        /**
-         * Mapping table from 6-bit nibbles to Base64 characters.
-         */
-        private static char[] map1 = new char[64];
-        static {
-            int i = 0;
-            for (char c = 'A'; c <= 'Z'; c++) {
-                map1[i++] = c;
-            }
-            for (char c = 'a'; c <= 'z'; c++) {
-                map1[i++] = c;
-            }
-            for (char c = '0'; c <= '9'; c++) {
-                map1[i++] = c;
-            }
-            map1[i++] = '+';
-            map1[i] = '/';
-        }
-
-        /**
-         * Mapping table from Base64 characters to 6-bit nibbles.
-         */
-        private static byte[] map2 = new byte[128];
-        static {
-            for (int i = 0; i < map2.length; i++) {
-                map2[i] = -1;
-            }
-            for (int i = 0; i < 64; i++) {
-                map2[map1[i]] = (byte) i;
-            }
-        }
-
-        /**
-         * Encodes a string into Base64 format. No blanks or line breaks are
-         * inserted.
-         * 
-         * @param s a String to be encoded.
-         * @return A String with the Base64 encoded data.
-         */
-        public static String encodeString(String s) {
-            return new String(encode(s.getBytes()));
-        }
-
-        /**
-         * Encodes a byte array into Base64 format. No blanks or line breaks
-         * are inserted.
-         * 
-         * @param in an array containing the data bytes to be encoded.
-         * @return A character array with the Base64 encoded data.
-         */
-        public static char[] encode(byte[] in) {
-            return encode(in, in.length);
-        }
-
-        /**
-         * Encodes a byte array into Base64 format. No blanks or line breaks
-         * are inserted.
-         * 
-         * @param in an array containing the data bytes to be encoded.
-         * @param iLen number of bytes to process in <code>in</code>.
-         * @return A character array with the Base64 encoded data.
-         */
-        public static char[] encode(byte[] in, int iLen) {
-            final int oDataLen = (iLen * 4 + 2) / 3; // output length without
-                                                     // padding
-            final int oLen = ((iLen + 2) / 3) * 4; // output length including
-                                                   // padding
-            final char[] out = new char[oLen];
-            int ip = 0;
-            int op = 0;
-            while (ip < iLen) {
-                final int i0 = in[ip++] & 0xff;
-                final int i1 = ip < iLen ? in[ip++] & 0xff : 0;
-                final int i2 = ip < iLen ? in[ip++] & 0xff : 0;
-                final int o0 = i0 >>> 2;
-                final int o1 = ((i0 & 3) << 4) | (i1 >>> 4);
-                final int o2 = ((i1 & 0xf) << 2) | (i2 >>> 6);
-                final int o3 = i2 & 0x3F;
-                out[op++] = map1[o0];
-                out[op++] = map1[o1];
-                out[op] = op < oDataLen ? map1[o2] : '=';
-                op++;
-                out[op] = op < oDataLen ? map1[o3] : '=';
-                op++;
-            }
-            return out;
-        }
-
-        /**
-         * Decodes a string from Base64 format.
-         * 
-         * @param s a Base64 String to be decoded.
-         * @return A String containing the decoded data.
-         * @throws IllegalArgumentException If the input is not valid Base64
-         *             encoded data.
-         */
-        public static String decodeString(String s) {
-            return new String(decode(s));
-        }
-
-        /**
-         * Decodes a byte array from Base64 format.
-         * 
-         * @param s a Base64 String to be decoded.
-         * @return An array containing the decoded data bytes.
-         * @throws IllegalArgumentException If the input is not valid Base64
-         *             encoded data.
-         */
-        public static byte[] decode(String s) {
-            return decode(s.toCharArray());
-        }
-
-        /**
-         * Decodes a byte array from Base64 format. No blanks or line breaks
-         * are allowed within the Base64 encoded data.
-         * 
-         * @param in a character array containing the Base64 encoded data.
-         * @return An array containing the decoded data bytes.
-         * @throws IllegalArgumentException If the input is not valid Base64
-         *             encoded data.
-         */
-        public static byte[] decode(char[] in) {
-            int iLen = in.length;
-            if (iLen % 4 != 0) {
-                throw new IllegalArgumentException("Length of Base64 encoded" +
-                        " input string is not a multiple of 4.");
-            }
-            while (iLen > 0 && in[iLen - 1] == '=') {
-                iLen--;
-            }
-            final int oLen = (iLen * 3) / 4;
-            final byte[] out = new byte[oLen];
-            int ip = 0;
-            int op = 0;
-            while (ip < iLen) {
-                final int i0 = in[ip++];
-                final int i1 = in[ip++];
-                final int i2 = ip < iLen ? in[ip++] : 'A';
-                final int i3 = ip < iLen ? in[ip++] : 'A';
-                if (i0 > 127 || i1 > 127 || i2 > 127 || i3 > 127) {
-                    throw new IllegalArgumentException(
-                            "Illegal character in Base64 encoded data.");
-                }
-                final int b0 = map2[i0];
-                final int b1 = map2[i1];
-                final int b2 = map2[i2];
-                final int b3 = map2[i3];
-                if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0) {
-                    throw new IllegalArgumentException(
-                            "Illegal character in Base64 encoded data.");
-                }
-                final int o0 = (b0 << 2) | (b1 >>> 4);
-                final int o1 = ((b1 & 0xf) << 4) | (b2 >>> 2);
-                final int o2 = ((b2 & 3) << 6) | b3;
-                out[op++] = (byte) o0;
-                if (op < oLen) {
-                    out[op++] = (byte) o1;
-                }
-                if (op < oLen) {
-                    out[op++] = (byte) o2;
-                }
-            }
-            return out;
-        }
-
-        /**
-         * Dummy constructor.
-         */
-        private Base64Coder() {
-        }
-
-    }
-
-}
\ No newline at end of file
+}
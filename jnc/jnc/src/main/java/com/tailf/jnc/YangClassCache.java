@@ -0,0 +1,314 @@
+package com.tailf.jnc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the reflective lookups made by {@link YangElement} when building
+ * trees of generated classes: the constructors of the top level classes, and
+ * of the classes of the nodes of a {@link PersistentElement}, and the
+ * <code>add&lt;Name&gt;()</code> and
+ * <code>set&lt;Name&gt;Value(String)</code> methods of each class.
+ * <p>
+ * A lookup is only made the first time a class or method is asked for, the
+ * result, also when there is no such class or method, is then kept as a
+ * MethodHandle. The caches are safe to use from several threads. The
+ * entries of a package are dropped when it is removed, see
+ * {@link YangElement#removePackage(String)}, so that its classes and their
+ * class loader are not kept.
+ */
+final class YangClassCache {
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /** the type of the cached constructors */
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType
+            .methodType(Object.class);
+
+    /**
+     * A cached constructor, or the reason why there is none.
+     */
+    private static final class Factory {
+        final MethodHandle constructor;
+        final Class<?> cls;
+        final String className;
+
+        /* cls is null if there is no such class */
+        Factory(MethodHandle constructor, Class<?> cls, String className) {
+            this.constructor = constructor;
+            this.cls = cls;
+            this.className = className;
+        }
+    }
+
+    /** marks a cached miss of an adder or setter */
+    private static final MethodHandle NO_METHOD = MethodHandles.constant(
+            Object.class, null);
+
+    /* package -> class name -> factory */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Factory>> factories = new ConcurrentHashMap<String, ConcurrentMap<String, Factory>>();
+
+    /* class -> factory */
+    private static final ConcurrentMap<Class<?>, Factory> classFactories = new ConcurrentHashMap<Class<?>, Factory>();
+
+    /* class -> child name -> adder, or NO_METHOD */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, MethodHandle>> adders = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, MethodHandle>>();
+
+    /* class -> leaf name -> setter, or NO_METHOD */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, MethodHandle>> setters = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, MethodHandle>>();
+
+    private YangClassCache() {
+    }
+
+    /**
+     * Creates an instance of the class generated for a top level element,
+     * like <code>Class.forName(pkg + "." + normalize(name)).newInstance()</code>
+     * does.
+     *
+     * @param pkg The package of the generated classes
+     * @param name The (non-normalized) name of the element
+     */
+    static Element newInstance(String pkg, String name)
+            throws ClassNotFoundException, InstantiationException,
+            IllegalAccessException {
+        final Factory factory = factory(pkg, name);
+        if (factory.cls == null) {
+            throw new ClassNotFoundException(factory.className);
+        }
+        return newInstance(factory);
+    }
+
+    /**
+     * Creates an instance of a class with a public nullary constructor, as
+     * the generated classes have, like
+     * <code>cls.getDeclaredConstructor().newInstance()</code> does.
+     *
+     * @param cls The class to instantiate
+     */
+    static Element newInstance(Class<? extends Element> cls)
+            throws InstantiationException, IllegalAccessException {
+        Factory factory = classFactories.get(cls);
+        if (factory == null) {
+            factory = lookupFactory(cls, cls.getName());
+            classFactories.putIfAbsent(cls, factory);
+        }
+        return newInstance(factory);
+    }
+
+    private static Element newInstance(Factory factory)
+            throws InstantiationException, IllegalAccessException {
+        if (factory.constructor == null) {
+            // let reflection report why it cannot be instantiated
+            try {
+                return (Element) factory.cls.getDeclaredConstructor()
+                        .newInstance();
+            } catch (final NoSuchMethodException e) {
+                throw new InstantiationException(factory.className);
+            } catch (final InvocationTargetException e) {
+                throw YangClassCache.<RuntimeException> sneakyThrow(e
+                        .getCause());
+            }
+        }
+        try {
+            return (Element) (Object) factory.constructor.invokeExact();
+        } catch (final Throwable t) {
+            throw YangClassCache.<RuntimeException> sneakyThrow(t);
+        }
+    }
+
+    private static Factory factory(String pkg, String name) {
+        ConcurrentMap<String, Factory> classes = factories.get(pkg);
+        if (classes == null) {
+            classes = new ConcurrentHashMap<String, Factory>();
+            final ConcurrentMap<String, Factory> raced = factories
+                    .putIfAbsent(pkg, classes);
+            if (raced != null) {
+                classes = raced;
+            }
+        }
+        Factory factory = classes.get(name);
+        if (factory == null) {
+            factory = lookupFactory(pkg + "." + YangElement.normalize(name));
+            classes.putIfAbsent(name, factory);
+        }
+        return factory;
+    }
+
+    private static Factory lookupFactory(String className) {
+        try {
+            return lookupFactory(Class.forName(className), className);
+        } catch (final ClassNotFoundException e) {
+            return new Factory(null, null, className);
+        }
+    }
+
+    private static Factory lookupFactory(Class<?> cls, String className) {
+        try {
+            final Constructor<?> constructor = cls.getConstructor();
+            if (!Modifier.isAbstract(cls.getModifiers())) {
+                return new Factory(lookup.unreflectConstructor(constructor)
+                        .asType(CONSTRUCTOR_TYPE), cls, className);
+            }
+        } catch (final NoSuchMethodException e) {
+            // reported by newInstance()
+        } catch (final IllegalAccessException e) {
+            // reported by newInstance()
+        }
+        return new Factory(null, cls, className);
+    }
+
+    /**
+     * Drops the cached classes and methods of a package and its
+     * subpackages.
+     *
+     * @param pkg The package of the generated classes
+     */
+    static void removePackage(String pkg) {
+        final String prefix = pkg + ".";
+        for (final String p : factories.keySet()) {
+            if (p.equals(pkg) || p.startsWith(prefix)) {
+                factories.remove(p);
+            }
+        }
+        removeClasses(classFactories, prefix);
+        removeClasses(adders, prefix);
+        removeClasses(setters, prefix);
+    }
+
+    private static void removeClasses(ConcurrentMap<Class<?>, ?> cache,
+            String prefix) {
+        for (final Class<?> cls : cache.keySet()) {
+            if (cls.getName().startsWith(prefix)) {
+                cache.remove(cls);
+            }
+        }
+    }
+
+    /**
+     * Calls the <code>add&lt;Name&gt;()</code> method of a generated class,
+     * creating and adding a child with the given name.
+     *
+     * @param parent The element to add the child to
+     * @param name The (non-normalized) name of the child
+     * @return The added child, or <code>null</code> if the class has no such
+     *         method
+     * @throws InvocationTargetException if the method throws an exception
+     */
+    static Element addChild(YangElement parent, String name)
+            throws InvocationTargetException {
+        final MethodHandle adder = adder(parent.getClass(), name);
+        if (adder == NO_METHOD) {
+            return null;
+        }
+        try {
+            return (Element) (Object) adder.invokeExact((Object) parent);
+        } catch (final Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private static MethodHandle adder(Class<?> cls, String name) {
+        final ConcurrentMap<String, MethodHandle> methods = methods(adders, cls);
+        MethodHandle adder = methods.get(name);
+        if (adder == null) {
+            adder = lookupMethod(cls, "add" + YangElement.normalize(name));
+            methods.putIfAbsent(name, adder);
+        }
+        return adder;
+    }
+
+    /**
+     * Calls the <code>set&lt;Name&gt;Value(String)</code> method of a
+     * generated class, setting the value of the leaf with the given name.
+     *
+     * @param parent The element owning the leaf
+     * @param name The (non-normalized) name of the leaf
+     * @param value The value of the leaf
+     * @return <code>false</code> if the class has no such method
+     * @throws InvocationTargetException if the method throws an exception
+     */
+    static boolean setLeafValue(YangElement parent, String name, String value)
+            throws InvocationTargetException {
+        final MethodHandle setter = setter(parent.getClass(), name);
+        if (setter == NO_METHOD) {
+            return false;
+        }
+        try {
+            setter.invokeExact((Object) parent, value);
+        } catch (final Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+        return true;
+    }
+
+    private static MethodHandle setter(Class<?> cls, String name) {
+        final ConcurrentMap<String, MethodHandle> methods = methods(setters,
+                cls);
+        MethodHandle setter = methods.get(name);
+        if (setter == null) {
+            setter = lookupMethod(cls, "set" + YangElement.normalize(name)
+                    + "Value", String.class);
+            if (setter != NO_METHOD) {
+                setter = setter.asType(setter.type().changeReturnType(
+                        void.class));
+            }
+            methods.putIfAbsent(name, setter);
+        }
+        return setter;
+    }
+
+    private static ConcurrentMap<String, MethodHandle> methods(
+            ConcurrentMap<Class<?>, ConcurrentMap<String, MethodHandle>> cache,
+            Class<?> cls) {
+        ConcurrentMap<String, MethodHandle> methods = cache.get(cls);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<String, MethodHandle>();
+            final ConcurrentMap<String, MethodHandle> raced = cache
+                    .putIfAbsent(cls, methods);
+            if (raced != null) {
+                methods = raced;
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Looks up a public method, the way Class.getMethod() does, as a handle
+     * taking the object as an Object and returning an Object, or
+     * NO_METHOD.
+     */
+    private static MethodHandle lookupMethod(Class<?> cls, String methodName,
+            Class<?>... types) {
+        try {
+            final Method method = cls.getMethod(methodName, types);
+            MethodHandle handle;
+            try {
+                handle = lookup.unreflect(method);
+            } catch (final IllegalAccessException e) {
+                // a public method of a non-public class
+                method.setAccessible(true);
+                handle = lookup.unreflect(method);
+            }
+            return handle.asType(handle.type().changeReturnType(Object.class)
+                    .changeParameterType(0, Object.class));
+        } catch (final NoSuchMethodException e) {
+            return NO_METHOD;
+        } catch (final IllegalAccessException e) {
+            return NO_METHOD;
+        } catch (final SecurityException e) {
+            return NO_METHOD;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T sneakyThrow(Throwable t) throws T {
+        throw (T) t;
+    }
+}
@@ -18,6 +18,14 @@ public class YangDecimal64 extends YangBaseInt<BigDecimal> {
      */
     private Integer fractionDigits = null;
 
+    /* the bounds for each number of fraction digits, made once */
+    private static final BigDecimal[][] BOUNDS = new BigDecimal[19][];
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS[i] = bounds(i);
+        }
+    }
+
     /**
      * Creates a YangDecimal64 object from a String.
      * 
@@ -63,7 +71,7 @@ public class YangDecimal64 extends YangBaseInt<BigDecimal> {
     @Override
     public void setValue(String value)
             throws YangException {
-        setValue(new BigDecimal(value));
+        setValue(decode(value));
     }
 
     /**
@@ -86,12 +94,21 @@ public class YangDecimal64 extends YangBaseInt<BigDecimal> {
      */
     private void setMinMax() throws YangException {
         YangException.throwException(fractionDigits == null, this);
+        if (fractionDigits >= 0 && fractionDigits < BOUNDS.length) {
+            setMinMax(BOUNDS[fractionDigits][0], BOUNDS[fractionDigits][1]);
+        } else {
+            final BigDecimal[] bounds = bounds(fractionDigits);
+            setMinMax(bounds[0], bounds[1]);
+        }
+    }
+
+    private static BigDecimal[] bounds(int fractionDigits) {
         BigDecimal pow63 = new BigDecimal("2.0").pow(63);
         final BigDecimal minValue = pow63.negate().movePointLeft(
                 fractionDigits);
         pow63 = pow63.subtract(BigDecimal.ONE);
         final BigDecimal maxValue = pow63.movePointLeft(fractionDigits);
-        setMinMax(minValue, maxValue);
+        return new BigDecimal[] { minValue, maxValue };
     }
 
     /**
@@ -135,7 +152,54 @@ public class YangDecimal64 extends YangBaseInt<BigDecimal> {
      */
     @Override
     protected BigDecimal decode(String s) throws NumberFormatException {
-        return new BigDecimal(s);
+        final BigDecimal plain = parsePlain(s);
+        return plain != null ? plain : new BigDecimal(s);
+    }
+
+    /**
+     * Parses a decimal number of at most 18 significant digits, with an
+     * optional sign and point, into the BigDecimal
+     * <code>new BigDecimal(s)</code> would be, without parsing it as a
+     * BigInteger first.
+     * 
+     * @return The number, or null if s is not such a number.
+     */
+    static BigDecimal parsePlain(String s) {
+        final int n = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (n > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        boolean digit = false;
+        int significant = 0;
+        int scale = -1;
+        for (; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+                if (unscaled != 0 || c != '0') {
+                    if (++significant > 18) {
+                        return null;
+                    }
+                    unscaled = unscaled * 10 + (c - '0');
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return null;
+            }
+        }
+        if (!digit) {
+            return null;
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled,
+                scale < 0 ? 0 : scale);
     }
 
     /*
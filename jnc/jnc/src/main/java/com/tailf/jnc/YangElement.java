@@ -1,8 +1,10 @@
 package com.tailf.jnc;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The YangElement is a configuration sub-tree like the
@@ -101,6 +103,10 @@ public abstract class YangElement extends Element {
     private static Element instantiate(Element parent, String name, String pkg)
             throws ClassNotFoundException, InstantiationException,
             IllegalAccessException {
+        if (!(parent instanceof YangElement)) {
+            // no package of the parent to add, the usual case
+            return YangClassCache.newInstance(pkg, name);
+        }
         final String className = pkg + "." + getPackage(parent)
                 + normalize(name);
         final Class<?> rootClass = Class.forName(className);
@@ -135,23 +141,24 @@ public abstract class YangElement extends Element {
                 return instantiate(null, name, pkg); // Root
             } else if (parent instanceof YangElement) {
                 // YangElement child, aware
-                try {
-                    return ((YangElement) parent).addChild(name);
-                } catch (final NoSuchMethodException e) {
-                    if (((YangElement) parent).isChild(name)) {
-                        // known existing leaf will be handled by endElement
-                        return null;
-                    }
-                    // It's an unknown element or child
-                    // FIXME - check capabilities
-                    if (!RevisionInfo.newerRevisionSupportEnabled) {
-                        throw new YangException(
-                                YangException.ELEMENT_MISSING,
-                                parent.getElementPath(name) + COLON_UNEXPECTED_ELEMENT);
-                    }
-                    parser.unknownLevel = 1;
+                final Element child = YangClassCache.addChild(
+                        (YangElement) parent, name);
+                if (child != null) {
+                    return child;
+                }
+                if (((YangElement) parent).isChild(name)) {
+                    // known existing leaf will be handled by endElement
                     return null;
                 }
+                // It's an unknown element or child
+                // FIXME - check capabilities
+                if (!RevisionInfo.newerRevisionSupportEnabled) {
+                    throw new YangException(
+                            YangException.ELEMENT_MISSING,
+                            parent.getElementPath(name) + COLON_UNEXPECTED_ELEMENT);
+                }
+                parser.unknownLevel = 1;
+                return null;
             } else { // YangElement is aware but parent is not
                      // This is the case where we stop parsing
                      // the NETCONF rpc data and start to create
@@ -191,66 +198,42 @@ public abstract class YangElement extends Element {
             throws YangException, JNCException {
 
         // Aware
-        final String methodName = "set" + normalize(name) + "Value";
-        final Class<?>[] types = new Class[] { String.class };
         try {
-            Method setLeafValue = getClass().getMethod(methodName, types);
-            setLeafValue.invoke(this, new Object[] { value });
-        } catch (final NoSuchMethodException e) {
+            if (YangClassCache.setLeafValue(this, name, value)) {
+                return;
+            }
             if (!RevisionInfo.newerRevisionSupportEnabled) {
-                // e.printStackTrace();
                 throw new YangException(YangException.ELEMENT_MISSING,
                         getElementPath(name) + COLON_UNEXPECTED_ELEMENT);
             }
-            final NodeSet nodes = get(name);
-            if (nodes.isEmpty()) {
-                final Element leaf = new Element(ns, name);
-                leaf.setValue(value);
-                insertLast(leaf);
-            } else {
-                final Element leaf = nodes.first();
-                leaf.setValue(value);
-            }
         } catch (final java.lang.reflect.InvocationTargetException cm) {
             // case with added enumerations,
             if (!RevisionInfo.newerRevisionSupportEnabled) {
                 throw new YangException(YangException.BAD_VALUE,
                         getElementPath(name) + ": " + cm.getCause().toString());
             }
-
-            final NodeSet nodes = get(name);
-            if (nodes.isEmpty()) {
-                final Element leaf = new Element(ns, name);
-                leaf.setValue(value);
-                insertLast(leaf);
-            } else {
-                final Element leaf = nodes.first();
-                leaf.setValue(value);
-            }
         }
 
-        catch (final Exception invErr) {
-            // type error
-            throw new YangException(YangException.BAD_VALUE, getElementPath(name)
-                    + ": " + invErr.getCause().toString());
-        }
-    }
-
-    static class Package {
-        String pkg;
-        String ns;
-
-        Package(String ns, String pkg) {
-            this.ns = ns;
-            this.pkg = pkg;
+        final NodeSet nodes = get(name);
+        if (nodes.isEmpty()) {
+            final Element leaf = new Element(ns, name);
+            leaf.setValue(value);
+            insertLast(leaf);
+        } else {
+            final Element leaf = nodes.first();
+            leaf.setValue(value);
         }
     }
 
     /**
-     * Static list of packages.
-     * 
+     * The packages of the data models, by namespace. The map is never
+     * modified, it is replaced under the lock when a package is set or
+     * removed, so lookups need no locking.
      */
-    static ArrayList<Package> packages = new ArrayList<Package>();
+    private static volatile Map<String, String> packages = Collections
+            .emptyMap();
+
+    private static final Object packagesLock = new Object();
 
     /**
      * Locate package from Namespace.
@@ -258,41 +241,40 @@ public abstract class YangElement extends Element {
      * @return Package name, if namespace is data model aware
      */
     public static String getPackage(String ns) {
-        if (packages == null) {
+        if (ns == null) {
             return null;
         }
-        for (final Package p : packages) {
-            if (p.ns.equals(ns)) {
-                return p.pkg;
-            }
-        }
-        return null;
+        return packages.get(ns);
     }
 
     /**
      * Assiciate a JAVA package with a namespace.
      */
     public static void setPackage(String ns, String pkg) {
-        if (packages == null) {
-            packages = new ArrayList<Package>();
+        synchronized (packagesLock) {
+            final Map<String, String> copy = new HashMap<String, String>(
+                    packages);
+            copy.put(ns, pkg);
+            packages = copy;
         }
-        removePackage(ns);
-        packages.add(new Package(ns, pkg));
     }
 
     /**
      * Remove a package from the list of Packages
      */
     public static void removePackage(String ns) {
-        if (packages == null) {
-            return;
-        }
-        for (int i = 0; i < packages.size(); i++) {
-            final Package p = packages.get(i);
-            if (p.ns.equals(ns)) {
-                packages.remove(i);
+        synchronized (packagesLock) {
+            if (!packages.containsKey(ns)) {
                 return;
             }
+            final Map<String, String> copy = new HashMap<String, String>(
+                    packages);
+            final String pkg = copy.remove(ns);
+            packages = copy;
+            if (pkg != null && !copy.containsValue(pkg)) {
+                // do not keep its classes loaded
+                YangClassCache.removePackage(pkg);
+            }
         }
     }
 
@@ -520,21 +502,16 @@ public abstract class YangElement extends Element {
             final NodeSet nsA = getChildren(names[i]);
             final NodeSet nsB = b.getChildren(names[i]);
 
-            int hits = 0;
+            if (nsA.size() != nsB.size()) {
+                return 1;
+            }
             for (int j = 0; j < nsA.size(); j++) {
                 final Element cA = nsA.get(j);
-                // Now does this elem exist in nsB
-                for (int k = 0; k < nsB.size(); k++) {
-                    final Element cB = nsB.get(k);
-                    if (cA.equals(cB)) {
-                        hits++;
-                        break;
-                    }
+                // Now does this elem exist in nsB, most likely at j
+                if (!cA.equals(nsB.get(j)) && !nsB.contains(cA)) {
+                    return 1;
                 }
             }
-            if (nsA.size() != nsB.size() || nsA.size() != hits) {
-                return 1;
-            }
         }
         return 0;
     }
@@ -594,7 +571,6 @@ public abstract class YangElement extends Element {
             NodeSet uniqueB, NodeSet changedA, NodeSet changedB) {
         if (a.compare(b) >= 0) {
             // parents are equal, go through the children.
-            final NodeSet bList = new NodeSet();
             if (a.children == null || b.children == null) {
                 if (b.children != null) {
                     uniqueB.addAll(b.children);
@@ -603,24 +579,14 @@ public abstract class YangElement extends Element {
                 }
                 return;
             }
-            bList.addAll(b.children);
+            final DiffIndex bIndex = new DiffIndex(b.children);
 
-            // For each child in a, compare with children in b.
+            // For each child in a, find the first matching child in b.
             for (int i = 0; i < a.children.size(); i++) {
                 final Element aChild = a.children.getElement(i);
-                Element bChild = null;
-                int bRes = -1;
-                int j;
-                for (j = 0; j < bList.size(); j++) {
-                    bChild = bList.getElement(j);
-                    bRes = aChild.compare(bChild);
-                    if (bRes >= 0) {
-                        break;
-                    }
-                }
-                if (bRes >= 0) {
-                    // child at position j in bList compares equal, remove it.
-                    bList.remove(j);
+                final Element bChild = bIndex.take(aChild);
+                if (bChild != null) {
+                    final int bRes = aChild.compare(bChild);
                     if (bRes == 1) { // different content
                         changedA.add(aChild);
                         changedB.add(bChild);
@@ -636,8 +602,8 @@ public abstract class YangElement extends Element {
                     uniqueA.add(aChild);
                 }
             }
-            // Add any remaining nodes in bList to uniqueB
-            uniqueB.addAll(bList);
+            // Add any remaining children of b to uniqueB
+            bIndex.addRemaining(uniqueB);
         } else {
             // a.compare(b) == -1: A and B are completely different
             uniqueA.add(a);
@@ -645,6 +611,27 @@ public abstract class YangElement extends Element {
         }
     }
 
+    /**
+     * Produces the 'diff' between two trees, like
+     * {@link #getDiff(YangElement, YangElement, NodeSet, NodeSet, NodeSet, NodeSet)}
+     * does, using the threads of a fork/join pool. Large lists are split in
+     * chunks compared in parallel. The node sets are filled in the same
+     * order as by the sequential version.
+     * 
+     * @param a Subtree A (YangElement)
+     * @param b Subtree B (YangElement)
+     * @param uniqueA Place for elements that are unique to A.
+     * @param uniqueB Place for elements that are unique to B.
+     * @param changedA Place for elements changed in A.
+     * @param changedB Place for elements changed in B.
+     * @param pool The pool to run the comparisons in
+     */
+    public static void getDiff(YangElement a, YangElement b, NodeSet uniqueA,
+            NodeSet uniqueB, NodeSet changedA, NodeSet changedB,
+            ForkJoinPool pool) {
+        ParallelDiff.getDiff(a, b, uniqueA, uniqueB, changedA, changedB, pool);
+    }
+
     /**
      * Checks if two configurations are equal, or if a sync is needed.
      * 
@@ -721,7 +708,32 @@ public abstract class YangElement extends Element {
         final NodeSet changedB = new NodeSet();
 
         YangElement.getDiff(a, b, uniqueA, uniqueB, changedA, changedB);
+        return sync(uniqueA, uniqueB, changedB);
+    }
+
+    /**
+     * Will return a subtree for syncing a subtree A with all the necessary
+     * operations to make it look like the target tree B, like
+     * {@link #sync(YangElement, YangElement)} does, comparing the trees
+     * using the threads of a fork/join pool.
+     * 
+     * @param pool The pool to run the comparisons in
+     * @return Return subtree with operations to transmute subtree A into
+     *         subtree B.
+     */
+    public static YangElement sync(YangElement a, YangElement b,
+            ForkJoinPool pool) throws JNCException {
+        final NodeSet uniqueA = new NodeSet();
+        final NodeSet uniqueB = new NodeSet();
+        final NodeSet changedA = new NodeSet();
+        final NodeSet changedB = new NodeSet();
+
+        YangElement.getDiff(a, b, uniqueA, uniqueB, changedA, changedB, pool);
+        return sync(uniqueA, uniqueB, changedB);
+    }
 
+    static YangElement sync(NodeSet uniqueA, NodeSet uniqueB,
+            NodeSet changedB) throws JNCException {
         Element result = null;
         for (int i = 0; i < uniqueA.size(); i++) {
             final Element x = uniqueA.getElement(i);
@@ -776,6 +788,27 @@ public abstract class YangElement extends Element {
         final YangElement copy = (YangElement) b.clone();
         final NodeSet toDel = new NodeSet();
         YangElement.csync2((YangElement) a.clone(), copy, toDel);
+        return deleteAll(copy, toDel);
+    }
+
+    /**
+     * Will return a subtree for syncing a subtree A with all the necessary
+     * operations to make it look like the target tree B, like
+     * {@link #syncMerge(YangElement, YangElement)} does, comparing the trees
+     * using the threads of a fork/join pool.
+     * 
+     * @param pool The pool to run the comparisons in
+     * @return Subtree with operations to transmute subtree A into subtree B.
+     */
+    public static YangElement syncMerge(YangElement a, YangElement b,
+            ForkJoinPool pool) {
+        final YangElement copy = (YangElement) b.clone();
+        final NodeSet toDel = new NodeSet();
+        ParallelDiff.csync((YangElement) a.clone(), copy, toDel, pool);
+        return deleteAll(copy, toDel);
+    }
+
+    private static YangElement deleteAll(YangElement copy, NodeSet toDel) {
         for (int i = 0; i < toDel.size(); i++) {
             final Element e = toDel.get(i);
             e.getParent().deleteChild(e);
@@ -829,7 +862,17 @@ public abstract class YangElement extends Element {
             }
         }
 
-        // Mark remaining elements in 'a' for deletion and move them to 'b'
+        return diffs + csyncRemaining(a, b);
+    }
+
+    /**
+     * Marks the children left in 'a' by csync2 for deletion and moves them
+     * to 'b'.
+     * 
+     * @return Number of diffs
+     */
+    static int csyncRemaining(YangElement a, YangElement b) {
+        int diffs = 0;
         for (int i = 0; a.children != null && i < a.children.size(); i++) {
             final Element x = a.children.get(i);
             if (x instanceof Leaf) {
@@ -855,7 +898,7 @@ public abstract class YangElement extends Element {
         return diffs;
     }
 
-    private static Element findDeleteChild(Element e, NodeSet s) {
+    static Element findDeleteChild(Element e, NodeSet s) {
         if (s == null) {
             return null;
         }
@@ -1007,20 +1050,16 @@ public abstract class YangElement extends Element {
         return p.readFile(filename);
     }
 
-    // cache the Tagpath and the SchemaNode
-    private Tagpath tp = null;
+    // cache the SchemaNode
     private SchemaNode n = null;
 
     @Override
     protected void encode(OutTransport out, boolean newline_at_end,
                           Capabilities capas) throws JNCException {
         if (RevisionInfo.olderRevisionSupportEnabled && capas != null) {
-            if (tp == null) {
-                tp = tagpath();
-            }
             final String actualNamespace = getRootElement().namespace;
             if (n == null) {
-                n = SchemaTree.lookup(actualNamespace, tp);
+                n = SchemaTree.lookup(actualNamespace, this);
             }
             final String rev = capas.getRevision(actualNamespace);
             if (n.revInfo != null) {
@@ -1035,7 +1074,7 @@ public abstract class YangElement extends Element {
                             if (getChildren().size() > max) {
                                 throw new JNCException(
                                         JNCException.REVISION_ERROR,
-                                        tp
+                                        tagpath()
                                                 + "too many children for old node "
                                                 + "with rev( " + rev + ")");
                             }
@@ -1074,7 +1113,8 @@ public abstract class YangElement extends Element {
     }
 
     /**
-     * Convenience method to create and add a child by name, using reflection.
+     * Convenience method to create and add a child by name, using the
+     * add method of the generated class, looked up once per class and name.
      *
      * @param childName The name of the child to add
      * @return The added child.
@@ -1083,9 +1123,12 @@ public abstract class YangElement extends Element {
      * @throws NoSuchMethodException
      */
     public Element addChild(String childName) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        final String methodName = "add" + normalize(childName);
-        final Method addChild = getClass().getMethod(methodName, new Class[] {});
-        return (Element) addChild.invoke(this, new Object[] {});
+        final Element child = YangClassCache.addChild(this, childName);
+        if (child == null) {
+            throw new NoSuchMethodException(getClass().getName() + ".add"
+                    + normalize(childName) + "()");
+        }
+        return child;
     }
 
 }
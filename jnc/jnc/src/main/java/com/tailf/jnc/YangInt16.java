@@ -42,7 +42,7 @@ public class YangInt16 extends YangBaseInt<Short> {
      */
     @Override
     protected Short decode(String s) throws NumberFormatException {
-        return Short.decode(s);
+        return (short) decodeLong(s, Short.MIN_VALUE, Short.MAX_VALUE);
     }
 
     /*
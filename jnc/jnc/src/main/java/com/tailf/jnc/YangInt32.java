@@ -42,7 +42,7 @@ public class YangInt32 extends YangBaseInt<Integer> {
      */
     @Override
     protected Integer decode(String s) throws NumberFormatException {
-        return Integer.decode(s);
+        return (int) decodeLong(s, Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
     /*
@@ -42,7 +42,7 @@ public class YangInt64 extends YangBaseInt<Long> {
      */
     @Override
     protected Long decode(String s) throws NumberFormatException {
-        return Long.decode(s);
+        return decodeLong(s, Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     /*
@@ -42,7 +42,7 @@ public class YangInt8 extends YangBaseInt<Byte> {
      */
     @Override
     protected Byte decode(String s) throws NumberFormatException {
-        return Byte.decode(s);
+        return (byte) decodeLong(s, Byte.MIN_VALUE, Byte.MAX_VALUE);
     }
 
     /*
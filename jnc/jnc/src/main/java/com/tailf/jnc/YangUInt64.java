@@ -12,6 +12,9 @@ public class YangUInt64 extends YangBaseInt<BigInteger> {
 
     private static final long serialVersionUID = 1L;
 
+    private static final BigInteger UINT64_MAX = new BigInteger(
+            "18446744073709551615");
+
     /**
      * Creates a YangUInt64 object from a String.
      * 
@@ -21,7 +24,7 @@ public class YangUInt64 extends YangBaseInt<BigInteger> {
      */
     public YangUInt64(String s) throws YangException {
         super(s);
-        setMinMax(0, new BigInteger("18446744073709551615"));
+        setMinMax(0, UINT64_MAX);
         check();
     }
 
@@ -58,6 +61,10 @@ public class YangUInt64 extends YangBaseInt<BigInteger> {
      */
     @Override
     protected BigInteger decode(String s) throws NumberFormatException {
+        final BigDecimal plain = YangDecimal64.parsePlain(s);
+        if (plain != null && plain.scale() == 0) {
+            return BigInteger.valueOf(plain.longValue());
+        }
         try {
             return new BigDecimal(s).toBigIntegerExact();
         } catch (final ArithmeticException e) {
@@ -1,7 +1,5 @@
 package com.tailf.jnc;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 
 /**
@@ -69,8 +67,9 @@ public class YangUnion extends YangBaseType<YangType<?>> {
      */
     @Override
     public void setValue(String value) throws YangException {
-        YangException.throwException(value == null,
-                new NullPointerException());
+        if (value == null) {
+            YangException.throwException(true, new NullPointerException());
+        }
         this.value = fromString(value);
         check();
     }
@@ -83,39 +82,24 @@ public class YangUnion extends YangBaseType<YangType<?>> {
      */
     @Override
     public void setValue(YangType<?> value) throws YangException {
-        YangException.throwException(value == null,
-                new NullPointerException());
+        if (value == null) {
+            YangException.throwException(true, new NullPointerException());
+        }
         this.value = value;
         check();
     }
 
     /**
-     * Parses a value of a member type
+     * Parses a value of a member type. The member types are looked up once
+     * for each union class, and the ones whose values cannot look like
+     * <code>s</code> are passed over without making an instance of them.
      * 
      * @param s String representation of member type value
      * @return first valid value, or null if none
      */
     @Override
     protected YangType<?> fromString(String s) {
-        String[] mtypes = memberTypes();
-        for (String memberType : mtypes) {
-            try {
-                Class<?> cl = Class.forName(memberType);
-                Constructor<?> c;
-                c = cl.getConstructor(new Class[] { String.class });
-                Object o = c.newInstance(new Object[] { s });
-                if (o instanceof YangType<?>) {
-                    return (YangType<?>) o;
-                }
-            } catch (InvocationTargetException e) {
-            } catch (NoSuchMethodException e) {
-            } catch (IllegalAccessException e) {
-            } catch (InstantiationException e) {
-            } catch (ClassNotFoundException e) {
-            }
-            // Unable to instantiate a value of this memberType - try next
-        }
-        return null;
+        return Restrictions.of(getClass()).union(memberTypes()).fromString(s);
     }
     
     /**
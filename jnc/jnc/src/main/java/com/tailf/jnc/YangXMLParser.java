@@ -19,40 +19,61 @@ public class YangXMLParser extends XMLParser {
         super();
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param backend The backend tokenizing the XML text
+     */
+    public YangXMLParser(ParserBackend backend) throws JNCException {
+        super(backend);
+    }
+
     /**
      * Read in an XML file, parse it using an ElementHandler as content
      * handler, and return the parsed YangElement tree.
      */
     @Override
     public YangElement readFile(String filename) throws JNCException {
+        final SymbolTable symbols = SymbolTable.borrow();
         try {
-            final ElementHandler handler = new ElementHandler();
-            parser.setContentHandler(handler);
-            parser.parse(filename);
+            final ElementHandler handler = new ElementHandler(symbols);
+            backend.parse(new InputSource(filename), handler);
             return (YangElement) handler.top;
         } catch (final Exception e) {
             throw new JNCException(JNCException.PARSER_ERROR, "parse file: "
                     + filename + " error: " + e);
+        } finally {
+            SymbolTable.release(symbols);
         }
     }
 
     /**
-     * Parses an XML string returning a configuration tree from it,
-     * instantiating an ElementHandler to use as content handler.
+     * Parses an XML string returning a configuration tree with the parts of
+     * it selected by a projection, instantiating an ElementHandler to use as
+     * content handler.
      * 
      * @param is Input source (byte stream) where the XML text is read from
+     * @param projection The parts to build, or <code>null</code> for all
      */
     @Override
-    public Element parse(InputSource is) throws JNCException {
+    public Element parse(InputSource is, Projection projection)
+            throws JNCException {
+        final SymbolTable symbols = SymbolTable.borrow();
         try {
-            final ElementHandler handler = new ElementHandler();
-            parser.setContentHandler(handler);
-            parser.parse(is);
+            final ElementHandler handler = new ElementHandler(symbols);
+            if (projection == null) {
+                backend.parse(is, handler);
+            } else {
+                backend.parse(is, projection.filter(handler));
+                projection.prune(handler.top);
+            }
             return handler.top;
         } catch (final Exception e) {
             e.printStackTrace();
             throw new JNCException(JNCException.PARSER_ERROR, "parse error: "
                     + e);
+        } finally {
+            SymbolTable.release(symbols);
         }
     }
 
@@ -6,6 +6,9 @@ import com.tailf.jnc.Element;
 import com.tailf.jnc.NodeSet;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class ConfigurationMergeHandlerTest {
@@ -331,7 +334,98 @@ public class ConfigurationMergeHandlerTest {
         assertEquals("newstuff", result.get(0).name);
     }
 
+    @Test
+    public void shouldApplyBatchAsSequentialUpdates() throws Exception {
 
+        final NodeSet sequentialResult = interfaces(ChildIndex.THRESHOLD * 2);
+        for (final ConfigurationMergeHandler.Update update : interfaceUpdates()) {
+            handler.updateConfiguration(sequentialResult, update.getConfigurationFragment(), update.getXPath());
+        }
+
+        final NodeSet batchResult = handler.updateConfiguration(interfaces(ChildIndex.THRESHOLD * 2),
+                interfaceUpdates());
+        dumpNodeSet(batchResult, "shouldApplyBatchAsSequentialUpdates");
+
+        assertEquals(sequentialResult.toXMLString(), batchResult.toXMLString());
+        final Element interfaces = batchResult.get(0).getChild("interfaces");
+        // if9 replaced, a second if5 and new added
+        assertEquals(ChildIndex.THRESHOLD * 2 + 2, interfaces.getChildren().size());
+        assertEquals("9000", interfaces.getChildren().get(3).getValueOfChild("mtu"));
+        assertEquals("mtu", interfaces.getChildren().get(5).getChildren().first().name);
+        assertEquals("if5", interfaces.getChildren().get(ChildIndex.THRESHOLD * 2 - 1).getValueOfChild("name"));
+        assertNull(interfaces.getChildren().get(7).getChild("mtu"));
+        assertEquals("1400", interfaces.getChildren().last().getValueOfChild("mtu"));
+    }
+
+    @Test
+    public void shouldContinueBatchFromReplacedConfiguration() throws Exception {
+
+        final NodeSet existingSet = newNodeSet()
+                .withElement(newElement("parent").build())
+                .build();
+
+        final NodeSet replacementSet = newNodeSet()
+                .withElement(newElement("other").build())
+                .build();
+
+        final NodeSet updateSet = newNodeSet()
+                .withElement(newElement("other")
+                        .withChild(newElement("childA").build())
+                        .build())
+                .build();
+
+        final List<ConfigurationMergeHandler.Update> updates = new ArrayList<ConfigurationMergeHandler.Update>();
+        updates.add(new ConfigurationMergeHandler.Update(replacementSet, ""));
+        updates.add(new ConfigurationMergeHandler.Update(updateSet, "/other/childA"));
+        final NodeSet result = handler.updateConfiguration(existingSet, updates);
+
+        assertSame(replacementSet, result);
+        assertEquals(1, result.size());
+        assertNotNull(result.get(0).getChild("childA"));
+    }
+
+    // A system with interfaces if0, if1, ... each with a name and an mtu.
+    private NodeSet interfaces(final int count) {
+        final ElementBuilder interfaces = newElement("interfaces");
+        for (int i = 0; i < count; i++) {
+            interfaces.withChild(newElement("interface")
+                    .withLeaf("name", "if" + i)
+                    .withLeaf("mtu", "1500")
+                    .build());
+        }
+        return newNodeSet()
+                .withElement(newElement("system").withChild(interfaces.build()).build())
+                .build();
+    }
+
+    private ConfigurationMergeHandler.Update interfaceUpdate(final Element entry, final String xPath) {
+        final NodeSet fragment = newNodeSet()
+                .withElement(newElement("system")
+                        .withChild(newElement("interfaces").withChild(entry).build())
+                        .build())
+                .build();
+        return new ConfigurationMergeHandler.Update(fragment, xPath);
+    }
+
+    private List<ConfigurationMergeHandler.Update> interfaceUpdates() {
+        final List<ConfigurationMergeHandler.Update> updates = new ArrayList<ConfigurationMergeHandler.Update>();
+        final String prefix = "/system/interfaces/interface";
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "if3").withLeaf("mtu", "9000").build(),
+                prefix + "[name='if3']/mtu"));
+        // Moves the key of if5 after its mtu, so the next update adds another if5.
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "if5").build(),
+                prefix + "[name='if5']/name"));
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "if5").withLeaf("mtu", "1").build(),
+                prefix + "[name='if5']/mtu"));
+        updates.add(new ConfigurationMergeHandler.Update(newNodeSet().build(), prefix + "[name='if7']/mtu"));
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "if9").build(),
+                prefix + "[name='if9']"));
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "new").build(),
+                prefix + "[name='new']"));
+        updates.add(interfaceUpdate(newElement("interface").withLeaf("name", "new").withLeaf("mtu", "1400").build(),
+                prefix + "[name='new']/mtu"));
+        return updates;
+    }
 
     private NodeSet performMerge(final String testId, final NodeSet before, final NodeSet update, final String xPath) {
         dumpNodeSet(before, testId + "\nBefore");
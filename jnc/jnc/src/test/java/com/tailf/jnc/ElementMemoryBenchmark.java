@@ -0,0 +1,67 @@
+package com.tailf.jnc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Measures the heap retained by a parsed tree of about a million nodes, the
+ * size of the running configuration of a large device. Not a unit test,
+ * run it with:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.ElementMemoryBenchmark [nodes]
+ * </pre>
+ */
+public class ElementMemoryBenchmark {
+
+    /** nodes per interface in {@link XMLParserBenchmark#interfacesReply} */
+    private static final int NODES_PER_INTERFACE = 14;
+
+    public static void main(String[] args) throws Exception {
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0])
+                : 1000000;
+        final String xml = XMLParserBenchmark.interfacesReply(nodes
+                / NODES_PER_INTERFACE);
+        final XMLParser parser = new XMLParser();
+        // warm up, and fill the symbol table, which is not part of the tree
+        parser.parse(XMLParserBenchmark.interfacesReply(100));
+
+        final long before = usedHeap();
+        final Element tree = parser.parse(xml);
+        final long after = usedHeap();
+        final int count = count(tree);
+
+        System.out.printf("%d nodes, %d bytes of XML%n", count, xml.length());
+        System.out.printf("retained %.1f MB, %.1f bytes/node%n",
+                (after - before) / 1e6, (double) (after - before) / count);
+        if (tree.getChildren() == null) {
+            System.out.print("");
+        }
+    }
+
+    private static int count(Element e) {
+        int n = 1;
+        if (e.getChildren() != null) {
+            for (final Element child : e.getChildren()) {
+                n += count(child);
+            }
+        }
+        return n;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean bean = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // collect until the heap stops shrinking
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            final long now = bean.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
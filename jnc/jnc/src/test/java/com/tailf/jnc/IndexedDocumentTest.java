@@ -0,0 +1,104 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedDocumentTest {
+
+    private static final String NS = "http://example.com/ns/indextest";
+
+    private static final String REPLY = "<rpc-reply xmlns=\""
+            + Element.NETCONF_NAMESPACE + "\" message-id=\"7\">\n"
+            + "  <data>\n"
+            + "    <hosts xmlns=\"" + NS + "\" xmlns:h=\"" + NS + "\">\n"
+            + "      <host><name>a</name><ip>10.0.0.1</ip>"
+            + "<alias h:kind=\"short\">x &amp; y</alias><empty/></host>\n"
+            + "      <host><name>b</name><ip>10.0.0.2</ip></host>\n"
+            + "      <host><name>c</name><ip>10.0.0.3</ip></host>\n"
+            + "    </hosts>\n"
+            + "  </data>\n"
+            + "</rpc-reply>\n";
+
+    private XMLParser parser;
+    private Element full;
+
+    @Before
+    public void setUp() throws JNCException {
+        parser = new XMLParser();
+        full = parser.parse(REPLY);
+    }
+
+    private static String toXML(NodeSet nodes) {
+        final StringBuilder s = new StringBuilder();
+        for (final Element e : nodes) {
+            s.append(e.toXMLString());
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testNavigation() throws JNCException {
+        final IndexedDocument doc = parser.parseIndexed(REPLY);
+        assertEquals(14, doc.size());
+        final int root = doc.root();
+        assertEquals("rpc-reply", doc.name(root));
+        assertEquals("7", doc.attrValue(root, "message-id"));
+        assertNull(doc.value(root));
+        final int hosts = doc.child(doc.child(root, "data"), "hosts");
+        assertEquals(NS, doc.namespace(hosts));
+        final int host = doc.firstChild(hosts);
+        assertEquals("a", doc.value(doc.child(host, "name")));
+        assertEquals("x & y", doc.value(doc.child(host, "alias")));
+        assertNull(doc.value(doc.child(host, "empty")));
+        assertEquals("10.0.0.2", doc.value(doc.child(doc.nextSibling(host),
+                "ip")));
+        assertEquals(IndexedDocument.NONE, doc.nextSibling(doc
+                .nextSibling(doc.nextSibling(host))));
+        assertEquals(hosts, doc.parent(host));
+        assertEquals(NS, doc.lookupContextPrefix(host, "h"));
+    }
+
+    @Test
+    public void testRootIsSameTree() throws JNCException {
+        for (final ParserBackend backend : new ParserBackend[] {
+                ParserBackend.SAX, ParserBackend.STAX }) {
+            parser.setBackend(backend);
+            final Element root = parser.parseIndexed(REPLY).getRoot();
+            assertEquals(full.toXMLString(), root.toXMLString());
+            assertEquals("short", root.getFirst("data/hosts/host/alias")
+                    .getAttrValue("kind"));
+        }
+    }
+
+    @Test
+    public void testGetBuildsSelection() throws JNCException {
+        final String[] paths = { "data/hosts/host[name='b']/ip",
+                "data/hosts/h:host[ip='10.0.0.3']",
+                "self::rpc-reply[@message-id='7']/data/hosts/host/name",
+                "data/hosts/host/alias" };
+        for (final String path : paths) {
+            final IndexedDocument doc = parser.parseIndexed(REPLY);
+            assertEquals(path, toXML(full.get(path)), toXML(doc.get(path)));
+        }
+
+        final IndexedDocument doc = parser.parseIndexed(REPLY);
+        final Element ip = doc.get("data/hosts/host[name='b']/ip").first();
+        final Element hosts = ip.getParent().getParent();
+        assertEquals("only the built host", 1, hosts.getChildren().size());
+        assertEquals(NS, ip.lookupContextPrefix("h"));
+        assertSame(ip, doc.get("data/hosts/host[name='b']/ip").first());
+
+        /* building more fills in the partial ancestors, in order */
+        final Element last = doc.get("data/hosts/host[name='c']").first();
+        final Element first = doc.get("data/hosts/host[name='a']").first();
+        assertEquals(3, hosts.getChildren().size());
+        assertSame(first, hosts.getChildren().get(0));
+        assertSame(last, hosts.getChildren().get(2));
+        final Element root = doc.getRoot();
+        assertSame(hosts, root.getFirst("data/hosts"));
+        assertSame(ip, root.getFirst("data/hosts/host[name='b']/ip"));
+        assertEquals(full.toXMLString(), root.toXMLString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.tailf.jnc;
+
+/**
+ * Compares evaluating the paths used on every rpc-reply when each is
+ * parsed for the evaluation, as <code>new Path(pathStr)</code> does, with
+ * the compiled paths behind {@link Element#getFirst(String)}, and with
+ * paths compiled once by the caller. Then times looking up an interface by
+ * its key in lists of growing length, which should not grow with the list.
+ * Not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.PathBenchmark [seconds per case]
+ * </pre>
+ */
+public class PathBenchmark {
+
+    private static final String[] PATHS = { "self::rpc-reply",
+            "self::rpc-reply/ok", "self::rpc-reply/data",
+            "self::rpc-reply/rpc-error",
+            "self::rpc-reply/data/interfaces-state/interface[name='GigabitEthernet0/0/3']/oper-status" };
+
+    /**
+     * A way of evaluating all the paths once.
+     */
+    private interface Case {
+        int run(Element reply) throws JNCException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double seconds = args.length > 0 ? Double.parseDouble(args[0])
+                : 3;
+        final Element reply = new XMLParser().parse(XMLParserBenchmark
+                .interfacesReply(10));
+        final Path[] paths = new Path[PATHS.length];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = Path.compile(PATHS[i]);
+        }
+
+        run("parsed each time", seconds, reply, new Case() {
+            @Override
+            public int run(Element reply) throws JNCException {
+                int n = 0;
+                for (final String pathStr : PATHS) {
+                    n += new Path(pathStr).eval(reply).size();
+                }
+                return n;
+            }
+        });
+        run("getFirst(String)", seconds, reply, new Case() {
+            @Override
+            public int run(Element reply) throws JNCException {
+                int n = 0;
+                for (final String pathStr : PATHS) {
+                    n += reply.getFirst(pathStr) == null ? 0 : 1;
+                }
+                return n;
+            }
+        });
+        run("getFirst(Path)", seconds, reply, new Case() {
+            @Override
+            public int run(Element reply) throws JNCException {
+                int n = 0;
+                for (final Path path : paths) {
+                    n += reply.getFirst(path) == null ? 0 : 1;
+                }
+                return n;
+            }
+        });
+
+        for (final int count : new int[] { 1000, 10000, 100000 }) {
+            final Element big = new XMLParser().parse(XMLParserBenchmark
+                    .interfacesReply(count));
+            final Path[] keyPaths = new Path[16];
+            for (int i = 0; i < keyPaths.length; i++) {
+                final int key = count - 1 - i * (count / keyPaths.length);
+                keyPaths[i] = Path.compile("self::rpc-reply/data"
+                        + "/interfaces-state/interface[name='"
+                        + "GigabitEthernet0/0/" + key + "']/oper-status");
+            }
+            run("key, " + count + " entries", seconds, big, new Case() {
+                @Override
+                public int run(Element reply) throws JNCException {
+                    int n = 0;
+                    for (final Path path : keyPaths) {
+                        n += reply.getFirst(path) == null ? 0 : 1;
+                    }
+                    return n;
+                }
+            });
+        }
+    }
+
+    private static void run(String name, double seconds, Element reply,
+            Case c) throws JNCException {
+        // warm up
+        long sink = 0;
+        final long warmup = System.nanoTime() + (long) (seconds * 0.3e9);
+        while (System.nanoTime() < warmup) {
+            sink += c.run(reply);
+        }
+        long ops = 0;
+        final long start = System.nanoTime();
+        final long end = start + (long) (seconds * 1e9);
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink += c.run(reply);
+            }
+            ops += 100;
+            now = System.nanoTime();
+        } while (now < end);
+        System.out.printf("%-22s %8.0f ns/op %s%n", name, (now - start)
+                / (double) ops, sink == 42 ? "" : "");
+    }
+}
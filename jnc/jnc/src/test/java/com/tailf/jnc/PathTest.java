@@ -0,0 +1,96 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathTest {
+
+    private Element config;
+
+    @Before
+    public void setUp() throws JNCException {
+        config = new XMLParser().parse("<config xmlns=\"urn:test\">"
+                + "<host><name>a</name><ip>10.0.0.1</ip></host>"
+                + "<host><name>b</name><ip>10.0.0.2</ip></host>"
+                + "</config>");
+    }
+
+    @Test
+    public void testCompileShared() throws JNCException {
+        final Path path = Path.compile("host[name='b']/ip");
+        assertSame(path, Path.compile("host[name='b']/ip"));
+        assertEquals("10.0.0.2", config.getValue(path));
+        assertEquals("10.0.0.2", config.getValue("host[name='b']/ip"));
+        assertEquals(2, config.get(Path.compile("host/name")).size());
+        assertTrue(config.exists(Path.compile("host")));
+        assertNull(config.getFirst(Path.compile("router")));
+    }
+
+    @Test
+    public void testCompileBounded() throws JNCException {
+        final Path first = Path.compile("host[name='0']");
+        for (int i = 1; i < 5000; i++) {
+            assertTrue(config.get("host[name='" + i + "']").isEmpty());
+        }
+        assertNotSame(first, Path.compile("host[name='0']"));
+    }
+
+    @Test
+    public void testCompileKeepsUsedPaths() throws JNCException {
+        final Path hot = Path.compile("host[name='b']/ip");
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(config.get("host[name='x" + i + "']").isEmpty());
+            assertEquals("10.0.0.2", config.getValue("host[name='b']/ip"));
+        }
+        assertSame(hot, Path.compile("host[name='b']/ip"));
+    }
+
+    @Test(expected = JNCException.class)
+    public void testCompileError() throws JNCException {
+        config.get("host[");
+    }
+
+    @Test
+    public void testEvalFirst() throws JNCException {
+        assertSame(config.get("host/name").first(),
+                config.getFirst("host/name"));
+        assertSame(config.get("host[ip='10.0.0.2']/name").first(),
+                Path.compile("host[ip='10.0.0.2']/name").evalFirst(config));
+        assertSame(config, config.getFirst("self::config"));
+        assertNull(config.getFirst("host[name='c']/ip"));
+        assertFalse(config.exists("host/router"));
+    }
+
+    @Test
+    public void testKeyLookup() throws JNCException {
+        final int n = ChildIndex.THRESHOLD * 3;
+        for (int i = 0; i < n; i++) {
+            final Element host = new Element("urn:test", "host");
+            config.addChild(host);
+            final Element name = new Element("urn:test", "name");
+            name.setValue("h" + i);
+            host.addChild(name);
+        }
+        final Element h7 = config.getFirst("host[name='h7']");
+        assertEquals("h7", h7.getValueOfChild("name"));
+        assertEquals(1, config.get("host[name='h7']").size());
+        assertEquals("10.0.0.2", config.getValue("host[name='b']/ip"));
+
+        // a changed key, an entry added and one removed
+        h7.getChildren().first().setValue("h7x");
+        assertNull(config.getFirst("host[name='h7']"));
+        assertSame(h7, config.getFirst("host[name='h7x']"));
+        final Element dup = new Element("urn:test", "host");
+        config.getChildren().add(dup);
+        dup.parent = config;
+        dup.createChild("name").setValue("h7x");
+        final NodeSet both = config.get("host[name='h7x']");
+        assertEquals(2, both.size());
+        assertSame(h7, both.get(0));
+        assertSame(dup, both.get(1));
+        config.deleteChild(h7);
+        assertSame(dup, config.getFirst("host[name='h7x']"));
+    }
+}
@@ -0,0 +1,223 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentElementTest {
+
+    private static final String NS = "http://example.com/ns/persistent";
+
+    public static class Router extends DummyElement {
+        private static final long serialVersionUID = 1L;
+
+        public Router() {
+            super(NS, "router");
+        }
+
+        @Override
+        public String[] childrenNames() {
+            return new String[] { "host" };
+        }
+
+        @Override
+        public String[] keyNames() {
+            return null;
+        }
+    }
+
+    public static class Host extends DummyElement {
+        private static final long serialVersionUID = 1L;
+
+        public Host() {
+            super(NS, "host");
+        }
+
+        @Override
+        public String[] childrenNames() {
+            return new String[] { "name", "mtu", "stats" };
+        }
+
+        @Override
+        public String[] keyNames() {
+            return new String[] { "name" };
+        }
+    }
+
+    public static class Stats extends DummyElement {
+        private static final long serialVersionUID = 1L;
+
+        static int created;
+
+        public Stats() {
+            super(NS, "stats");
+            created++;
+        }
+
+        @Override
+        public String[] childrenNames() {
+            return new String[] { "packets" };
+        }
+
+        @Override
+        public String[] keyNames() {
+            return null;
+        }
+    }
+
+    private Element config;
+
+    @Before
+    public void setUp() throws JNCException {
+        config = new XMLParser().parse("<config xmlns=\"" + NS + "\">"
+                + "<host id=\"1\"><name>a</name><mtu>1500</mtu></host>"
+                + "<host id=\"2\"><name>b</name><mtu>1500</mtu></host>"
+                + "</config>");
+    }
+
+    @Test
+    public void testRoundTrip() throws JNCException {
+        final PersistentElement snapshot = config.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals("2", snapshot.getChild(1).getAttrValue("id"));
+        assertEquals(config.toXMLString(), snapshot.toElement().toXMLString());
+        assertEquals(snapshot, config.snapshot());
+        assertEquals(snapshot.hashCode(), config.snapshot().hashCode());
+
+        // later changes to the element tree are not seen
+        config.getChild("host").getChild("name").setValue("changed");
+        assertEquals("a", snapshot.getChild(0).getChild("name").getValue());
+    }
+
+    @Test
+    public void testEditSharesSubtrees() {
+        final PersistentElement before = config.snapshot();
+        final PersistentElement.Editor ed = before.edit();
+        ed.down(1).down("mtu").setValue("9000");
+        final PersistentElement after = ed.root();
+
+        assertEquals("1500", before.getChild(1).getChild("mtu").getValue());
+        assertEquals("9000", after.getChild(1).getChild("mtu").getValue());
+        assertSame(before.getChild(0), after.getChild(0));
+        assertSame(before.getChild(1).getChild("name"), after.getChild(1)
+                .getChild("name"));
+        assertNotSame(before.getChild(1), after.getChild(1));
+        assertFalse(before.equals(after));
+    }
+
+    @Test
+    public void testAddAndRemove() throws JNCException {
+        final PersistentElement before = config.snapshot();
+        final PersistentElement after = before.edit().down(0)
+                .addChild(PersistentElement.create(NS, "speed", "10G"))
+                .setAttr("id", null).up().removeChild(1).root();
+
+        assertEquals(2, before.size());
+        assertEquals(1, after.size());
+        assertEquals(3, after.getChild(0).size());
+        assertEquals("10G", after.getChild(0).getChild("speed").getValue());
+        assertNull(after.getChild(0).getAttrValue("id"));
+        assertEquals("1", before.getChild(0).getAttrValue("id"));
+
+        final Element e = after.toElement();
+        assertEquals("10G", e.getChild("host").getChild("speed").getValue());
+        assertSame(e, e.getChild("host").getParent());
+    }
+
+    private static Leaf leaf(String name, String value) throws JNCException {
+        final Leaf leaf = new Leaf(NS, name);
+        leaf.setValue(value);
+        return leaf;
+    }
+
+    private static Host host(int i) throws JNCException {
+        final Host host = new Host();
+        host.addChild(leaf("name", "h" + i));
+        host.addChild(leaf("mtu", "1500"));
+        final Stats stats = new Stats();
+        stats.addChild(leaf("packets", Integer.toString(i)));
+        host.addChild(stats);
+        return host;
+    }
+
+    private static Router router(int hosts) throws JNCException {
+        final Router router = new Router();
+        for (int i = 0; i < hosts; i++) {
+            router.addChild(host(i));
+        }
+        return router;
+    }
+
+    private static void assertSameNodes(NodeSet expected, NodeSet actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertEquals(expected.get(i).toXMLString(), actual.get(i)
+                    .toXMLString());
+        }
+    }
+
+    @Test
+    public void testRoundTripKeepsClasses() throws JNCException {
+        final Element e = router(2).snapshot().toElement();
+        assertTrue(e instanceof Router);
+        final Element host = e.getChildren().first();
+        assertTrue(host instanceof Host);
+        assertArrayEquals(new String[] { "name" },
+                ((YangElement) host).keyNames());
+        assertTrue(host.getChild("name") instanceof Leaf);
+        assertTrue(host.getChild("stats") instanceof Stats);
+        assertEquals(router(2).toXMLString(), e.toXMLString());
+        assertSame(Stats.class, router(1).snapshot().getChild(0).getChild(
+                "stats").getType());
+    }
+
+    @Test
+    public void testDiff() throws JNCException {
+        final PersistentElement before = router(50).snapshot();
+        final PersistentElement after = before.edit().down(7).down("mtu")
+                .setValue("9000").root().edit().removeChild(3)
+                .addChild(PersistentElement.of(host(50))).root();
+
+        final NodeSet uniqueA = new NodeSet(), uniqueB = new NodeSet();
+        final NodeSet changedA = new NodeSet(), changedB = new NodeSet();
+        Stats.created = 0;
+        PersistentElement.getDiff(before, after, uniqueA, uniqueB, changedA,
+                changedB);
+        // of the 50 entries, only the two versions of the changed one are
+        // looked into and then built, and the added and removed ones built
+        assertEquals(6, Stats.created);
+
+        final NodeSet expectedUniqueA = new NodeSet();
+        final NodeSet expectedUniqueB = new NodeSet();
+        final NodeSet expectedChangedA = new NodeSet();
+        final NodeSet expectedChangedB = new NodeSet();
+        final YangElement a = (YangElement) before.toElement();
+        final YangElement b = (YangElement) after.toElement();
+        YangElement.getDiff(a, b, expectedUniqueA, expectedUniqueB,
+                expectedChangedA, expectedChangedB);
+        assertEquals(1, expectedChangedB.size());
+        assertSameNodes(expectedUniqueA, uniqueA);
+        assertSameNodes(expectedUniqueB, uniqueB);
+        assertSameNodes(expectedChangedA, changedA);
+        assertSameNodes(expectedChangedB, changedB);
+
+        assertEquals(YangElement.sync(a, b).toXMLString(), PersistentElement
+                .sync(before, after).toXMLString());
+        assertNull(PersistentElement.sync(before, before));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDiffOfElements() throws JNCException {
+        final PersistentElement before = config.snapshot();
+        final PersistentElement after = before.edit().down(0).down("mtu")
+                .setValue("9000").root();
+        PersistentElement.sync(before, after);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUpFromTop() {
+        config.snapshot().edit().up();
+    }
+}
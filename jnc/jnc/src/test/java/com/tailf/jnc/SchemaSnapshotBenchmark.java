@@ -0,0 +1,142 @@
+package com.tailf.jnc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * Times a startup loading the schemas of many YANG modules: parsing the XML
+ * of each schema file, reading their snapshots after checking them against
+ * the files, as {@link SchemaParser#readFile(String, HashMap, String)} does,
+ * and reading the snapshots alone, as {@link SchemaSnapshot#read(String,
+ * HashMap)} does. Not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.SchemaSnapshotBenchmark [modules] [nodes per module] [startups]
+ * </pre>
+ */
+public class SchemaSnapshotBenchmark {
+
+    /**
+     * A way of loading the schema of one module.
+     */
+    private interface Case {
+        int run(SchemaParser parser, String schema) throws JNCException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int modules = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        final int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int startups = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        final File dir = Files.createTempDirectory("schemas").toFile();
+        final String[] schemas = new String[modules];
+        long bytes = 0;
+        long snapshotBytes = 0;
+        for (int i = 0; i < modules; i++) {
+            final File f = new File(dir, "module" + i + ".schema");
+            writeSchema(f, "urn:example:module" + i, nodes);
+            schemas[i] = f.getPath();
+            SchemaSnapshot.write(schemas[i], schemas[i] + SchemaSnapshot.SUFFIX);
+            bytes += f.length();
+            snapshotBytes += new File(schemas[i] + SchemaSnapshot.SUFFIX)
+                    .length();
+        }
+        System.out.printf("%d modules of %d nodes, %d kB of XML, %d kB of"
+                + " snapshots%n", modules, nodes, bytes >> 10,
+                snapshotBytes >> 10);
+
+        run("parse XML", startups, schemas, new Case() {
+            @Override
+            public int run(SchemaParser parser, String schema)
+                    throws JNCException {
+                final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
+                parser.readFile(schema, h);
+                return h.size();
+            }
+        });
+        run("checked snapshot", startups, schemas, new Case() {
+            @Override
+            public int run(SchemaParser parser, String schema)
+                    throws JNCException {
+                final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
+                parser.readFile(schema, h, schema + SchemaSnapshot.SUFFIX);
+                return h.size();
+            }
+        });
+        run("snapshot only", startups, schemas, new Case() {
+            @Override
+            public int run(SchemaParser parser, String schema)
+                    throws JNCException {
+                final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
+                SchemaSnapshot.read(schema + SchemaSnapshot.SUFFIX, h);
+                return h.size();
+            }
+        });
+
+        for (final File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Writes a schema of containers holding lists of leaves, as generated
+     * for a vendor module.
+     */
+    private static void writeSchema(File file, String ns, int nodes)
+            throws IOException {
+        final StringBuilder s = new StringBuilder("<schema>\n");
+        node(s, "/", ns, "config", 0);
+        node(s, "/config", ns, "entry", 0);
+        for (int i = 2; i < nodes; i++) {
+            final String list = "/config/entry" + (i / 10);
+            node(s, list + "/leaf-" + i, ns, "", 5 + i % 20);
+        }
+        s.append("</schema>\n");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(s.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void node(StringBuilder s, String tagpath, String ns,
+            String children, int type) {
+        s.append("    <node>\n        <tagpath>").append(tagpath)
+                .append("</tagpath>\n        <namespace>").append(ns)
+                .append("</namespace>\n        <primitive_type>")
+                .append(type)
+                .append("</primitive_type>\n        <min_occurs>0</min_occurs>\n")
+                .append("        <max_occurs>1</max_occurs>\n        <children>")
+                .append(children)
+                .append("</children>\n        <flags>0</flags>\n")
+                .append("        <desc>The ").append(tagpath)
+                .append(" node.</desc>\n    </node>\n");
+    }
+
+    private static void run(String name, int startups, String[] schemas,
+            Case c) throws JNCException {
+        long sink = 0;
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < startups; i++) {
+            final long start = System.nanoTime();
+            final SchemaParser parser = new SchemaParser();
+            for (final String schema : schemas) {
+                sink += c.run(parser, schema);
+            }
+            final long t = System.nanoTime() - start;
+            best = Math.min(best, t);
+            total += t;
+        }
+        // the first startup is the cold one, the best is once warmed up
+        System.out.printf("%-18s %8.1f ms/startup, best %8.1f ms %s%n", name,
+                total / (double) startups / 1e6, best / 1e6,
+                sink == 42 ? "" : "");
+    }
+}
@@ -0,0 +1,175 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchemaSnapshotTest {
+
+    private static final String NS = "urn:test:snapshot";
+
+    private File dir;
+    private File schema;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshot").toFile();
+        schema = new File(dir, "Test.schema");
+        snapshot = new File(dir, "Test.schema" + SchemaSnapshot.SUFFIX);
+        writeSchema("");
+    }
+
+    @After
+    public void tearDown() {
+        for (final File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static String node(String tagpath, String children, String desc) {
+        return "<node><tagpath>" + tagpath + "</tagpath><namespace>" + NS
+                + "</namespace><primitive_type>5</primitive_type>"
+                + "<min_occurs>0</min_occurs><max_occurs>-1</max_occurs>"
+                + "<children>" + children + "</children><flags>1</flags>"
+                + "<desc>" + desc + "</desc></node>";
+    }
+
+    private void writeSchema(String more) throws IOException {
+        final String xml = "<schema>" + node("/", "top", "")
+                + node("/top", "x y", "caf\u00e9 &amp; more")
+                + node("/top/x", "", "") + node("/top/y", "", "")
+                + "<node><tagpath>/top/z</tagpath><namespace>" + NS
+                + "</namespace><primitive_type>6</primitive_type>"
+                + "<min_occurs>1</min_occurs><max_occurs>1</max_occurs>"
+                + "<children></children><flags>0</flags><desc></desc>"
+                + "<rev><info><type>1</type><idata>4711</idata>"
+                + "<data>foo</data><introduced>2007-10-11</introduced>"
+                + "</info></rev></node>" + more + "</schema>";
+        final FileOutputStream out = new FileOutputStream(schema);
+        out.write(xml.getBytes(StandardCharsets.UTF_8));
+        out.close();
+    }
+
+    private static void assertSameSchema(HashMap<Tagpath, SchemaNode> a,
+            HashMap<Tagpath, SchemaNode> b) {
+        assertEquals(a.keySet(), b.keySet());
+        for (final Tagpath tp : a.keySet()) {
+            final SchemaNode x = a.get(tp);
+            final SchemaNode y = b.get(tp);
+            assertEquals(x.tagpath, y.tagpath);
+            assertEquals(x.namespace, y.namespace);
+            assertEquals(x.primitive_type, y.primitive_type);
+            assertEquals(x.min_occurs, y.min_occurs);
+            assertEquals(x.max_occurs, y.max_occurs);
+            assertArrayEquals(x.children, y.children);
+            assertEquals(x.flags, y.flags);
+            assertEquals(x.desc, y.desc);
+            assertEquals(x.revInfo == null, y.revInfo == null);
+            if (x.revInfo != null) {
+                assertEquals(x.revInfo.length, y.revInfo.length);
+                for (int i = 0; i < x.revInfo.length; i++) {
+                    assertEquals(x.revInfo[i].type, y.revInfo[i].type);
+                    assertEquals(x.revInfo[i].idata, y.revInfo[i].idata);
+                    assertEquals(x.revInfo[i].data, y.revInfo[i].data);
+                    assertEquals(x.revInfo[i].introduced,
+                            y.revInfo[i].introduced);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws JNCException {
+        final HashMap<Tagpath, SchemaNode> parsed = new HashMap<Tagpath, SchemaNode>();
+        new SchemaParser().readFile(schema.getPath(), parsed);
+        SchemaSnapshot.write(schema.getPath(), snapshot.getPath());
+        final HashMap<Tagpath, SchemaNode> read = new HashMap<Tagpath, SchemaNode>();
+        SchemaSnapshot.read(snapshot.getPath(), read);
+
+        assertEquals(5, read.size());
+        assertSameSchema(parsed, read);
+        final SchemaNode top = read.get(new Tagpath("top"));
+        assertEquals("caf\u00e9 & more", top.desc);
+        assertArrayEquals(new String[] { "x", "y" }, top.children);
+        assertNotNull(read.get(new Tagpath(0)));
+        assertEquals(4711, read.get(new Tagpath("top/z")).revInfo[0].idata);
+        // the strings are kept once
+        assertSame(top.tagpath.p[0], read.get(new Tagpath("top/x")).tagpath.p[0]);
+    }
+
+    @Test
+    public void testReadFileWithSnapshot() throws JNCException, IOException {
+        final SchemaParser parser = new SchemaParser();
+        final HashMap<Tagpath, SchemaNode> parsed = new HashMap<Tagpath, SchemaNode>();
+        parser.readFile(schema.getPath(), parsed, snapshot.getPath());
+        assertTrue(snapshot.isFile());
+        assertEquals(5, parsed.size());
+
+        final HashMap<Tagpath, SchemaNode> read = new HashMap<Tagpath, SchemaNode>();
+        parser.readFile(schema.getPath(), read, snapshot.getPath());
+        assertSameSchema(parsed, read);
+        // read from the snapshot, which keeps strings once
+        assertSame(read.get(new Tagpath("top/x")).tagpath.p[0],
+                read.get(new Tagpath("top/y")).tagpath.p[0]);
+
+        // a changed schema file is parsed, and the snapshot written again
+        writeSchema(node("/top/w", "", ""));
+        final HashMap<Tagpath, SchemaNode> changed = new HashMap<Tagpath, SchemaNode>();
+        parser.readFile(schema.getPath(), changed, snapshot.getPath());
+        assertEquals(6, changed.size());
+        final HashMap<Tagpath, SchemaNode> again = new HashMap<Tagpath, SchemaNode>();
+        parser.readFile(schema.getPath(), again, snapshot.getPath());
+        assertSameSchema(changed, again);
+        assertEquals(1, dir.listFiles().length - 1);
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws JNCException, IOException {
+        SchemaSnapshot.write(schema.getPath(), snapshot.getPath());
+        final byte[] b = Files.readAllBytes(snapshot.toPath());
+        final FileOutputStream out = new FileOutputStream(snapshot);
+        out.write(Arrays.copyOf(b, b.length - 3));
+        out.close();
+
+        final HashMap<Tagpath, SchemaNode> h = new HashMap<Tagpath, SchemaNode>();
+        try {
+            SchemaSnapshot.read(snapshot.getPath(), h);
+            fail("Expected JNCException");
+        } catch (final JNCException e) {
+            assertEquals(JNCException.PARSER_ERROR, e.errorCode);
+        }
+        assertTrue(h.isEmpty());
+
+        // parsed instead
+        new SchemaParser().readFile(schema.getPath(), h, snapshot.getPath());
+        assertEquals(5, h.size());
+    }
+
+    @Test(expected = JNCException.class)
+    public void testNotSnapshot() throws JNCException {
+        SchemaSnapshot.read(schema.getPath(),
+                new HashMap<Tagpath, SchemaNode>());
+    }
+
+    @Test
+    public void testRegisters() throws JNCException {
+        final HashMap<Tagpath, SchemaNode> h = SchemaTree.create(NS);
+        SchemaSnapshot.write(schema.getPath(), snapshot.getPath());
+        SchemaSnapshot.read(snapshot.getPath(), h);
+        final SchemaNode node = SchemaTree.lookup(NS, new Tagpath("top/x"));
+        assertNotNull(node);
+        assertTrue(node.getId() >= 0);
+    }
+}
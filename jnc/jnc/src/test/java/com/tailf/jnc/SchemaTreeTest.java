@@ -0,0 +1,106 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class SchemaTreeTest {
+
+    private static SchemaNode node(String ns, String tagpath) {
+        final SchemaNode node = new SchemaNode();
+        node.namespace = ns;
+        node.tagpath = new Tagpath(tagpath);
+        return node;
+    }
+
+    @Test
+    public void testRegister() {
+        final String ns = "urn:test:schema-tree";
+        final HashMap<Tagpath, SchemaNode> h = SchemaTree.create(ns);
+        assertSame(h, SchemaTree.create(ns));
+        assertSame(h, SchemaTree.getHashMap(ns));
+        assertTrue(SchemaTree.getLoadedNamespaces().contains(ns));
+
+        final SchemaNode top = node(ns, "top");
+        final SchemaNode leaf = node(ns, "top/leaf");
+        h.put(top.tagpath, top);
+        h.put(new Tagpath("top/leaf"), leaf);
+        // seen before registering, as before
+        assertSame(top, SchemaTree.lookup(ns, new Tagpath("top")));
+        assertEquals(-1, top.getId());
+
+        SchemaTree.register(ns);
+        assertSame(top, SchemaTree.lookup(ns, new Tagpath("top")));
+        assertSame(leaf, SchemaTree.lookup(ns, new Tagpath("top/leaf")));
+        assertNull(SchemaTree.lookup(ns, new Tagpath("top/other")));
+        assertNull(SchemaTree.lookup("urn:test:none", new Tagpath("top")));
+
+        // ids
+        assertTrue(top.getId() >= 0);
+        assertTrue(leaf.getId() >= 0);
+        assertFalse(top.getId() == leaf.getId());
+        assertTrue(leaf.getId() < SchemaTree.getNodeCount());
+        assertSame(top, SchemaTree.getNode(top.getId()));
+        assertSame(leaf, SchemaTree.getNode(leaf.getId()));
+
+        // interned Tagpaths
+        assertSame(leaf.tagpath, SchemaTree.intern(new Tagpath("top/leaf")));
+
+        // changes are seen once registered again
+        final SchemaNode other = node(ns, "top/other");
+        h.put(other.tagpath, other);
+        assertNull(SchemaTree.lookup(ns, new Tagpath("top/other")));
+        SchemaTree.register(ns);
+        assertSame(other, SchemaTree.lookup(ns, new Tagpath("top/other")));
+        final int id = top.getId();
+        SchemaTree.register(ns);
+        assertEquals(id, top.getId());
+    }
+
+    @Test
+    public void testLookupElement() {
+        final String ns = "urn:test:schema-tree-elements";
+        final HashMap<Tagpath, SchemaNode> h = SchemaTree.create(ns);
+        for (int i = 0; i < 100; i++) {
+            final SchemaNode node = node(ns, "top/list" + i + "/leaf");
+            h.put(node.tagpath, node);
+        }
+        SchemaTree.register(ns);
+
+        final Element top = new Element(ns, "top");
+        final Element list = top.createChild("list42");
+        final Element leaf = list.createChild("leaf");
+        assertEquals(leaf.tagpath().hashCode(), Tagpath.hashCode(leaf));
+        assertSame(SchemaTree.lookup(ns, leaf.tagpath()),
+                SchemaTree.lookup(ns, leaf));
+        assertEquals("top/list42/leaf", SchemaNode.get(leaf).tagpath
+                .toString());
+        assertNull(SchemaTree.lookup(ns, list));
+        assertNull(SchemaTree.lookup(ns, list.createChild("leaf2")));
+        assertNull(SchemaTree.lookup(ns, leaf.createChild("leaf")));
+    }
+
+    @Test
+    public void testParserRegisters() throws JNCException {
+        final String ns = "urn:ietf:params:xml:ns:yang:ietf-yang-types";
+        final HashMap<Tagpath, SchemaNode> h = SchemaTree.create(ns);
+        new SchemaParser().findAndReadFile("/Yang.schema", h,
+                SchemaParser.class);
+        final SchemaNode root = SchemaTree.lookup(ns, new Tagpath(0));
+        assertNotNull(root);
+        assertTrue(root.getId() >= 0);
+    }
+
+    @Test
+    public void testTagpath() {
+        final Tagpath a = new Tagpath("a/b");
+        final Tagpath b = new Tagpath(new String[] { "b", "a" });
+        assertEquals(a, new Tagpath("a/b"));
+        assertEquals(a.hashCode(), new Tagpath("a/b").hashCode());
+        assertFalse(a.equals(b));
+        assertFalse(a.hashCode() == b.hashCode());
+        assertEquals("a/b", a.toString());
+    }
+}
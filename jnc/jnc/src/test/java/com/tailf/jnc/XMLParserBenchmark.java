@@ -0,0 +1,204 @@
+package com.tailf.jnc;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Compares the throughput and allocation of the parser backends on a few
+ * representative rpc-replies, also when only projecting the interface
+ * status out of them, or only indexing them. The data model aware parses
+ * are run with many YANG modules registered, as with a real device. Not a
+ * unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.XMLParserBenchmark [seconds per case]
+ * </pre>
+ *
+ * Allocation is only reported on JVMs whose ThreadMXBean can measure it.
+ */
+public class XMLParserBenchmark {
+
+    private static final String IF_NS = "urn:ietf:params:xml:ns:yang:ietf-interfaces";
+
+    /** number of data model packages registered, none of them generated */
+    private static final int MODULES = 200;
+
+    /**
+     * A parse of one reply, by one parser.
+     */
+    private interface Case {
+        Object run() throws JNCException;
+    }
+
+    static String okReply() {
+        return "<rpc-reply xmlns=\"" + Element.NETCONF_NAMESPACE
+                + "\" message-id=\"101\"><ok/></rpc-reply>";
+    }
+
+    /**
+     * An operational state reply with the given number of interfaces, each
+     * with a handful of leaves and counters.
+     */
+    static String interfacesReply(int count) {
+        final StringBuilder s = new StringBuilder();
+        s.append("<rpc-reply xmlns=\"").append(Element.NETCONF_NAMESPACE)
+                .append("\" message-id=\"102\">\n<data>\n");
+        s.append("<interfaces-state xmlns=\"").append(IF_NS).append("\">\n");
+        for (int i = 0; i < count; i++) {
+            s.append("  <interface>\n");
+            s.append("    <name>GigabitEthernet0/0/").append(i)
+                    .append("</name>\n");
+            s.append("    <type xmlns:ianaift=\"urn:ietf:params:xml:ns:")
+                    .append("yang:iana-if-type\">ianaift:ethernetCsmacd")
+                    .append("</type>\n");
+            s.append("    <admin-status>up</admin-status>\n");
+            s.append("    <oper-status>").append(i % 7 == 0 ? "down" : "up")
+                    .append("</oper-status>\n");
+            s.append("    <phys-address>00:1b:21:3a:").append(i % 90 + 10)
+                    .append(":ff</phys-address>\n");
+            s.append("    <speed>1000000000</speed>\n");
+            s.append("    <statistics>\n");
+            final String[] counters = { "in-octets", "in-unicast-pkts",
+                    "in-errors", "out-octets", "out-unicast-pkts",
+                    "out-errors" };
+            for (int j = 0; j < counters.length; j++) {
+                s.append("      <").append(counters[j]).append('>')
+                        .append(1000003L * (i + 1) * (j + 1)).append("</")
+                        .append(counters[j]).append(">\n");
+            }
+            s.append("    </statistics>\n");
+            s.append("  </interface>\n");
+        }
+        s.append("</interfaces-state>\n</data>\n</rpc-reply>\n");
+        return s.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+
+        for (int i = 0; i < MODULES; i++) {
+            YangElement.setPackage("urn:example:module-" + i,
+                    "com.example.module" + i);
+        }
+
+        final Map<String, String> replies = new LinkedHashMap<String, String>();
+        replies.put("ok", okReply());
+        replies.put("interfaces-10", interfacesReply(10));
+        replies.put("interfaces-1000", interfacesReply(1000));
+
+        final ParserBackend[] backends = { ParserBackend.SAX,
+                ParserBackend.STAX };
+        final Projection status = new Projection(
+                "data/interfaces-state/interface/name",
+                "data/interfaces-state/interface/oper-status");
+
+        System.out.printf("%-16s %-22s %12s %14s%n", "reply", "parser",
+                "ops/s", "bytes/op");
+        for (final Map.Entry<String, String> reply : replies.entrySet()) {
+            final String xml = reply.getValue();
+            final byte[] bytes = xml.getBytes("UTF-8");
+            for (final ParserBackend backend : backends) {
+                final XMLParser plain = new XMLParser(backend);
+                final XMLParser yang = new YangXMLParser(backend);
+                report(reply.getKey(), backend + " string", seconds,
+                        new Case() {
+                            @Override
+                            public Element run() throws JNCException {
+                                return plain.parse(xml);
+                            }
+                        });
+                report(reply.getKey(), backend + " stream", seconds,
+                        new Case() {
+                            @Override
+                            public Element run() throws JNCException {
+                                return plain.parse(new ByteArrayInputStream(
+                                        bytes));
+                            }
+                        });
+                report(reply.getKey(), backend + " yang stream", seconds,
+                        new Case() {
+                            @Override
+                            public Element run() throws JNCException {
+                                return yang.parse(new ByteArrayInputStream(
+                                        bytes));
+                            }
+                        });
+                report(reply.getKey(), backend + " projection", seconds,
+                        new Case() {
+                            @Override
+                            public Element run() throws JNCException {
+                                return plain.parse(new InputSource(
+                                        new ByteArrayInputStream(bytes)),
+                                        status);
+                            }
+                        });
+                report(reply.getKey(), backend + " indexed", seconds,
+                        new Case() {
+                            @Override
+                            public Object run() throws JNCException {
+                                return plain.parseIndexed(new InputSource(
+                                        new ByteArrayInputStream(bytes)));
+                            }
+                        });
+            }
+        }
+    }
+
+    private static void report(String reply, String parser, long seconds,
+            Case c) throws JNCException {
+        // warm up for a third of the measurement time
+        measure(c, seconds * 1000 / 3);
+        final long[] result = measure(c, seconds * 1000);
+        final long ops = result[0];
+        final long nanos = result[1];
+        final long allocated = result[2];
+        System.out.printf("%-16s %-22s %12.0f %14s%n", reply, parser, ops
+                * 1e9 / nanos, allocated < 0 ? "n/a" : Long
+                .toString(allocated / ops));
+    }
+
+    /**
+     * Runs the case for the given time, returning the number of runs, the
+     * elapsed nanoseconds and the bytes allocated, or -1 if unknown.
+     */
+    private static long[] measure(Case c, long millis) throws JNCException {
+        final long threadId = Thread.currentThread().getId();
+        final long deadline = System.nanoTime() + millis * 1000000L;
+        final long allocatedBefore = allocatedBytes(threadId);
+        final long start = System.nanoTime();
+        long ops = 0;
+        long now;
+        int sink = 0;
+        do {
+            for (int i = 0; i < 16; i++) {
+                sink += System.identityHashCode(c.run());
+            }
+            ops += 16;
+            now = System.nanoTime();
+        } while (now < deadline);
+        final long allocatedAfter = allocatedBytes(threadId);
+        if (sink == 42) {
+            System.out.print("");
+        }
+        final long allocated = allocatedBefore < 0 ? -1 : allocatedAfter
+                - allocatedBefore;
+        return new long[] { ops, now - start, allocated };
+    }
+
+    private static long allocatedBytes(long threadId) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported()
+                    && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(threadId);
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,295 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class XMLParserTest {
+
+    private static final String NS = "http://example.com/ns/parsertest";
+
+    private static final String XML = "<config xmlns=\"" + NS + "\">\n"
+            + "  <host nc:operation=\"merge\" xmlns:nc=\"" + Element.NETCONF_NAMESPACE + "\">\n"
+            + "    <name>a &amp; b<![CDATA[ <c> ]]>&lt;d&gt;</name>\n"
+            + "    <empty/>\n"
+            + "    <blank>  </blank>\n"
+            + "  </host>\n"
+            + "  <host>\n"
+            + "    <name>e</name>\n"
+            + "  </host>\n"
+            + "</config>\n";
+
+    private XMLParser parser;
+
+    @Before
+    public void setUp() throws JNCException {
+        parser = new XMLParser();
+    }
+
+    @Test
+    public void testTextSplitAcrossEvents() throws JNCException {
+        final NodeSet hosts = parser.parse(XML).getChildren("host");
+        assertEquals("a & b <c> <d>", hosts.get(0).getValue("name"));
+        assertEquals("e", hosts.get(1).getValue("name"));
+    }
+
+    @Test
+    public void testValues() throws JNCException {
+        final Element config = parser.parse(XML);
+        assertNull("containers have no value", config.getValue());
+        assertNull(config.getFirst("host").getValue());
+        assertNull("empty element has no value",
+                config.getValue("host/empty"));
+        assertEquals("  ", config.getValue("host/blank"));
+    }
+
+    @Test
+    public void testAttributesAndPrefixes() throws JNCException {
+        final Element config = parser.parse(XML);
+        final Element first = config.getFirst("host");
+        assertEquals("merge", first.getAttrValue("operation"));
+        assertEquals(Element.NETCONF_NAMESPACE, first.getAttr("operation").ns);
+        assertNull("no attribute list without attributes",
+                config.getChildren("host").get(1).getAttrs());
+        assertEquals(NS, config.lookupContextPrefix(""));
+    }
+
+    @Test
+    public void testNamesAreShared() throws JNCException {
+        final Element a = parser.parse(XML);
+        final Element b = parser.parse(XML);
+        final Element nameA = a.getChildren("host").get(0).getChild("name");
+        final Element nameB = b.getChildren("host").get(1).getChild("name");
+        assertSame(nameA.name, nameB.name);
+        assertSame(nameA.namespace, nameB.namespace);
+    }
+
+    @Test
+    public void testConcurrentParse() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Element>> futures = new ArrayList<Future<Element>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<Element>() {
+                    @Override
+                    public Element call() throws JNCException {
+                        return parser.parse(XML);
+                    }
+                }));
+            }
+            final String expected = parser.parse(XML).toXMLString();
+            for (final Future<Element> future : futures) {
+                assertEquals(expected, future.get().toXMLString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(XMLReaderPool.idleCount() > 0);
+    }
+
+    @Test
+    public void testParseErrorAndReuse() throws JNCException {
+        try {
+            parser.parse("<config><host></config>");
+            fail("malformed input should not parse");
+        } catch (final JNCException e) {
+            assertEquals(JNCException.PARSER_ERROR, e.errorCode);
+        }
+        assertEquals("e", parser.parse(XML).getChildren("host").get(1)
+                .getValue("name"));
+    }
+
+    @Test
+    public void testStAXBuildsSameTree() throws Exception {
+        final XMLParser[][] parsers = {
+                { new XMLParser(), new XMLParser(ParserBackend.STAX) },
+                { new YangXMLParser(), new YangXMLParser(ParserBackend.STAX) } };
+        for (final XMLParser[] pair : parsers) {
+            final Element sax = pair[0].parse(XML);
+            final Element stax = pair[1].parse(XML);
+            assertEquals(sax.toXMLString(), stax.toXMLString());
+            assertEquals("a & b <c> <d>", stax.getValue("host/name"));
+            assertEquals(Element.NETCONF_NAMESPACE,
+                    stax.getFirst("host").getAttr("operation").ns);
+            assertEquals(NS, stax.lookupContextPrefix(""));
+        }
+    }
+
+    @Test
+    public void testStAXParseErrorAndFile() throws Exception {
+        final XMLParser stax = new XMLParser(ParserBackend.STAX);
+        try {
+            stax.parse("<config><host></config>");
+            fail("malformed input should not parse");
+        } catch (final JNCException e) {
+            assertEquals(JNCException.PARSER_ERROR, e.errorCode);
+        }
+        final File file = File.createTempFile("XMLParserTest", ".xml");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(XML.getBytes("UTF-8"));
+            out.close();
+            assertEquals(parser.parse(XML).toXMLString(),
+                    stax.readFile(file.getPath()).toXMLString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testParseByteBuffer() throws JNCException {
+        final byte[] bytes = XML.getBytes();
+        final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length + 4);
+        buf.position(4);
+        buf.put(bytes);
+        buf.position(4);
+        for (final ParserBackend backend : new ParserBackend[] {
+                ParserBackend.SAX, ParserBackend.STAX }) {
+            parser.setBackend(backend);
+            final Element config = parser.parse(buf.duplicate());
+            assertEquals("e", config.getChildren("host").get(1)
+                    .getValue("name"));
+        }
+        parser.parse(buf);
+        assertFalse(buf.hasRemaining());
+    }
+
+    private static final String REPLY = "<rpc-reply xmlns=\""
+            + Element.NETCONF_NAMESPACE + "\" message-id=\"1\">\n"
+            + "  <data>\n"
+            + "    <interfaces xmlns=\"" + NS + "\" xmlns:p=\"" + NS + "\">\n"
+            + "      <interface><name>eth0</name><mtu>1500</mtu>"
+            + "<oper-status>up</oper-status>"
+            + "<statistics><in-octets>10</in-octets></statistics></interface>\n"
+            + "      <interface><name>eth1</name><mtu>9000</mtu>"
+            + "<oper-status>down</oper-status>"
+            + "<statistics><in-octets>20</in-octets></statistics></interface>\n"
+            + "      <interface><name>eth2</name><mtu>1500</mtu></interface>\n"
+            + "    </interfaces>\n"
+            + "    <system xmlns=\"" + NS + "\"><hostname>r1</hostname></system>\n"
+            + "  </data>\n"
+            + "</rpc-reply>\n";
+
+    private static String select(Element top, String path)
+            throws JNCException {
+        final StringBuilder s = new StringBuilder();
+        for (final Element e : top.get(path)) {
+            s.append(e.toXMLString());
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testProjection() throws JNCException {
+        final String[] paths = { "data/interfaces/interface/oper-status",
+                "data/system" };
+        final Projection projection = new Projection(paths);
+        final Element full = parser.parse(REPLY);
+        for (final XMLParser p : new XMLParser[] { new XMLParser(),
+                new XMLParser(ParserBackend.STAX), new YangXMLParser(),
+                new YangXMLParser(ParserBackend.STAX) }) {
+            final Element projected = p.parse(REPLY, projection);
+            for (final String path : paths) {
+                assertEquals(select(full, path), select(projected, path));
+            }
+            assertEquals("1", projected.getAttrValue("message-id"));
+            assertNull(projected.getFirst("data/interfaces/interface/name"));
+            assertNull(projected.getFirst("data/interfaces/interface/statistics"));
+            assertEquals("two interfaces have a status", 2, projected
+                    .get("data/interfaces/interface").size());
+            assertNull(projected.getFirst("data").getValue());
+            assertEquals(NS, projected.getFirst("data/interfaces")
+                    .lookupContextPrefix("p"));
+        }
+    }
+
+    @Test
+    public void testProjectionWithPredicates() throws JNCException {
+        final String[] paths = {
+                "/rpc-reply[@message-id='1']/data/interfaces/interface[name='eth1']/statistics",
+                "self::rpc-reply/data/interfaces/p:interface[mtu='1500']/name" };
+        final Element full = parser.parse(REPLY);
+        for (final ParserBackend backend : new ParserBackend[] {
+                ParserBackend.SAX, ParserBackend.STAX }) {
+            parser.setBackend(backend);
+            final Element projected = parser.parse(REPLY, new Projection(
+                    paths));
+            assertEquals(select(full, paths[1]), select(projected, paths[1]));
+            assertEquals("<statistics>\n  <in-octets>20</in-octets>\n"
+                    + "</statistics>\n", projected.getFirst(
+                    "data/interfaces/interface[name='eth1']/statistics")
+                    .toXMLString());
+            assertEquals(3, projected.get("data/interfaces/interface")
+                    .size());
+            assertNull(projected.getFirst("data/system"));
+        }
+        try {
+            new Projection("data/..");
+            fail("parent steps are not supported");
+        } catch (final JNCException e) {
+            assertEquals(JNCException.PATH_ERROR, e.errorCode);
+        }
+    }
+
+    @Test
+    public void testSymbolTable() {
+        final SymbolTable symbols = new SymbolTable();
+        final String s = symbols.intern(new String("interface"));
+        assertSame(s, symbols.intern(new String("interface")));
+        final char[] ch = "xinterfacex".toCharArray();
+        assertSame(s, symbols.intern(ch, 1, 9));
+        for (int i = 0; i < 1000; i++) {
+            symbols.intern("name" + i);
+        }
+        assertEquals(1001, symbols.size());
+        assertSame(s, symbols.intern("interface"));
+        assertNull(symbols.intern(null));
+    }
+
+    @Test
+    public void testSymbolTablePool() throws JNCException {
+        final Element top = parser.parse("<top xmlns=\"" + NS + "\">"
+                + "<secret>hunter2</secret></top>");
+        final Element secret = top.getChild("secret");
+        final SymbolTable symbols = SymbolTable.borrow();
+        try {
+            // the names are kept from one parse to the next
+            assertSame(secret.name, symbols.intern(new String("secret")));
+            // the values are not
+            assertNotSame(secret.value,
+                    symbols.value(new StringBuilder("hunter2")));
+        } finally {
+            SymbolTable.release(symbols);
+        }
+        assertTrue(SymbolTable.idleCount() > 0);
+    }
+
+    @Test
+    public void testSharedValues() throws JNCException {
+        final Element top = parser.parse("<top xmlns=\"" + NS + "\">"
+                + "<a><s>up</s></a><a><s>up</s></a><a><s>down</s></a></top>");
+        final NodeSet s = top.get("a/s");
+        assertEquals(3, s.size());
+        assertSame(s.get(0).value, s.get(1).value);
+        assertEquals("down", s.get(2).value);
+
+        final SymbolTable symbols = new SymbolTable();
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longValue.append('x');
+        }
+        assertNotSame(symbols.value(longValue), symbols.value(longValue));
+        assertEquals(longValue.toString(), symbols.value(longValue));
+    }
+}
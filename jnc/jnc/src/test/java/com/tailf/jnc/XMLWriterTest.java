@@ -0,0 +1,86 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class XMLWriterTest {
+
+    private static final String[] VALUES = { "", "plain", "a & b < c > d",
+            "\"quoted\" 'single'", "tab\tnew\nline\rreturn",
+            "\u0001\u001f\u007f\u0085\u009f",
+            "\u00e9\u00a0\u2028\ufffe\uffff", "\ud83d\ude00 pair", "high at end \ud800",
+            "broken \ud800 & pair", "lone low \udc00 & <", "\u0000 nul &" };
+
+    @Test
+    public void testEscapedLikeUtils() {
+        for (final String value : VALUES) {
+            final XMLWriter w = new XMLWriter();
+            w.printEscaped(value, XMLWriter.TEXT_ESCAPES);
+            assertEquals(Utils.escapeXml(value), w.toString());
+        }
+    }
+
+    @Test
+    public void testEncodeToStream() throws Exception {
+        final Element top = new Element("urn:test", "top");
+        top.setDefaultPrefix();
+        top.setAttr("id", "1");
+        final Element leaf = top.createChild("leaf");
+        leaf.setValue("caf\u00e9 & \ud83d\ude00");
+        top.createChild("empty");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final XMLWriter w = new XMLWriter(bytes);
+        top.encode(w);
+        assertEquals(0, bytes.size());
+        w.flush();
+        assertEquals("<top xmlns=\"urn:test\" id=\"1\">\n"
+                + "<leaf>caf\u00e9 &amp; &#128512;</leaf>\n<empty/>\n</top>\n",
+                bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            s.append("<\u00e9>");
+        }
+        s.append('\ud800').append('x');
+        final Element leaf = new Element("urn:test", "leaf");
+        leaf.setValue(s.toString());
+
+        // a value with a broken surrogate is written unescaped, even when
+        // it does not fit in the buffer
+        final StringBuilder out = new StringBuilder();
+        leaf.encode(new OutTransport() {
+            @Override
+            public void print(long i) {
+                out.append(i);
+            }
+
+            @Override
+            public void print(String str) {
+                out.append(str);
+            }
+
+            @Override
+            public void println(int i) {
+                out.append(i).append('\n');
+            }
+
+            @Override
+            public void println(String str) {
+                out.append(str).append('\n');
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        assertEquals("<leaf>" + Utils.escapeXml(s.toString()) + "</leaf>\n",
+                out.toString());
+    }
+}
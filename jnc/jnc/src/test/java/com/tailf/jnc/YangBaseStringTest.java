@@ -159,6 +159,27 @@ public class YangBaseStringTest {
         assertTrue(spacy.value.equals("A  space"));
         spacy.wsCollapse();
         assertTrue(spacy.value.equals("A space"));
+
+        assertEquals("", Utils.wsCollapse(" "));
+        assertEquals("", Utils.wsCollapse("   "));
+        assertEquals("a", Utils.wsCollapse(" a"));
+        assertEquals("a b", Utils.wsCollapse("a    b "));
+        final String collapsed = "a b\tc";
+        assertSame(collapsed, Utils.wsCollapse(collapsed));
+        final String replaced = "a b c";
+        assertSame(replaced, Utils.wsReplace(replaced));
+    }
+
+    @Test
+    public void testPatternCompiledOnce() throws YangException {
+        final Restrictions restrictions = Restrictions.of(YangBaseString.class);
+        assertSame(restrictions, Restrictions.of(bs.getClass()));
+        assertNotSame(restrictions, Restrictions.of(YangString.class));
+        for (int i = 0; i < 3; i++) {
+            bs.pattern(new String[] { "b[a-z]+S.*", ".*ing" });
+            assertTrue(restrictions.matches("baseString", new String[] { "b[a-z]+S.*" }));
+            assertFalse(restrictions.matches("String", new String[] { "b[a-z]+S.*" }));
+        }
     }
 
     @Test
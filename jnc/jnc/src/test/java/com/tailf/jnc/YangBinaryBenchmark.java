@@ -0,0 +1,124 @@
+package com.tailf.jnc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+
+/**
+ * Times setting, decoding and writing a binary leaf of a megabyte, as a
+ * certificate bundle or a package would be: decoding it whole with
+ * toString() against decoding it into a buffer or a stream, and writing it
+ * to XML through the value string against writing it a chunk at a time.
+ * The decoded value is UTF-8 text, run it with
+ * <code>-Dfile.encoding=UTF-8</code> to time the chunked writing. Not a
+ * unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... com.tailf.jnc.YangBinaryBenchmark [seconds per case]
+ * </pre>
+ */
+public class YangBinaryBenchmark {
+
+    private static final int SIZE = 1 << 20;
+
+    /**
+     * A way of handling the value once.
+     */
+    private interface Case {
+        int run(YangBinary value) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double seconds = args.length > 0 ? Double.parseDouble(args[0])
+                : 3;
+        final StringBuilder s = new StringBuilder(SIZE);
+        for (int i = 0; s.length() < SIZE; i++) {
+            s.append("-----BEGIN CERTIFICATE ").append(i).append(" & ")
+                    .append("\u00e9\n");
+        }
+        final String text = s.toString();
+        final YangBinary value = new YangBinary(text);
+        final byte[] buffer = new byte[value.decodedLength()];
+        final OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        run("setValue(String)", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) throws YangException {
+                value.setValue(text);
+                return value.getValue().length();
+            }
+        });
+        run("Base64 decode whole", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) {
+                return Base64.getDecoder().decode(value.getValue()).length;
+            }
+        });
+        run("decode(byte[], int)", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) {
+                return value.decode(buffer, 0);
+            }
+        });
+        run("decode(OutputStream)", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) throws Exception {
+                value.decode(discard);
+                return 1;
+            }
+        });
+        run("write via toString()", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) throws Exception {
+                final XMLWriter w = new XMLWriter(discard);
+                w.printEscaped(value.toString(), XMLWriter.TEXT_ESCAPES);
+                w.flush();
+                return 1;
+            }
+        });
+        run("write in chunks", seconds, value, new Case() {
+            @Override
+            public int run(YangBinary value) throws Exception {
+                final XMLWriter w = new XMLWriter(discard);
+                value.print(w, XMLWriter.TEXT_ESCAPES);
+                w.flush();
+                return 1;
+            }
+        });
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        value.decode(out);
+        if (!new String(out.toByteArray()).equals(text)) {
+            throw new AssertionError("decoded value differs");
+        }
+    }
+
+    private static void run(String name, double seconds, YangBinary value,
+            Case c) throws Exception {
+        // warm up
+        long sink = 0;
+        final long warmup = System.nanoTime() + (long) (seconds * 0.3e9);
+        while (System.nanoTime() < warmup) {
+            sink += c.run(value);
+        }
+        long ops = 0;
+        final long start = System.nanoTime();
+        final long end = start + (long) (seconds * 1e9);
+        long now;
+        do {
+            sink += c.run(value);
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        System.out.printf("%-22s %8.0f us/op %s%n", name, (now - start)
+                / (double) ops / 1e3, sink == 42 ? "" : "");
+    }
+}
@@ -2,6 +2,9 @@ package com.tailf.jnc;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -54,4 +57,59 @@ public class YangBinaryTest {
 		}
 	}
 
+	@Test
+	public void testDecode() throws Exception {
+		for (int i=0; i<values.length; i++) {
+			final byte[] expected = values[i].getBytes();
+			assertEquals(expected.length, ybs[i].decodedLength());
+			final byte[] buffer = new byte[expected.length + 2];
+			assertEquals(expected.length, ybs[i].decode(buffer, 1));
+			assertArrayEquals(expected,
+					Arrays.copyOfRange(buffer, 1, expected.length + 1));
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ybs[i].decode(out);
+			assertArrayEquals(expected, out.toByteArray());
+		}
+	}
+
+	@Test
+	public void testDecodeLarge() throws Exception {
+		final byte[] data = new byte[100000];
+		for (int i=0; i<data.length; i++) {
+			data[i] = (byte) (i * 31 + i / 7);
+		}
+		final YangBinary yb = new YangBinary(
+				java.util.Base64.getEncoder().encode(data));
+		assertEquals(data.length, yb.decodedLength());
+		final byte[] buffer = new byte[data.length];
+		assertEquals(data.length, yb.decode(buffer, 0));
+		assertArrayEquals(data, buffer);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		yb.decode(out);
+		assertArrayEquals(data, out.toByteArray());
+		try {
+			new YangBinary("not base 64!".getBytes()).decode(out);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPrintLarge() throws YangException {
+		final StringBuilder s = new StringBuilder();
+		for (int i=0; i<10000; i++) {
+			s.append("<\u00e9 & \ud83d\ude00>").append(i);
+		}
+		final YangBinary yb = new YangBinary(s.toString());
+		final Element leaf = new Element("urn:test", "leaf");
+		leaf.setValue(yb);
+		final XMLWriter w = new XMLWriter();
+		w.printEscaped(yb.toString(), XMLWriter.AMP_ESCAPES);
+		assertEquals("<leaf>" + w + "</leaf>\n",
+				leaf.toXMLString());
+		final XMLWriter text = new XMLWriter();
+		yb.print(text, XMLWriter.TEXT_ESCAPES);
+		assertEquals(Utils.escapeXml(yb.toString()), text.toString());
+	}
+
 }
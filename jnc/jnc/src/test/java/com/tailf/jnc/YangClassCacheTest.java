@@ -0,0 +1,52 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+abstract class CacheAbstract extends Element {
+    private static final long serialVersionUID = 1L;
+
+    public CacheAbstract() {
+        super("urn:test:cache", "cache-abstract");
+    }
+}
+
+class CachePrivate extends Element {
+    private static final long serialVersionUID = 1L;
+
+    private CachePrivate() {
+        super("urn:test:cache", "cache-private");
+    }
+}
+
+public class YangClassCacheTest {
+
+    private static final String PKG = "com.tailf.jnc";
+
+    @Test
+    public void testMissingClass() throws Exception {
+        ClassNotFoundException first = null;
+        for (int i = 0; i < 2; i++) {
+            try {
+                YangClassCache.newInstance(PKG, "no-such-class");
+                fail("Expected ClassNotFoundException");
+            } catch (final ClassNotFoundException e) {
+                assertEquals(PKG + ".NoSuchClass", e.getMessage());
+                // not shared between callers
+                assertNotSame(first, e);
+                first = e;
+            }
+        }
+    }
+
+    @Test(expected = InstantiationException.class)
+    public void testAbstractClass() throws Exception {
+        YangClassCache.newInstance(PKG, "cache-abstract");
+    }
+
+    @Test(expected = IllegalAccessException.class)
+    public void testPrivateConstructor() throws Exception {
+        YangClassCache.newInstance(PKG, "cache-private");
+    }
+}
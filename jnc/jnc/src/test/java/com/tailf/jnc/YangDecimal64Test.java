@@ -221,6 +221,25 @@ public class YangDecimal64Test {
         assertFalse(d2.valid(new BigDecimal("92233720368547758.08")));
     }
 
+    @Test
+    public void testParsePlain() throws YangException {
+        final String[] values = { "0", "-0.00", "+3.140", ".5", "5.",
+                "007.5", "-123456789012345678", "0.000000000000000001" };
+        for (final String s : values) {
+            final BigDecimal plain = YangDecimal64.parsePlain(s);
+            assertEquals(s, new BigDecimal(s), plain);
+            assertEquals(s, new BigDecimal(s).scale(), plain.scale());
+        }
+        final String[] other = { "", "-", ".", "1e3", "1.2.3", " 1",
+                "1234567890123456789", "0.1234567890123456789" };
+        for (final String s : other) {
+            assertNull(s, YangDecimal64.parsePlain(s));
+        }
+        assertEquals(new BigDecimal("1E+3"), new YangDecimal64("1e3", 2)
+                .getValue());
+        assertSame(d1.MAX_VALUE, new YangDecimal64("1", 1).MAX_VALUE);
+    }
+
     @Test
     public void testHashCode() {
         int expected = new BigDecimal("0").hashCode() << 1;  // 0
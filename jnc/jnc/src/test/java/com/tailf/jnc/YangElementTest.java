@@ -2,6 +2,8 @@ package com.tailf.jnc;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -132,6 +134,337 @@ public class YangElementTest {
         assertTrue(nodeSetsAreEmpty());
     }
     
+    /**
+     * A list entry keyed by its name leaf.
+     */
+    private class Item extends DummyElement {
+        private static final long serialVersionUID = 1L;
+
+        Item(String key, String mtu) {
+            super(ns, "item");
+            final Leaf name = new Leaf(ns, "name");
+            name.setValue(key);
+            addChild(name);
+            final Leaf leaf = new Leaf(ns, "mtu");
+            leaf.setValue(mtu);
+            addChild(leaf);
+        }
+
+        @Override
+        public String[] keyNames() {
+            return new String[] { "name" };
+        }
+
+        @Override
+        public String[] childrenNames() {
+            return new String[] { "name", "mtu" };
+        }
+    }
+
+    @Test
+    public void testGetDiffKeyed() throws JNCException {
+        final YangElement a = new DummyElement(ns, "list");
+        final YangElement b = new DummyElement(ns, "list");
+        final int n = 1000;
+        for (int i = 0; i < n; i++) {
+            a.addChild(new Item("if" + i, "1500"));
+            // reversed, with one changed entry and one unique to each side
+            final int j = n - 1 - i;
+            if (j == 10) {
+                b.addChild(new Item("if" + j, "9000"));
+            } else if (j == 20) {
+                b.addChild(new Item("other", "1500"));
+            } else {
+                b.addChild(new Item("if" + j, "1500"));
+            }
+        }
+        YangElement.getDiff(a, b, uniqueA, uniqueB, changedA, changedB);
+        assertEquals(1, uniqueA.size());
+        assertSame(a.getChildren().get(20), uniqueA.first());
+        assertEquals(1, uniqueB.size());
+        assertEquals("other", uniqueB.first().getValue("name"));
+        assertEquals(1, changedA.size());
+        assertSame(a.getChildren().get(10), changedA.first());
+        assertSame(b.getChildren().get(n - 1 - 10), changedB.first());
+    }
+
+    @Test
+    public void testGetDiffParallel() throws JNCException {
+        final YangElement a = new DummyElement(ns, "list");
+        final YangElement b = new DummyElement(ns, "list");
+        for (int i = 0; i < 1000; i++) {
+            a.addChild(new Item("if" + i, "1500"));
+            if (i % 7 != 0) {
+                b.addChild(new Item("if" + (1000 - i), i % 3 == 0 ? "9000"
+                        : "1500"));
+            }
+        }
+        YangElement.getDiff(a, b, uniqueA, uniqueB, changedA, changedB);
+        final NodeSet pUniqueA = new NodeSet(), pUniqueB = new NodeSet();
+        final NodeSet pChangedA = new NodeSet(), pChangedB = new NodeSet();
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            YangElement.getDiff(a, b, pUniqueA, pUniqueB, pChangedA,
+                    pChangedB, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertFalse(changedA.isEmpty());
+        assertEquals(uniqueA, pUniqueA);
+        assertEquals(uniqueB, pUniqueB);
+        assertEquals(changedA, pChangedA);
+        assertEquals(changedB, pChangedB);
+    }
+
+    /**
+     * A tree with a list of more than ParallelDiff.CHUNK entries, one of
+     * ChildIndex.THRESHOLD entries, and more than CHUNK small containers,
+     * all changed here and there according to <code>seed</code>.
+     */
+    private YangElement syncTree(int seed) {
+        final YangElement config = new DummyElement(ns, "config");
+        final YangElement big = new DummyElement(ns, "big");
+        for (int i = 0; i < ParallelDiff.CHUNK * 3; i++) {
+            if ((i + seed) % 11 != 0) {
+                big.addChild(new Item("if" + i, (i + seed) % 5 == 0 ? "9000"
+                        : "1500"));
+            }
+        }
+        config.addChild(big);
+        final YangElement indexed = new DummyElement(ns, "indexed");
+        for (int i = 0; i < ChildIndex.THRESHOLD + seed; i++) {
+            indexed.addChild(new Item("ge" + i, i == seed ? "9000" : "1500"));
+        }
+        config.addChild(indexed);
+        for (int i = 0; i < ParallelDiff.CHUNK + 10; i++) {
+            final YangElement group = new DummyElement(ns, "group" + i);
+            final Leaf leaf = new Leaf(ns, "value");
+            leaf.setValue(i % 7 == seed ? "changed" : "value");
+            group.addChild(leaf);
+            config.addChild(group);
+        }
+        return config;
+    }
+
+    @Test
+    public void testSyncParallel() throws JNCException {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 5; round++) {
+                final YangElement a = syncTree(0);
+                final YangElement b = syncTree(round + 1);
+                // build the child indexes before comparing
+                assertNotNull(a.getChild("big").getChild("item"));
+                assertNotNull(b.getChild("indexed").getChild("item"));
+
+                final YangElement merge = YangElement.syncMerge(a, b);
+                final YangElement pMerge = YangElement.syncMerge(a, b, pool);
+                assertFalse(merge.getChildren().isEmpty());
+                assertEquals(merge.toXMLString(), pMerge.toXMLString());
+                assertEquals(merge.contentHash(), pMerge.contentHash());
+                assertTrue(merge.checkSync(pMerge));
+
+                final YangElement sync = YangElement.sync(a, b);
+                final YangElement pSync = YangElement.sync(a, b, pool);
+                assertEquals(sync.toXMLString(), pSync.toXMLString());
+                assertEquals(sync.contentHash(), pSync.contentHash());
+
+                // the compared trees are left as they were
+                assertEquals(syncTree(0).toXMLString(), a.toXMLString());
+                assertEquals(syncTree(round + 1).toXMLString(),
+                        b.toXMLString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testContentHash() throws JNCException {
+        final long hash = b1.contentHash();
+        assertEquals(hash, b2.contentHash());
+        assertTrue(b1.checkSync(b2));
+
+        // a change deep down is seen by the top element
+        leaf2.setValue("other");
+        assertFalse(hash == b2.contentHash());
+        assertFalse(b1.checkSync(b2));
+        leaf2.setValue("leaf");
+        assertEquals(hash, b2.contentHash());
+
+        // the order of children matters, attributes do not
+        a2.addChild(new Leaf(ns, "x"));
+        a2.addChild(new Leaf(ns, "y"));
+        a1.addChild(new Leaf(ns, "y"));
+        a1.addChild(new Leaf(ns, "x"));
+        assertFalse(b1.contentHash() == b2.contentHash());
+        a1.delete("child::y");
+        a1.addChild(new Leaf(ns, "y"));
+        assertEquals(b1.contentHash(), b2.contentHash());
+        a2.removeAttr("presence");
+        assertEquals(b1.contentHash(), b2.contentHash());
+
+        // changes to the value field and to value objects are seen too
+        leaf1.value = "direct";
+        assertFalse(b1.contentHash() == b2.contentHash());
+        assertFalse(b1.checkSync(b2));
+        leaf1.value = "leaf";
+        assertTrue(b1.checkSync(b2));
+        final YangString s1 = new YangString("value");
+        final YangString s2 = new YangString("value");
+        leaf1.setValue(s1);
+        leaf2.setValue(s2);
+        assertEquals(b1.contentHash(), b2.contentHash());
+        assertTrue(b1.checkSync(b2));
+        s2.setValue("other");
+        assertFalse(b1.contentHash() == b2.contentHash());
+        assertFalse(b1.checkSync(b2));
+        // sync sends the change
+        final YangElement edit = YangElement.sync(b1, b2);
+        assertEquals("other", edit.getValue("a/leaf").toString());
+    }
+
+    @Test
+    public void testChildIndex() throws JNCException {
+        final YangElement list = new DummyElement(ns, "list");
+        final int n = ChildIndex.THRESHOLD * 3;
+        for (int i = 0; i < n; i++) {
+            list.addChild(new Item("if" + i, "1500"));
+        }
+        list.insertChild(new Leaf(ns, "first"), 0);
+        assertEquals(n, list.getChildren("item").size());
+        assertSame(list.getChildren().get(1), list.getChild("item"));
+        final Element if7 = list.getChildren().get(8);
+        assertSame(if7, list.getChild(new Item("if7", "9000")));
+        assertNull(list.getChild(new Item("if" + n, "1500")));
+
+        // a changed key, a new entry with the same key, a deleted entry
+        final Element key = if7.getChild("name");
+        key.setValue("other");
+        assertNull(list.getChild(new Item("if7", "1500")));
+        assertSame(if7, list.getChild(new Item("other", "1500")));
+        final Item dup = new Item("other", "1500");
+        list.insertChild(dup, 2);
+        assertSame(dup, list.getChild(new Item("other", "1500")));
+        assertEquals(n + 1, list.getChildren("item").size());
+        list.deleteChild(dup);
+        assertSame(if7, list.getChild(new Item("other", "1500")));
+        if7.deleteChild(key);
+        assertNull(list.getChild(new Item("other", "1500")));
+        assertEquals(n, list.get("item[mtu='1500']").size());
+    }
+
+    @Test
+    public void testChildIndexKeyChangedInPlace() throws JNCException {
+        final YangElement list = new DummyElement(ns, "list");
+        final int n = ChildIndex.THRESHOLD * 3;
+        for (int i = 0; i < n; i++) {
+            list.addChild(new Item("if" + i, "1500"));
+        }
+        final Element if7 = list.getChild(new Item("if7", "1500"));
+        assertSame(list.getChildren().get(7), if7);
+
+        // the index is not told of a key changed through its value field
+        if7.getChild("name").value = "moved";
+        assertNull(list.getChild(new Item("if7", "1500")));
+        assertSame(if7, list.getChild(new Item("moved", "1500")));
+        assertSame(if7, list.getChild(new Item("moved", "1500")));
+
+        // nor of a key value object changed in place
+        final Element if9 = list.getChildren().get(9);
+        final YangString key = new YangString("if9");
+        if9.getChild("name").setValue(key);
+        final Item probe = new Item("x", "1500");
+        probe.getChild("name").setValue(new YangString("renamed"));
+        assertNull(list.getChild(probe));
+        key.setValue("renamed");
+        assertSame(if9, list.getChild(probe));
+
+        // merge finds the entry instead of adding another one
+        final YangElement source = new DummyElement(ns, "list");
+        final Item moved = new Item("moved", "9000");
+        source.addChild(moved);
+        moved.getChild("mtu").merge(list, Element.OP_MERGE);
+        assertEquals(n, list.getChildren("item").size());
+        assertEquals("9000", if7.getChildren("mtu").last().getValue());
+    }
+
+    /**
+     * An element with an add method, as generated for a container.
+     */
+    public static class Box extends DummyElement {
+        private static final long serialVersionUID = 1L;
+
+        public Box() {
+            super("http://test.com/ns/containertest/1.0", "box");
+        }
+
+        public DummyElement addSmallItem() {
+            final DummyElement item = new DummyElement(namespace, "small-item");
+            addChild(item);
+            return item;
+        }
+
+        public void setColorValue(String color) throws JNCException {
+            if (!color.equals("red") && !color.equals("blue")) {
+                throw new YangException(YangException.BAD_VALUE, color);
+            }
+            setLeafValue(namespace, "color", color, childrenNames());
+        }
+    }
+
+    @Test
+    public void testAddChildByName() throws Exception {
+        final Box box = new Box();
+        for (int i = 0; i < 2; i++) {
+            final Element item = box.addChild("small-item");
+            assertEquals("small-item", item.name);
+            assertSame(box, item.parent);
+            try {
+                box.addChild("large-item");
+                fail("no such add method");
+            } catch (final NoSuchMethodException e) {
+                // expected, also when the miss is cached
+            }
+        }
+        assertEquals(2, box.getChildren().size());
+    }
+
+    @Test
+    public void testSetLeafValueByName() throws Exception {
+        final boolean newer = RevisionInfo.newerRevisionSupportEnabled;
+        try {
+            RevisionInfo.newerRevisionSupportEnabled = false;
+            final Box box = new Box();
+            box.setLeafValue(ns, "color", "red");
+            box.setLeafValue(ns, "color", "blue");
+            assertEquals("blue", box.getValue("color").toString());
+            try {
+                box.setLeafValue(ns, "color", "green");
+                fail("bad value");
+            } catch (final YangException e) {
+                assertEquals(YangException.BAD_VALUE, e.errorCode);
+            }
+            for (int i = 0; i < 2; i++) {
+                try {
+                    box.setLeafValue(ns, "size", "10");
+                    fail("no such leaf");
+                } catch (final YangException e) {
+                    assertEquals(YangException.ELEMENT_MISSING, e.errorCode);
+                }
+            }
+
+            // newer revisions may add leaves and enumerations
+            RevisionInfo.newerRevisionSupportEnabled = true;
+            box.setLeafValue(ns, "size", "10");
+            box.setLeafValue(ns, "color", "green");
+            assertEquals("10", box.getValue("size"));
+            assertEquals("green", box.getValue("color"));
+        } finally {
+            RevisionInfo.newerRevisionSupportEnabled = newer;
+        }
+    }
+
     @Test
     public void shouldProduceValidXmlRegardlessOfLeafNamespace() throws JNCException {
     	
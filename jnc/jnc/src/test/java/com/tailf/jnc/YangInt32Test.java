@@ -234,6 +234,57 @@ public class YangInt32Test {
         
         assertFalse(i1.valid(Long.MAX_VALUE));
         assertFalse(i1.valid(Long.MIN_VALUE));
+        assertFalse(i1.valid(Integer.MAX_VALUE + 1L));
+        assertFalse(i1.valid(new BigInteger("-2147483649")));
+    }
+
+    @Test
+    public void testRangeShared() throws YangException {
+        // compiled once for the class
+        assertSame(i1.MIN_VALUE, new YangInt32(7).MIN_VALUE);
+        assertSame(i1.MAX_VALUE, new YangInt32("8").MAX_VALUE);
+        assertTrue(new YangUInt32(0xffffffffL).valid(0xffffffffL));
+        assertFalse(new YangUInt32(0).valid(-1));
+    }
+
+    @Test
+    public void testDecodeLong() {
+        final String[] values = { "0", "-0", "+7", "0x7f", "-0X80", "#ff",
+                "017", "-2147483648", "2147483647", "0x7fffffffffffffff",
+                "-9223372036854775808", "9223372036854775807" };
+        for (final String s : values) {
+            assertEquals(s, Long.decode(s).longValue(), YangBaseInt
+                    .decodeLong(s, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        final String[] invalid = { "", "-", "0x", "#", "+-1", "0x-1", "08",
+                "1 2", "9223372036854775808", "-9223372036854775809" };
+        for (final String s : invalid) {
+            try {
+                YangBaseInt.decodeLong(s, Long.MIN_VALUE, Long.MAX_VALUE);
+                fail("Expected NumberFormatException for " + s);
+            } catch (NumberFormatException e) {
+            }
+        }
+        try {
+            YangBaseInt.decodeLong("2147483648", Integer.MIN_VALUE,
+                    Integer.MAX_VALUE);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    @Test
+    public void testLongRange() throws YangException {
+        // subclasses set the range of their built-in type first
+        final YangUInt16 u = new YangUInt16(7);
+        assertSame(u.MAX_VALUE, new YangUInt16("8").MAX_VALUE);
+        assertTrue(u.valid(new BigInteger("65535")));
+        assertFalse(u.valid(new BigInteger("65536")));
+        final YangUInt64 u64 = new YangUInt64("18446744073709551615");
+        assertTrue(u64.valid(Long.MAX_VALUE));
+        assertFalse(u64.valid(-1));
+        assertEquals(new BigInteger("12"), new YangUInt64("+12").getValue());
+        assertEquals(new BigInteger("12"), new YangUInt64("12.0").getValue());
     }
 
     @Test
@@ -0,0 +1,113 @@
+package com.tailf.jnc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class YangUnionTest {
+
+    public static class Color extends YangEnumeration {
+        private static final long serialVersionUID = 1L;
+
+        public Color(String value) throws YangException {
+            super(value, new String[] { "red", "green" });
+            check();
+        }
+    }
+
+    public static class Word extends YangString {
+        private static final long serialVersionUID = 1L;
+
+        public Word(String value) throws YangException {
+            super(value);
+            check();
+        }
+
+        @Override
+        public void check() throws YangException {
+            super.check();
+            pattern("[a-z]+");
+        }
+    }
+
+    public static class Percent extends YangUInt8 {
+        private static final long serialVersionUID = 1L;
+
+        public Percent(String value) throws YangException {
+            super(value);
+            check();
+        }
+
+        @Override
+        public void check() throws YangException {
+            super.check();
+            max(100);
+        }
+    }
+
+    private static final String[] MEMBERS = new String[] {
+            "com.tailf.jnc.NoSuchType", Percent.class.getName(),
+            YangBoolean.class.getName(), Color.class.getName(),
+            Word.class.getName(), YangDecimal64.class.getName(),
+            YangString.class.getName() };
+
+    private static YangType<?> member(String value) throws YangException {
+        return new YangUnion(value, MEMBERS).getValue();
+    }
+
+    @Test
+    public void testFirstMember() throws YangException {
+        for (int i = 0; i < 2; i++) {
+            assertTrue(member("42") instanceof Percent);
+            assertTrue(member(" 0x2a ") instanceof Percent);
+            assertTrue(member("420") instanceof YangString);
+            assertTrue(member("-1") instanceof YangString);
+            assertTrue(member("true") instanceof YangBoolean);
+            assertTrue(member(" false ") instanceof YangBoolean);
+            assertTrue(member("red") instanceof Color);
+            assertTrue(member("green") instanceof Color);
+            assertTrue(member("blue") instanceof Word);
+            assertTrue(member("Blue") instanceof YangString);
+            assertTrue(member("") instanceof YangString);
+        }
+        assertEquals(new Percent("42"), member("42"));
+        assertEquals(new YangString("Blue"), member("Blue"));
+    }
+
+    @Test
+    public void testNoMember() throws YangException {
+        final String[] members = new String[] { Percent.class.getName(),
+                Color.class.getName() };
+        try {
+            new YangUnion("blue", members);
+            fail("Expected YangException");
+        } catch (YangException e) {
+            assertTrue(e.opaqueData instanceof NullPointerException);
+        }
+        assertTrue(new YangUnion("7", members).getValue() instanceof Percent);
+    }
+
+    @Test
+    public void testMemberTypesChanged() throws YangException {
+        final String[] integers = new String[] { YangInt32.class.getName() };
+        final String[] strings = new String[] { YangString.class.getName() };
+        assertTrue(new YangUnion("1", integers).getValue() instanceof YangInt32);
+        assertTrue(new YangUnion("1", strings).getValue() instanceof YangString);
+        assertTrue(new YangUnion("1", integers).getValue() instanceof YangInt32);
+    }
+
+    @Test
+    public void testSyntax() {
+        assertTrue(UnionMembers.isInteger("12"));
+        assertTrue(UnionMembers.isInteger(" -0x1F "));
+        assertTrue(UnionMembers.isInteger("#ff"));
+        assertFalse(UnionMembers.isInteger(""));
+        assertFalse(UnionMembers.isInteger("0x"));
+        assertFalse(UnionMembers.isInteger("1 2"));
+        assertFalse(UnionMembers.isInteger("10.0.0.1"));
+        assertTrue(UnionMembers.isDecimal(" 1.5e3 "));
+        assertFalse(UnionMembers.isDecimal("."));
+        assertFalse(UnionMembers.isDecimal("1 2"));
+        assertFalse(UnionMembers.isDecimal("10.0.0.1/24"));
+    }
+}